@@ -5,13 +5,17 @@ import com.dabsquared.gitlabjenkins.connection.GitLabConnection;
 import com.dabsquared.gitlabjenkins.connection.GitLabConnectionConfig;
 import com.dabsquared.gitlabjenkins.connection.GitLabConnectionProperty;
 import com.dabsquared.gitlabjenkins.gitlab.hook.model.MergeRequestHook;
+import com.dabsquared.gitlabjenkins.gitlab.hook.model.MergeRequestObjectAttributes;
 import com.dabsquared.gitlabjenkins.gitlab.hook.model.NoteHook;
 import com.dabsquared.gitlabjenkins.gitlab.hook.model.PipelineHook;
 import com.dabsquared.gitlabjenkins.gitlab.hook.model.PushHook;
+import com.dabsquared.gitlabjenkins.gitlab.hook.model.State;
 import com.dabsquared.gitlabjenkins.publisher.GitLabAcceptMergeRequestPublisher;
 import com.dabsquared.gitlabjenkins.publisher.GitLabCommitStatusPublisher;
 import com.dabsquared.gitlabjenkins.publisher.GitLabMessagePublisher;
 import com.dabsquared.gitlabjenkins.publisher.GitLabVotePublisher;
+import com.dabsquared.gitlabjenkins.service.GitLabProjectBranchesService;
+import com.dabsquared.gitlabjenkins.trigger.DuplicateBuildPolicy;
 import com.dabsquared.gitlabjenkins.trigger.TriggerOpenMergeRequest;
 import com.dabsquared.gitlabjenkins.trigger.branch.ProjectBranchesProvider;
 import com.dabsquared.gitlabjenkins.trigger.filter.BranchFilter;
@@ -20,6 +24,7 @@ import com.dabsquared.gitlabjenkins.trigger.filter.BranchFilterType;
 import com.dabsquared.gitlabjenkins.trigger.filter.MergeRequestLabelFilter;
 import com.dabsquared.gitlabjenkins.trigger.filter.MergeRequestLabelFilterConfig;
 import com.dabsquared.gitlabjenkins.trigger.filter.MergeRequestLabelFilterFactory;
+import com.dabsquared.gitlabjenkins.trigger.handler.PendingBuildsHandler;
 import com.dabsquared.gitlabjenkins.trigger.handler.merge.MergeRequestHookTriggerHandler;
 import com.dabsquared.gitlabjenkins.trigger.handler.note.NoteHookTriggerHandler;
 import com.dabsquared.gitlabjenkins.trigger.handler.pipeline.PipelineHookTriggerHandler;
@@ -76,6 +81,9 @@ import static com.dabsquared.gitlabjenkins.trigger.handler.push.PushHookTriggerH
 public class GitLabPushTrigger extends Trigger<Job<?, ?>> {
 
     private static final SecureRandom RANDOM = new SecureRandom();
+    private static final String NO_COMMIT = "0000000000000000000000000000000000000000";
+    private static final String BRANCH_REF_PREFIX = "refs/heads/";
+    private static final PendingBuildsHandler PENDING_BUILDS_HANDLER = new PendingBuildsHandler();
 
     private boolean triggerOnPush = true;
     private boolean triggerOnMergeRequest = true;
@@ -103,6 +111,10 @@ public class GitLabPushTrigger extends Trigger<Job<?, ?>> {
     private volatile Secret secretToken;
     private String pendingBuildName;
     private boolean cancelPendingBuildsOnUpdate;
+    private boolean abortSupersededBuilds;
+    private boolean cancelObsoleteBuilds;
+    private DuplicateBuildPolicy duplicateBuildPolicy = DuplicateBuildPolicy.build;
+    private int buildResultReuseMinutes;
 
     private transient BranchFilter branchFilter;
     private transient PushHookTriggerHandler pushHookTriggerHandler;
@@ -164,7 +176,7 @@ public class GitLabPushTrigger extends Trigger<Job<?, ?>> {
         GitLabPushTrigger.DescriptorImpl oldConfig = Trigger.all().get(GitLabPushTrigger.DescriptorImpl.class);
         if (!oldConfig.jobsMigrated) {
             GitLabConnectionConfig gitLabConfig = (GitLabConnectionConfig) Jenkins.getInstance().getDescriptor(GitLabConnectionConfig.class);
-            gitLabConfig.getConnections().add(new GitLabConnection(
+            gitLabConfig.addConnection(new GitLabConnection(
                 oldConfig.gitlabHostUrl,
                     oldConfig.gitlabHostUrl,
                     oldConfig.gitlabApiToken,
@@ -291,6 +303,22 @@ public class GitLabPushTrigger extends Trigger<Job<?, ?>> {
         return this.cancelPendingBuildsOnUpdate;
     }
 
+    public boolean getAbortSupersededBuilds() {
+        return this.abortSupersededBuilds;
+    }
+
+    public boolean getCancelObsoleteBuilds() {
+        return this.cancelObsoleteBuilds;
+    }
+
+    public DuplicateBuildPolicy getDuplicateBuildPolicy() {
+        return duplicateBuildPolicy == null ? DuplicateBuildPolicy.build : duplicateBuildPolicy;
+    }
+
+    public int getBuildResultReuseMinutes() {
+        return buildResultReuseMinutes;
+    }
+
     @DataBoundSetter
     public void setTriggerOnPush(boolean triggerOnPush) {
         this.triggerOnPush = triggerOnPush;
@@ -421,6 +449,26 @@ public class GitLabPushTrigger extends Trigger<Job<?, ?>> {
         this.cancelPendingBuildsOnUpdate = cancelPendingBuildsOnUpdate;
     }
 
+    @DataBoundSetter
+    public void setAbortSupersededBuilds(boolean abortSupersededBuilds) {
+        this.abortSupersededBuilds = abortSupersededBuilds;
+    }
+
+    @DataBoundSetter
+    public void setCancelObsoleteBuilds(boolean cancelObsoleteBuilds) {
+        this.cancelObsoleteBuilds = cancelObsoleteBuilds;
+    }
+
+    @DataBoundSetter
+    public void setDuplicateBuildPolicy(DuplicateBuildPolicy duplicateBuildPolicy) {
+        this.duplicateBuildPolicy = duplicateBuildPolicy;
+    }
+
+    @DataBoundSetter
+    public void setBuildResultReuseMinutes(int buildResultReuseMinutes) {
+        this.buildResultReuseMinutes = buildResultReuseMinutes;
+    }
+
     // executes when the Trigger receives a push request
     public void onPost(final PushHook hook) {
         if (branchFilter == null) {
@@ -432,6 +480,8 @@ public class GitLabPushTrigger extends Trigger<Job<?, ?>> {
         if (pushHookTriggerHandler == null) {
             initializeTriggerHandler();
         }
+        updateBranchCache(hook);
+        cancelBuildsOfDeletedBranch(hook);
         pushHookTriggerHandler.handle(job, hook, ciSkip, branchFilter, mergeRequestLabelFilter);
     }
 
@@ -446,6 +496,7 @@ public class GitLabPushTrigger extends Trigger<Job<?, ?>> {
         if (mergeRequestHookTriggerHandler == null) {
             initializeTriggerHandler();
         }
+        cancelBuildsOfClosedMergeRequest(hook);
         mergeRequestHookTriggerHandler.handle(job, hook, ciSkip, branchFilter, mergeRequestLabelFilter);
     }
 
@@ -474,12 +525,34 @@ public class GitLabPushTrigger extends Trigger<Job<?, ?>> {
         pipelineTriggerHandler.handle(job, hook, ciSkip, branchFilter, mergeRequestLabelFilter);
     }
 
+    private void updateBranchCache(PushHook hook) {
+        GitLabConnectionProperty property = job == null ? null : job.getProperty(GitLabConnectionProperty.class);
+        if (property != null && property.getClient() != null) {
+            GitLabProjectBranchesService.instance().updateBranches(property.getClient(), hook);
+        }
+    }
+
+    private void cancelBuildsOfDeletedBranch(PushHook hook) {
+        if (cancelObsoleteBuilds && job != null && NO_COMMIT.equals(hook.getAfter()) && hook.getProjectId() != null
+            && hook.getRef() != null && hook.getRef().startsWith(BRANCH_REF_PREFIX)) {
+            PENDING_BUILDS_HANDLER.cancelBranchBuilds(job, hook.getProjectId(), hook.getRef().substring(BRANCH_REF_PREFIX.length()));
+        }
+    }
+
+    private void cancelBuildsOfClosedMergeRequest(MergeRequestHook hook) {
+        MergeRequestObjectAttributes objectAttributes = hook.getObjectAttributes();
+        if (cancelObsoleteBuilds && job != null && objectAttributes != null && objectAttributes.getIid() != null
+            && (objectAttributes.getState() == State.closed || objectAttributes.getState() == State.merged)) {
+            PENDING_BUILDS_HANDLER.cancelMergeRequestBuilds(job, objectAttributes);
+        }
+    }
+
     private void initializeTriggerHandler() {
 		mergeRequestHookTriggerHandler = newMergeRequestHookTriggerHandler(triggerOnMergeRequest,
 				triggerOnAcceptedMergeRequest, triggerOnClosedMergeRequest, triggerOpenMergeRequestOnPush,
-				skipWorkInProgressMergeRequest, triggerOnApprovedMergeRequest, cancelPendingBuildsOnUpdate);
+				skipWorkInProgressMergeRequest, triggerOnApprovedMergeRequest, cancelPendingBuildsOnUpdate, abortSupersededBuilds);
         noteHookTriggerHandler = newNoteHookTriggerHandler(triggerOnNoteRequest, noteRegex);
-        pushHookTriggerHandler = newPushHookTriggerHandler(triggerOnPush, triggerOpenMergeRequestOnPush, skipWorkInProgressMergeRequest);
+        pushHookTriggerHandler = newPushHookTriggerHandler(triggerOnPush, triggerOpenMergeRequestOnPush, skipWorkInProgressMergeRequest, abortSupersededBuilds);
         pipelineTriggerHandler = newPipelineHookTriggerHandler(triggerOnPipelineEvent);
     }
 
@@ -593,6 +666,12 @@ public class GitLabPushTrigger extends Trigger<Job<?, ?>> {
                     new Option("On push to source or target branch", "both", triggerOpenMergeRequestOnPush.matches("both")));
         }
 
+        public ListBoxModel doFillDuplicateBuildPolicyItems(@QueryParameter String duplicateBuildPolicy) {
+            return new ListBoxModel(new Option("Schedule another build", "build", duplicateBuildPolicy.matches("build")),
+                    new Option("Add the trigger cause to the pending build", "attach", duplicateBuildPolicy.matches("attach")),
+                    new Option("Ignore the trigger", "drop", duplicateBuildPolicy.matches("drop")));
+        }
+
         public AutoCompletionCandidates doAutoCompleteIncludeBranchesSpec(@AncestorInPath final Job<?, ?> job, @QueryParameter final String value) {
             return ProjectBranchesProvider.instance().doAutoCompleteBranchesSpec(job, value);
         }
@@ -1,6 +1,8 @@
 package com.dabsquared.gitlabjenkins.cause;
 
 import com.dabsquared.gitlabjenkins.gitlab.api.model.MergeRequest;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import hudson.markup.EscapedMarkupFormatter;
 import jenkins.model.Jenkins;
 import net.karneim.pojobuilder.GeneratePojoBuilder;
@@ -20,6 +22,15 @@ import static com.google.common.base.Preconditions.checkNotNull;
  */
 @ExportedBean
 public final class CauseData {
+
+    /**
+     * Merge request descriptions longer than this are truncated, which also shortens the {@code gitlabMergeRequestDescription}
+     * variable of the builds. 0, the default, keeps them complete.
+     */
+    private static final int MAX_DESCRIPTION_LENGTH = Integer.getInteger(CauseData.class.getName() + ".maxDescriptionLength", 0);
+    private static final String TRUNCATION_MARKER = "\n...";
+    private static final Interner<String> METADATA = Interners.newWeakInterner();
+
     private final ActionType actionType;
     private final Integer sourceProjectId;
     private final Integer targetProjectId;
@@ -61,6 +72,7 @@ public final class CauseData {
     private final String createdAt;
     private final String finishedAt;
     private final String buildDuration;
+    private transient volatile Map<String, String> buildVariables;
 
     @GeneratePojoBuilder(withFactoryMethod = "*")
     CauseData(ActionType actionType, Integer sourceProjectId, Integer targetProjectId, String branch, String sourceBranch, String userName,
@@ -73,48 +85,107 @@ public final class CauseData {
         this.actionType = checkNotNull(actionType, "actionType must not be null.");
         this.sourceProjectId = checkNotNull(sourceProjectId, "sourceProjectId must not be null.");
         this.targetProjectId = checkNotNull(targetProjectId, "targetProjectId must not be null.");
-        this.branch = checkNotNull(branch, "branch must not be null.");
-        this.sourceBranch = checkNotNull(sourceBranch, "sourceBranch must not be null.");
-        this.userName = checkNotNull(userName, "userName must not be null.");
-        this.userEmail = userEmail == null ? "" : userEmail;
-        this.sourceRepoHomepage = sourceRepoHomepage == null ? "" : sourceRepoHomepage;
-        this.sourceRepoName = checkNotNull(sourceRepoName, "sourceRepoName must not be null.");
-        this.sourceNamespace = checkNotNull(sourceNamespace, "sourceNamespace must not be null.");
-        this.sourceRepoUrl = sourceRepoUrl == null ? sourceRepoSshUrl : sourceRepoUrl;
-        this.sourceRepoSshUrl = checkNotNull(sourceRepoSshUrl, "sourceRepoSshUrl must not be null.");
-        this.sourceRepoHttpUrl = checkNotNull(sourceRepoHttpUrl, "sourceRepoHttpUrl must not be null.");
+        this.branch = intern(checkNotNull(branch, "branch must not be null."));
+        this.sourceBranch = intern(checkNotNull(sourceBranch, "sourceBranch must not be null."));
+        this.userName = intern(checkNotNull(userName, "userName must not be null."));
+        this.userEmail = intern(userEmail == null ? "" : userEmail);
+        this.sourceRepoHomepage = intern(sourceRepoHomepage == null ? "" : sourceRepoHomepage);
+        this.sourceRepoName = intern(checkNotNull(sourceRepoName, "sourceRepoName must not be null."));
+        this.sourceNamespace = intern(checkNotNull(sourceNamespace, "sourceNamespace must not be null."));
+        this.sourceRepoUrl = intern(sourceRepoUrl == null ? sourceRepoSshUrl : sourceRepoUrl);
+        this.sourceRepoSshUrl = intern(checkNotNull(sourceRepoSshUrl, "sourceRepoSshUrl must not be null."));
+        this.sourceRepoHttpUrl = intern(checkNotNull(sourceRepoHttpUrl, "sourceRepoHttpUrl must not be null."));
         this.mergeRequestTitle = checkNotNull(mergeRequestTitle, "mergeRequestTitle must not be null.");
-        this.mergeRequestDescription = mergeRequestDescription == null ? "" : mergeRequestDescription;
+        this.mergeRequestDescription = truncate(mergeRequestDescription == null ? "" : mergeRequestDescription, MAX_DESCRIPTION_LENGTH);
         this.mergeRequestId = mergeRequestId;
         this.mergeRequestIid = mergeRequestIid;
-        this.mergeRequestState = mergeRequestState == null ? "" : mergeRequestState;
-        this.mergedByUser = mergedByUser == null ? "" : mergedByUser;
-        this.mergeRequestAssignee = mergeRequestAssignee == null ? "" : mergeRequestAssignee;
+        this.mergeRequestState = intern(mergeRequestState == null ? "" : mergeRequestState);
+        this.mergedByUser = intern(mergedByUser == null ? "" : mergedByUser);
+        this.mergeRequestAssignee = intern(mergeRequestAssignee == null ? "" : mergeRequestAssignee);
         this.mergeRequestTargetProjectId = mergeRequestTargetProjectId;
-        this.targetBranch = checkNotNull(targetBranch, "targetBranch must not be null.");
-        this.targetRepoName = checkNotNull(targetRepoName, "targetRepoName must not be null.");
-        this.targetNamespace = checkNotNull(targetNamespace, "targetNamespace must not be null.");
-        this.targetRepoSshUrl = checkNotNull(targetRepoSshUrl, "targetRepoSshUrl must not be null.");
-        this.targetRepoHttpUrl = checkNotNull(targetRepoHttpUrl, "targetRepoHttpUrl must not be null.");
-        this.triggeredByUser = checkNotNull(triggeredByUser, "triggeredByUser must not be null.");
+        this.targetBranch = intern(checkNotNull(targetBranch, "targetBranch must not be null."));
+        this.targetRepoName = intern(checkNotNull(targetRepoName, "targetRepoName must not be null."));
+        this.targetNamespace = intern(checkNotNull(targetNamespace, "targetNamespace must not be null."));
+        this.targetRepoSshUrl = intern(checkNotNull(targetRepoSshUrl, "targetRepoSshUrl must not be null."));
+        this.targetRepoHttpUrl = intern(checkNotNull(targetRepoHttpUrl, "targetRepoHttpUrl must not be null."));
+        this.triggeredByUser = intern(checkNotNull(triggeredByUser, "triggeredByUser must not be null."));
         this.before = before == null ? "" : before;
         this.after = after == null ? "" : after;
         this.lastCommit = checkNotNull(lastCommit, "lastCommit must not be null");
-        this.targetProjectUrl = targetProjectUrl;
+        this.targetProjectUrl = intern(targetProjectUrl);
         this.triggerPhrase = triggerPhrase;
-        this.ref = ref;
-        this.isTag = isTag;
+        this.ref = intern(ref);
+        this.isTag = intern(isTag);
         this.sha = sha;
         this.beforeSha = beforeSha;
-        this.status = status;
+        this.status = intern(status);
         this.stages = stages;
         this.createdAt = createdAt;
         this.finishedAt = finishedAt;
         this.buildDuration = buildDuration;
     }
 
+    /**
+     * Copies the given data without validating it again, so that data of old builds can be compacted on load.
+     */
+    private CauseData(CauseData data) {
+        this.actionType = data.actionType;
+        this.sourceProjectId = data.sourceProjectId;
+        this.targetProjectId = data.targetProjectId;
+        this.branch = intern(data.branch);
+        this.sourceBranch = intern(data.sourceBranch);
+        this.userName = intern(data.userName);
+        this.userEmail = intern(data.userEmail);
+        this.sourceRepoHomepage = intern(data.sourceRepoHomepage);
+        this.sourceRepoName = intern(data.sourceRepoName);
+        this.sourceNamespace = intern(data.sourceNamespace);
+        this.sourceRepoUrl = intern(data.sourceRepoUrl);
+        this.sourceRepoSshUrl = intern(data.sourceRepoSshUrl);
+        this.sourceRepoHttpUrl = intern(data.sourceRepoHttpUrl);
+        this.mergeRequestTitle = data.mergeRequestTitle;
+        this.mergeRequestDescription = truncate(data.mergeRequestDescription, MAX_DESCRIPTION_LENGTH);
+        this.mergeRequestId = data.mergeRequestId;
+        this.mergeRequestIid = data.mergeRequestIid;
+        this.mergeRequestState = intern(data.mergeRequestState);
+        this.mergedByUser = intern(data.mergedByUser);
+        this.mergeRequestAssignee = intern(data.mergeRequestAssignee);
+        this.mergeRequestTargetProjectId = data.mergeRequestTargetProjectId;
+        this.targetBranch = intern(data.targetBranch);
+        this.targetRepoName = intern(data.targetRepoName);
+        this.targetNamespace = intern(data.targetNamespace);
+        this.targetRepoSshUrl = intern(data.targetRepoSshUrl);
+        this.targetRepoHttpUrl = intern(data.targetRepoHttpUrl);
+        this.triggeredByUser = intern(data.triggeredByUser);
+        this.before = data.before;
+        this.after = data.after;
+        this.lastCommit = data.lastCommit;
+        this.targetProjectUrl = intern(data.targetProjectUrl);
+        this.triggerPhrase = data.triggerPhrase;
+        this.ref = intern(data.ref);
+        this.beforeSha = data.beforeSha;
+        this.isTag = intern(data.isTag);
+        this.sha = data.sha;
+        this.status = intern(data.status);
+        this.stages = data.stages;
+        this.createdAt = data.createdAt;
+        this.finishedAt = data.finishedAt;
+        this.buildDuration = data.buildDuration;
+    }
+
+    private Object readResolve() {
+        return new CauseData(this);
+    }
+
     @Exported
     public Map<String, String> getBuildVariables() {
+        Map<String, String> result = buildVariables;
+        if (result == null) {
+            result = buildVariables = Collections.unmodifiableMap(computeBuildVariables());
+        }
+        return result;
+    }
+
+    private Map<String, String> computeBuildVariables() {
         MapWrapper<String, String> variables = new MapWrapper<>(new HashMap<String, String>());
         variables.put("gitlabBranch", branch);
         variables.put("gitlabSourceBranch", sourceBranch);
@@ -498,6 +569,17 @@ public final class CauseData {
             .toString();
     }
 
+    private static String intern(String value) {
+        return value == null ? null : METADATA.intern(value);
+    }
+
+    static String truncate(String description, int maxLength) {
+        if (description == null || maxLength <= 0 || description.length() <= maxLength) {
+            return description;
+        }
+        return description.substring(0, maxLength) + TRUNCATION_MARKER;
+    }
+
     public enum ActionType {
         PUSH {
             @Override
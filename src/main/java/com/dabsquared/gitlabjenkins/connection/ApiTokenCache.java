@@ -0,0 +1,131 @@
+package com.dabsquared.gitlabjenkins.connection;
+
+
+import com.cloudbees.plugins.credentials.CredentialsMatchers;
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.CredentialsStore;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.cloudbees.plugins.credentials.common.StandardCredentials;
+import com.cloudbees.plugins.credentials.domains.DomainRequirement;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import hudson.security.ACL;
+import jenkins.model.Jenkins;
+import org.jenkinsci.plugins.plaincredentials.StringCredentials;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.cloudbees.plugins.credentials.CredentialsProvider.lookupCredentials;
+
+
+/**
+ * Remembers the API tokens that were resolved from the credentials, because looking them up goes through all credentials
+ * and is slow with large credential stores. The tokens are forgotten when a credentials store is saved and a token is
+ * forgotten when GitLab rejects it; then the connections whose token changed replace their clients. Tokens are also
+ * forgotten after {@code ttlMinutes}, so that changes in credential stores that are not saved through Jenkins are picked
+ * up by the next client that is built.
+ */
+@Extension
+@Restricted(NoExternalUse.class)
+public final class ApiTokenCache extends SaveableListener {
+    private static final Logger LOGGER = Logger.getLogger(ApiTokenCache.class.getName());
+    private static final long TTL_MINUTES = Long.getLong(ApiTokenCache.class.getName() + ".ttlMinutes", 10);
+
+    private static final Cache<String, String> TOKENS = CacheBuilder.newBuilder()
+        .expireAfterWrite(TTL_MINUTES, TimeUnit.MINUTES)
+        .build();
+    // incremented whenever tokens are forgotten, so that a token resolved before is not put back into the cache
+    private static long generation;
+
+    /**
+     * @throws IllegalStateException if there are no credentials with the given id
+     */
+    static String get(String apiTokenId) {
+        String apiToken = TOKENS.getIfPresent(apiTokenId);
+        if (apiToken == null) {
+            long resolvedIn = getGeneration();
+            apiToken = resolve(apiTokenId);
+            synchronized (TOKENS) {
+                if (resolvedIn == generation) {
+                    TOKENS.put(apiTokenId, apiToken);
+                }
+            }
+        }
+        return apiToken;
+    }
+
+    /**
+     * Forgets the token with the given id after GitLab rejected it and lets the connections pick up a changed token.
+     */
+    static void rejected(String apiTokenId) {
+        LOGGER.log(Level.FINE, "GitLab rejected the API token {0}, resolving it again", apiTokenId);
+        synchronized (TOKENS) {
+            generation++;
+            TOKENS.invalidate(apiTokenId);
+        }
+        credentialsChanged();
+    }
+
+    @Override
+    public void onChange(Saveable o, XmlFile file) {
+        if (holdsCredentials(o)) {
+            synchronized (TOKENS) {
+                generation++;
+                TOKENS.invalidateAll();
+            }
+            credentialsChanged();
+        }
+    }
+
+    /**
+     * Folders keep their credentials store in their own configuration, so saving an item group that has a credentials
+     * store counts as a change of the credentials as well. The system store is saved on its own, not with Jenkins.
+     */
+    private static boolean holdsCredentials(Saveable o) {
+        if (o instanceof SystemCredentialsProvider || o instanceof CredentialsProvider || o instanceof CredentialsStore) {
+            return true;
+        }
+        return o instanceof ItemGroup && !(o instanceof Jenkins) && CredentialsProvider.lookupStores((ItemGroup<?>) o).iterator().hasNext();
+    }
+
+    private static long getGeneration() {
+        synchronized (TOKENS) {
+            return generation;
+        }
+    }
+
+    private static void credentialsChanged() {
+        GitLabConnectionConfig config = (GitLabConnectionConfig) Jenkins.getActiveInstance().getDescriptor(GitLabConnectionConfig.class);
+        if (config != null) {
+            for (GitLabConnection connection : config.getConnections()) {
+                connection.credentialsChanged();
+            }
+        }
+    }
+
+    private static String resolve(String apiTokenId) {
+        StandardCredentials credentials = CredentialsMatchers.firstOrNull(
+            lookupCredentials(StandardCredentials.class, (Item) null, ACL.SYSTEM, new ArrayList<DomainRequirement>()),
+            CredentialsMatchers.withId(apiTokenId));
+        if (credentials != null) {
+            if (credentials instanceof GitLabApiToken) {
+                return ((GitLabApiToken) credentials).getApiToken().getPlainText();
+            }
+            if (credentials instanceof StringCredentials) {
+                return ((StringCredentials) credentials).getSecret().getPlainText();
+            }
+        }
+        throw new IllegalStateException("No credentials found for credentialsId: " + apiTokenId);
+    }
+}
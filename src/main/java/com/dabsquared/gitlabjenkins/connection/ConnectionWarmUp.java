@@ -0,0 +1,119 @@
+package com.dabsquared.gitlabjenkins.connection;
+
+
+import com.dabsquared.gitlabjenkins.gitlab.JacksonConfig;
+import com.dabsquared.gitlabjenkins.gitlab.api.model.Awardable;
+import com.dabsquared.gitlabjenkins.gitlab.api.model.Branch;
+import com.dabsquared.gitlabjenkins.gitlab.api.model.Label;
+import com.dabsquared.gitlabjenkins.gitlab.api.model.MergeRequest;
+import com.dabsquared.gitlabjenkins.gitlab.api.model.Note;
+import com.dabsquared.gitlabjenkins.gitlab.api.model.Pipeline;
+import com.dabsquared.gitlabjenkins.gitlab.api.model.Project;
+import com.dabsquared.gitlabjenkins.gitlab.api.model.User;
+import com.dabsquared.gitlabjenkins.gitlab.hook.model.MergeRequestHook;
+import com.dabsquared.gitlabjenkins.gitlab.hook.model.NoteHook;
+import com.dabsquared.gitlabjenkins.gitlab.hook.model.PipelineHook;
+import com.dabsquared.gitlabjenkins.gitlab.hook.model.PushHook;
+import com.dabsquared.gitlabjenkins.util.JsonUtil;
+import com.dabsquared.gitlabjenkins.util.LoggerUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * Prepares the GitLab connections after a restart, before GitLab delivers the web hooks that queued up meanwhile: the
+ * JSON deserializers are created, and for every connection the API token is resolved, the client is built, the API level
+ * is detected and a pooled connection to GitLab is opened. The connections are warmed up in parallel on background
+ * threads, so a GitLab server that cannot be reached does not delay the startup.
+ */
+@Restricted(NoExternalUse.class)
+public final class ConnectionWarmUp {
+    private static final Logger LOGGER = Logger.getLogger(ConnectionWarmUp.class.getName());
+    private static final boolean DISABLED = Boolean.getBoolean(ConnectionWarmUp.class.getName() + ".disabled");
+    private static final int PARALLELISM = Integer.getInteger(ConnectionWarmUp.class.getName() + ".parallelism", 4);
+
+    private ConnectionWarmUp() { }
+
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void warmUp() {
+        if (DISABLED) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        prepareDeserializers();
+        LOGGER.log(Level.INFO, "Prepared the GitLab JSON deserializers in {0} ms", System.currentTimeMillis() - start);
+
+        GitLabConnectionConfig config = (GitLabConnectionConfig) Jenkins.getActiveInstance().getDescriptor(GitLabConnectionConfig.class);
+        List<GitLabConnection> connections = config == null ? null : config.getConnections();
+        if (connections == null || connections.isEmpty()) {
+            return;
+        }
+
+        final long connectionsStart = System.currentTimeMillis();
+        final AtomicInteger remaining = new AtomicInteger(connections.size());
+        final AtomicInteger failed = new AtomicInteger();
+        final int count = connections.size();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(count, PARALLELISM)),
+            new NamingThreadFactory(new DaemonThreadFactory(), "GitLab connection warm-up"));
+        for (final GitLabConnection connection : connections) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (!warmUp(connection)) {
+                            failed.incrementAndGet();
+                        }
+                    } finally {
+                        if (remaining.decrementAndGet() == 0) {
+                            LOGGER.log(failed.get() == 0 ? Level.INFO : Level.WARNING,
+                                "Warmed up {0} of {1} GitLab connections in {2} ms, {3} failed",
+                                LoggerUtil.toArray(count - failed.get(), count, System.currentTimeMillis() - connectionsStart, failed.get()));
+                        }
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * @return {@code false} if the connection could not be warmed up, it is still used and retried on the next call
+     */
+    static boolean warmUp(GitLabConnection connection) {
+        long start = System.currentTimeMillis();
+        try {
+            connection.getAsyncClient();
+            connection.getClient().getCurrentUser();
+            LOGGER.log(Level.FINE, "Warmed up GitLab connection {0} in {1} ms",
+                LoggerUtil.toArray(connection.getName(), System.currentTimeMillis() - start));
+            return true;
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to warm up GitLab connection " + connection.getName() + ": " + e.getMessage(), e);
+            return false;
+        }
+    }
+
+    private static void prepareDeserializers() {
+        JsonUtil.prepareDeserializers(PushHook.class, MergeRequestHook.class, NoteHook.class, PipelineHook.class);
+        ObjectMapper mapper = new JacksonConfig().getContext(null);
+        for (Class<?> type : new Class<?>[]{Awardable.class, Branch.class, Label.class, MergeRequest.class, Note.class, Pipeline.class,
+                                             Project.class, User.class}) {
+            mapper.readerFor(type);
+            mapper.readerFor(mapper.getTypeFactory().constructCollectionType(List.class, type));
+        }
+    }
+}
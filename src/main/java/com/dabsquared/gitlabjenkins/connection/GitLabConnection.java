@@ -1,34 +1,39 @@
 package com.dabsquared.gitlabjenkins.connection;
 
 
-import com.cloudbees.plugins.credentials.CredentialsMatchers;
 import com.cloudbees.plugins.credentials.CredentialsProvider;
 import com.cloudbees.plugins.credentials.CredentialsScope;
 import com.cloudbees.plugins.credentials.CredentialsStore;
 import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
-import com.cloudbees.plugins.credentials.common.StandardCredentials;
 import com.cloudbees.plugins.credentials.domains.Domain;
-import com.cloudbees.plugins.credentials.domains.DomainRequirement;
+import com.dabsquared.gitlabjenkins.gitlab.api.AsyncGitLabClient;
+import com.dabsquared.gitlabjenkins.gitlab.api.ConnectionMonitor;
+import com.dabsquared.gitlabjenkins.gitlab.api.ConnectionPoolSettings;
 import com.dabsquared.gitlabjenkins.gitlab.api.GitLabClient;
 import com.dabsquared.gitlabjenkins.gitlab.api.GitLabClientBuilder;
+import com.dabsquared.gitlabjenkins.gitlab.api.ResponseCache;
 import com.dabsquared.gitlabjenkins.gitlab.api.impl.AutodetectGitLabClientBuilder;
+import com.dabsquared.gitlabjenkins.gitlab.api.impl.DispatchingAsyncGitLabClient;
+import com.dabsquared.gitlabjenkins.gitlab.api.impl.ReplicaRoutingGitLabClient;
+import hudson.Util;
 import hudson.init.InitMilestone;
 import hudson.init.Initializer;
-import hudson.model.Item;
-import hudson.security.ACL;
 import hudson.util.Secret;
 import jenkins.model.Jenkins;
-import org.jenkinsci.plugins.plaincredentials.StringCredentials;
+import jenkins.util.Timer;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
-import static com.cloudbees.plugins.credentials.CredentialsProvider.lookupCredentials;
 import static com.dabsquared.gitlabjenkins.gitlab.api.GitLabClientBuilder.getGitLabClientBuilderById;
 
 
@@ -36,6 +41,10 @@ import static com.dabsquared.gitlabjenkins.gitlab.api.GitLabClientBuilder.getGit
  * @author Robin Müller
  */
 public class GitLabConnection {
+    private static final Logger LOGGER = Logger.getLogger(GitLabConnection.class.getName());
+    private static final long CLOSE_DELAY_SECONDS = Long.getLong(GitLabConnection.class.getName() + ".closeDelaySeconds", 60);
+    private static final long MAX_DRAIN_SECONDS = Long.getLong(GitLabConnection.class.getName() + ".maxDrainSeconds", 600);
+
     private final String name;
     private final String url;
     private transient String apiToken;
@@ -45,7 +54,20 @@ public class GitLabConnection {
     private final boolean ignoreCertificateErrors;
     private final Integer connectionTimeout;
     private final Integer readTimeout;
-    private transient GitLabClient apiCache;
+    private Integer connectionPoolSize;
+    private Integer maxConnectionsPerRoute;
+    private Integer idleConnectionTimeout;
+    private Integer keepAliveTimeout;
+    private boolean disableCompression;
+    private Integer responseCacheSize;
+    private String readUrl;
+    private String detectedClientBuilderId;
+    private transient volatile GitLabClient apiCache;
+    private transient ConnectionMonitor monitor;
+    private transient ConnectionMonitor readMonitor;
+    private transient volatile AsyncGitLabClient asyncApiCache;
+    private transient String clientApiToken;
+    private transient boolean closed;
 
     public GitLabConnection(String name, String url, String apiTokenId, boolean ignoreCertificateErrors, Integer connectionTimeout, Integer readTimeout) {
         this(
@@ -111,30 +133,270 @@ public class GitLabConnection {
         return readTimeout;
     }
 
+    public int getConnectionPoolSize() {
+        return connectionPoolSize == null ? ConnectionPoolSettings.DEFAULT_MAX_TOTAL : connectionPoolSize;
+    }
+
+    @DataBoundSetter
+    public void setConnectionPoolSize(Integer connectionPoolSize) {
+        this.connectionPoolSize = connectionPoolSize;
+    }
+
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute == null ? ConnectionPoolSettings.DEFAULT_MAX_PER_ROUTE : maxConnectionsPerRoute;
+    }
+
+    @DataBoundSetter
+    public void setMaxConnectionsPerRoute(Integer maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    public int getIdleConnectionTimeout() {
+        return idleConnectionTimeout == null ? ConnectionPoolSettings.DEFAULT_IDLE_TIMEOUT : idleConnectionTimeout;
+    }
+
+    @DataBoundSetter
+    public void setIdleConnectionTimeout(Integer idleConnectionTimeout) {
+        this.idleConnectionTimeout = idleConnectionTimeout;
+    }
+
+    public int getKeepAliveTimeout() {
+        return keepAliveTimeout == null ? ConnectionPoolSettings.DEFAULT_KEEP_ALIVE : keepAliveTimeout;
+    }
+
+    @DataBoundSetter
+    public void setKeepAliveTimeout(Integer keepAliveTimeout) {
+        this.keepAliveTimeout = keepAliveTimeout;
+    }
+
+    public boolean isDisableCompression() {
+        return disableCompression;
+    }
+
+    @DataBoundSetter
+    public void setDisableCompression(boolean disableCompression) {
+        this.disableCompression = disableCompression;
+    }
+
+    /**
+     * @return the size of the response cache in MB
+     */
+    public int getResponseCacheSize() {
+        return responseCacheSize == null ? ResponseCache.DEFAULT_SIZE_MB : responseCacheSize;
+    }
+
+    @DataBoundSetter
+    public void setResponseCacheSize(Integer responseCacheSize) {
+        this.responseCacheSize = responseCacheSize;
+    }
+
+    /**
+     * @return the URL of a read replica of the GitLab server (e.g. a Geo secondary) or {@code null} if all calls go to {@link #getUrl()}
+     */
+    public String getReadUrl() {
+        return readUrl;
+    }
+
+    @DataBoundSetter
+    public void setReadUrl(String readUrl) {
+        this.readUrl = Util.fixEmptyAndTrim(readUrl);
+    }
+
+    public synchronized ConnectionMonitor getMonitor() {
+        if (monitor == null) {
+            monitor = new ConnectionMonitor(getMaxConnectionsPerRoute(), getResponseCacheSize() * 1024L * 1024L, !disableCompression);
+            monitor.setUnauthorizedListener(new ConnectionMonitor.UnauthorizedListener() {
+                @Override
+                public void unauthorized() {
+                    ApiTokenCache.rejected(apiTokenId);
+                }
+            });
+        }
+
+        return monitor;
+    }
+
+    /**
+     * @return the monitor of the calls to the read replica, it has a pool and metrics of its own
+     */
+    public synchronized ConnectionMonitor getReadMonitor() {
+        if (readMonitor == null) {
+            readMonitor = new ConnectionMonitor(getMaxConnectionsPerRoute(), getResponseCacheSize() * 1024L * 1024L, !disableCompression);
+        }
+
+        return readMonitor;
+    }
+
     public GitLabClient getClient() {
-        if (apiCache == null) {
-            apiCache = clientBuilder.buildClient(url, getApiToken(apiTokenId), ignoreCertificateErrors, connectionTimeout, readTimeout);
+        GitLabClient client = apiCache;
+        if (client == null) {
+            synchronized (this) {
+                if (apiCache == null) {
+                    String apiToken = ApiTokenCache.get(apiTokenId);
+                    GitLabClient built = buildClient(url, apiToken, getMonitor(), new PersistingDetectionListener());
+                    if (readUrl != null) {
+                        built = new ReplicaRoutingGitLabClient(built, buildClient(readUrl, apiToken, getReadMonitor(), null));
+                    }
+                    apiCache = built;
+                    clientApiToken = apiToken;
+                    if (closed) {
+                        closeWhenDrained(built, null, CLOSE_DELAY_SECONDS);
+                    }
+                }
+                client = apiCache;
+            }
+        }
+
+        return client;
+    }
+
+    private GitLabClient buildClient(String url, String apiToken, ConnectionMonitor monitor, AutodetectGitLabClientBuilder.DetectionListener detectionListener) {
+        ConnectionPoolSettings poolSettings =
+            new ConnectionPoolSettings(getConnectionPoolSize(), getMaxConnectionsPerRoute(), getIdleConnectionTimeout(), getKeepAliveTimeout());
+        if (clientBuilder instanceof AutodetectGitLabClientBuilder) {
+            return ((AutodetectGitLabClientBuilder) clientBuilder).buildClient(url, apiToken, ignoreCertificateErrors,
+                connectionTimeout, readTimeout, poolSettings, monitor, detectedClientBuilderId, detectionListener);
+        }
+        return clientBuilder.buildClient(url, apiToken, ignoreCertificateErrors, connectionTimeout, readTimeout, poolSettings, monitor);
+    }
+
+    public AsyncGitLabClient getAsyncClient() {
+        AsyncGitLabClient client = asyncApiCache;
+        if (client == null) {
+            synchronized (this) {
+                if (asyncApiCache == null) {
+                    DispatchingAsyncGitLabClient created = DispatchingAsyncGitLabClient.create(getClient(), name, getMonitor().getCommitStatusOrder());
+                    if (closed) {
+                        // a closed connection rejects asynchronous calls, like the client it had when it was closed
+                        created.shutdown();
+                    }
+                    asyncApiCache = created;
+                }
+                client = asyncApiCache;
+            }
         }
 
-        return apiCache;
+        return client;
+    }
+
+    /**
+     * Closes the clients of this connection after it was replaced or was only used to test the settings. The
+     * asynchronous client stops accepting calls, the connection pools are closed when the calls that are in flight or
+     * queued have completed, at the earliest after {@code closeDelaySeconds} so that callers that still hold this
+     * connection can finish what they are doing.
+     */
+    void close() {
+        close(CLOSE_DELAY_SECONDS);
+    }
+
+    void close(long delaySeconds) {
+        GitLabClient client;
+        AsyncGitLabClient asyncClient;
+        synchronized (this) {
+            closed = true;
+            client = apiCache;
+            asyncClient = asyncApiCache;
+        }
+        release(client, asyncClient, delaySeconds);
     }
 
-    private String getApiToken(String apiTokenId) {
-        StandardCredentials credentials = CredentialsMatchers.firstOrNull(
-            lookupCredentials(StandardCredentials.class, (Item) null, ACL.SYSTEM, new ArrayList<DomainRequirement>()),
-            CredentialsMatchers.withId(apiTokenId));
-        if (credentials != null) {
-            if (credentials instanceof GitLabApiToken) {
-                return ((GitLabApiToken) credentials).getApiToken().getPlainText();
+    /**
+     * Called when the credentials were saved. If the API token of this connection changed, the next call builds new
+     * clients and the current ones are closed like those of a replaced connection.
+     */
+    void credentialsChanged() {
+        String builtWith;
+        synchronized (this) {
+            if (apiCache == null) {
+                return;
             }
-            if (credentials instanceof StringCredentials) {
-                return ((StringCredentials) credentials).getSecret().getPlainText();
+            builtWith = clientApiToken;
+        }
+        String apiToken;
+        try {
+            apiToken = ApiTokenCache.get(apiTokenId);
+        } catch (IllegalStateException e) {
+            apiToken = null;
+        }
+        if (builtWith.equals(apiToken)) {
+            return;
+        }
+
+        GitLabClient client;
+        AsyncGitLabClient asyncClient;
+        synchronized (this) {
+            client = apiCache;
+            asyncClient = asyncApiCache;
+            apiCache = null;
+            asyncApiCache = null;
+            clientApiToken = null;
+        }
+        LOGGER.log(Level.INFO, "The API token of GitLab connection {0} changed, replacing its client", name);
+        release(client, asyncClient, CLOSE_DELAY_SECONDS);
+    }
+
+    private void release(GitLabClient client, AsyncGitLabClient asyncClient, long delaySeconds) {
+        if (asyncClient instanceof DispatchingAsyncGitLabClient) {
+            ((DispatchingAsyncGitLabClient) asyncClient).shutdown();
+        }
+        if (client != null) {
+            closeWhenDrained(client, asyncClient, delaySeconds);
+        }
+    }
+
+    private void closeWhenDrained(final GitLabClient client, final AsyncGitLabClient asyncClient, long delaySeconds) {
+        final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(MAX_DRAIN_SECONDS);
+        Timer.get().schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (isDrained(asyncClient) || System.currentTimeMillis() > deadline) {
+                    LOGGER.log(Level.FINE, "Closing the replaced client of GitLab connection {0}", name);
+                    client.close();
+                } else {
+                    Timer.get().schedule(this, 1, TimeUnit.SECONDS);
+                }
             }
+        }, delaySeconds, TimeUnit.SECONDS);
+    }
+
+    private boolean isDrained(AsyncGitLabClient asyncClient) {
+        if (asyncClient instanceof DispatchingAsyncGitLabClient && !((DispatchingAsyncGitLabClient) asyncClient).isTerminated()) {
+            return false;
         }
-        throw new IllegalStateException("No credentials found for credentialsId: " + apiTokenId);
+        return getMonitor().getBulkhead().getConcurrentCalls() == 0
+            && (readUrl == null || getReadMonitor().getBulkhead().getConcurrentCalls() == 0);
+    }
+
+    /**
+     * @return {@code true} if the other connection was configured with the same settings, so that its clients would be
+     * built like those of this connection
+     */
+    boolean hasSameSettings(GitLabConnection other) {
+        return Objects.equals(name, other.name)
+            && Objects.equals(url, other.url)
+            && Objects.equals(apiTokenId, other.apiTokenId)
+            && Objects.equals(getClientBuilderId(), other.getClientBuilderId())
+            && ignoreCertificateErrors == other.ignoreCertificateErrors
+            && getConnectionTimeout() == other.getConnectionTimeout()
+            && getReadTimeout() == other.getReadTimeout()
+            && getConnectionPoolSize() == other.getConnectionPoolSize()
+            && getMaxConnectionsPerRoute() == other.getMaxConnectionsPerRoute()
+            && getIdleConnectionTimeout() == other.getIdleConnectionTimeout()
+            && getKeepAliveTimeout() == other.getKeepAliveTimeout()
+            && isDisableCompression() == other.isDisableCompression()
+            && getResponseCacheSize() == other.getResponseCacheSize()
+            && Objects.equals(readUrl, other.readUrl);
+    }
+
+    /**
+     * @return the id of the client builder that was detected for this connection or {@code null} if it was not detected yet
+     */
+    public String getDetectedClientBuilderId() {
+        return detectedClientBuilderId;
     }
 
 
+
     protected GitLabConnection readResolve() {
         if (connectionTimeout == null || readTimeout == null) {
             return new GitLabConnection(name, url, apiTokenId, new AutodetectGitLabClientBuilder(), ignoreCertificateErrors, 10, 10);
@@ -146,6 +408,17 @@ public class GitLabConnection {
         return this;
     }
 
+    private class PersistingDetectionListener implements AutodetectGitLabClientBuilder.DetectionListener {
+        @Override
+        public void detected(String clientBuilderId) {
+            detectedClientBuilderId = clientBuilderId;
+            GitLabConnectionConfig descriptor = (GitLabConnectionConfig) Jenkins.getInstance().getDescriptor(GitLabConnectionConfig.class);
+            if (descriptor != null && descriptor.getConnections().contains(GitLabConnection.this)) {
+                descriptor.save();
+            }
+        }
+    }
+
     @Initializer(after = InitMilestone.PLUGINS_STARTED)
     public static void migrate() throws IOException {
         GitLabConnectionConfig descriptor = (GitLabConnectionConfig) Jenkins.getInstance().getDescriptor(GitLabConnectionConfig.class);
@@ -7,6 +7,9 @@ import com.cloudbees.plugins.credentials.common.AbstractIdCredentialsListBoxMode
 import com.cloudbees.plugins.credentials.common.StandardCredentials;
 import com.cloudbees.plugins.credentials.common.StandardListBoxModel;
 import com.cloudbees.plugins.credentials.domains.URIRequirementBuilder;
+import com.dabsquared.gitlabjenkins.gitlab.api.AsyncGitLabClient;
+import com.dabsquared.gitlabjenkins.gitlab.api.CallNotPermittedException;
+import com.dabsquared.gitlabjenkins.gitlab.api.CircuitBreaker;
 import com.dabsquared.gitlabjenkins.gitlab.api.GitLabClient;
 import com.dabsquared.gitlabjenkins.gitlab.api.GitLabClientBuilder;
 import edu.umd.cs.findbugs.annotations.NonNull;
@@ -26,22 +29,30 @@ import org.kohsuke.stapler.StaplerRequest;
 import javax.ws.rs.ProcessingException;
 import javax.ws.rs.WebApplicationException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 import static com.dabsquared.gitlabjenkins.gitlab.api.GitLabClientBuilder.getAllGitLabClientBuilders;
 
 
 /**
+ * The connections are kept in snapshots that are never modified, a change publishes a new snapshot. So the web hook and
+ * build threads look up connections without locking while the configuration is saved. The clients of connections that
+ * were replaced are closed once their calls have completed.
+ *
  * @author Robin Müller
  */
 @Extension
 public class GitLabConnectionConfig extends GlobalConfiguration {
 
     private Boolean useAuthenticatedEndpoint = true;
-    private List<GitLabConnection> connections = new ArrayList<>();
-    private transient Map<String, GitLabConnection> connectionMap = new HashMap<>();
+    private volatile List<GitLabConnection> connections = new ArrayList<>();
+    private transient volatile Map<String, GitLabConnection> connectionMap = Collections.emptyMap();
 
     public GitLabConnectionConfig() {
         load();
@@ -50,10 +61,14 @@ public class GitLabConnectionConfig extends GlobalConfiguration {
 
     @Override
     public boolean configure(StaplerRequest req, JSONObject json) throws FormException {
-        connections = req.bindJSONToList(GitLabConnection.class, json.get("connections"));
-        useAuthenticatedEndpoint = json.getBoolean("useAuthenticatedEndpoint");
-        refreshConnectionMap();
+        List<GitLabConnection> replaced;
+        synchronized (this) {
+            replaced = connections;
+            publish(keepUnchanged(req.bindJSONToList(GitLabConnection.class, json.get("connections"))));
+            useAuthenticatedEndpoint = json.getBoolean("useAuthenticatedEndpoint");
+        }
         save();
+        closeReplaced(replaced);
         return super.configure(req, json);
     }
 
@@ -66,33 +81,39 @@ public class GitLabConnectionConfig extends GlobalConfiguration {
     }
 
     public List<GitLabConnection> getConnections() {
-        return connections;
+        return Collections.unmodifiableList(connections);
     }
 
-    public void addConnection(GitLabConnection connection) {
-        connections.add(connection);
-        connectionMap.put(connection.getName(), connection);
+    public synchronized void addConnection(GitLabConnection connection) {
+        List<GitLabConnection> newConnections = new ArrayList<>(connections);
+        newConnections.add(connection);
+        publish(newConnections);
     }
 
     public void setConnections(List<GitLabConnection> newConnections) {
-        connections = new ArrayList<>();
-        connectionMap = new HashMap<>();
-        for (GitLabConnection connection: newConnections){
-            addConnection(connection);
+        List<GitLabConnection> replaced;
+        synchronized (this) {
+            replaced = connections;
+            publish(newConnections);
         }
+        closeReplaced(replaced);
     }
 
     public GitLabClient getClient(String connectionName) {
-        if (!connectionMap.containsKey(connectionName)) {
-            return null;
-        }
-        return connectionMap.get(connectionName).getClient();
+        GitLabConnection connection = connectionMap.get(connectionName);
+        return connection == null ? null : connection.getClient();
+    }
+
+    public AsyncGitLabClient getAsyncClient(String connectionName) {
+        GitLabConnection connection = connectionMap.get(connectionName);
+        return connection == null ? null : connection.getAsyncClient();
     }
 
     public FormValidation doCheckName(@QueryParameter String id, @QueryParameter String value) {
+        GitLabConnection connection = connectionMap.get(value);
         if (StringUtils.isEmptyOrNull(value)) {
             return FormValidation.error(Messages.name_required());
-        } else if (connectionMap.containsKey(value) && !connectionMap.get(value).toString().equals(id)) {
+        } else if (connection != null && !connection.toString().equals(id)) {
             return FormValidation.error(Messages.name_exists(value));
         } else {
             return FormValidation.ok();
@@ -131,20 +152,83 @@ public class GitLabConnectionConfig extends GlobalConfiguration {
         }
     }
 
+    public FormValidation doCheckConnectionPoolSize(@QueryParameter Integer value) {
+        if (value == null || value < 1) {
+            return FormValidation.error(Messages.connectionPoolSize_positive());
+        } else {
+            return FormValidation.ok();
+        }
+    }
+
+    public FormValidation doCheckMaxConnectionsPerRoute(@QueryParameter Integer value) {
+        if (value == null || value < 1) {
+            return FormValidation.error(Messages.maxConnectionsPerRoute_positive());
+        } else {
+            return FormValidation.ok();
+        }
+    }
+
+    public FormValidation doCheckResponseCacheSize(@QueryParameter Integer value) {
+        if (value == null || value < 0) {
+            return FormValidation.error(Messages.responseCacheSize_notNegative());
+        } else {
+            return FormValidation.ok();
+        }
+    }
+
     public FormValidation doTestConnection(@QueryParameter String url,
                                            @QueryParameter String apiTokenId,
                                            @QueryParameter String clientBuilderId,
                                            @QueryParameter boolean ignoreCertificateErrors,
                                            @QueryParameter int connectionTimeout,
                                            @QueryParameter int readTimeout) {
+        GitLabConnection existing = findConnection(url, apiTokenId, clientBuilderId, ignoreCertificateErrors, connectionTimeout, readTimeout);
+        if (existing != null && existing.getMonitor().getCircuitBreaker().getState() == CircuitBreaker.State.CLOSED) {
+            try {
+                existing.getClient().getCurrentUser();
+                return FormValidation.ok(Messages.connection_success());
+            } catch (CallNotPermittedException e) {
+                // calls were suspended meanwhile, GitLab is contacted through a connection of its own below
+            } catch (WebApplicationException | ProcessingException e) {
+                return connectionError(e);
+            }
+        }
+
+        GitLabConnection connection = new GitLabConnection("", url, apiTokenId, clientBuilderId, ignoreCertificateErrors, connectionTimeout, readTimeout);
         try {
-            new GitLabConnection("", url, apiTokenId, clientBuilderId, ignoreCertificateErrors, connectionTimeout, readTimeout).getClient().getCurrentUser();
+            connection.getClient().getCurrentUser();
             return FormValidation.ok(Messages.connection_success());
-        } catch (WebApplicationException e) {
-            return FormValidation.error(Messages.connection_error(e.getMessage()));
-        } catch (ProcessingException e) {
+        } catch (WebApplicationException | ProcessingException e) {
+            return connectionError(e);
+        } finally {
+            connection.close();
+        }
+    }
+
+    private FormValidation connectionError(RuntimeException e) {
+        if (e instanceof ProcessingException && e.getCause() != null) {
             return FormValidation.error(Messages.connection_error(e.getCause().getMessage()));
         }
+        return FormValidation.error(Messages.connection_error(e.getMessage()));
+    }
+
+    /**
+     * @return a configured connection with the given settings, its pooled client can be used to test them unless its
+     * circuit breaker suspended the calls to GitLab
+     */
+    private GitLabConnection findConnection(String url, String apiTokenId, String clientBuilderId, boolean ignoreCertificateErrors,
+                                            int connectionTimeout, int readTimeout) {
+        for (GitLabConnection connection : connections) {
+            if (Objects.equals(connection.getUrl(), url)
+                && Objects.equals(connection.getApiTokenId(), apiTokenId)
+                && Objects.equals(connection.getClientBuilderId(), clientBuilderId)
+                && connection.isIgnoreCertificateErrors() == ignoreCertificateErrors
+                && connection.getConnectionTimeout() == connectionTimeout
+                && connection.getReadTimeout() == readTimeout) {
+                return connection;
+            }
+        }
+        return null;
     }
 
     public ListBoxModel doFillApiTokenIdItems(@QueryParameter String name, @QueryParameter String url) {
@@ -156,8 +240,9 @@ public class GitLabConnectionConfig extends GlobalConfiguration {
                                    StandardCredentials.class,
                                    URIRequirementBuilder.fromUri(url).build(),
                                    new GitLabCredentialMatcher());
-            if (name != null && connectionMap.containsKey(name)) {
-                String apiTokenId = connectionMap.get(name).getApiTokenId();
+            GitLabConnection connection = name == null ? null : connectionMap.get(name);
+            if (connection != null) {
+                String apiTokenId = connection.getApiTokenId();
                 options.includeCurrentValue(apiTokenId);
                 for (ListBoxModel.Option option : options) {
                     if (option.value.equals(apiTokenId)) {
@@ -179,10 +264,43 @@ public class GitLabConnectionConfig extends GlobalConfiguration {
         return model;
     }
 
-    private void refreshConnectionMap() {
-        connectionMap.clear();
-        for (GitLabConnection connection : connections) {
-            connectionMap.put(connection.getName(), connection);
+    /**
+     * The form binds a new instance for every connection. A connection whose settings did not change is kept, so that
+     * saving the configuration only replaces the clients of the connections that were changed. Callers must hold the
+     * lock of this configuration.
+     */
+    List<GitLabConnection> keepUnchanged(List<GitLabConnection> bound) {
+        List<GitLabConnection> result = new ArrayList<>(bound.size());
+        for (GitLabConnection connection : bound) {
+            GitLabConnection current = connectionMap.get(connection.getName());
+            result.add(current != null && current.hasSameSettings(connection) ? current : connection);
+        }
+        return result;
+    }
+
+    private synchronized void refreshConnectionMap() {
+        publish(connections == null ? Collections.<GitLabConnection>emptyList() : connections);
+    }
+
+    /**
+     * Publishes a new snapshot of the connections. Callers must hold the lock of this configuration.
+     */
+    private void publish(List<GitLabConnection> newConnections) {
+        Map<String, GitLabConnection> newConnectionMap = new HashMap<>();
+        for (GitLabConnection connection : newConnections) {
+            newConnectionMap.put(connection.getName(), connection);
+        }
+        connectionMap = Collections.unmodifiableMap(newConnectionMap);
+        connections = new ArrayList<>(newConnections);
+    }
+
+    private void closeReplaced(List<GitLabConnection> replaced) {
+        Set<GitLabConnection> current = Collections.newSetFromMap(new IdentityHashMap<GitLabConnection, Boolean>());
+        current.addAll(connections);
+        for (GitLabConnection connection : replaced) {
+            if (!current.contains(connection)) {
+                connection.close();
+            }
         }
     }
 
@@ -1,6 +1,7 @@
 package com.dabsquared.gitlabjenkins.connection;
 
 
+import com.dabsquared.gitlabjenkins.gitlab.api.AsyncGitLabClient;
 import com.dabsquared.gitlabjenkins.gitlab.api.GitLabClient;
 import hudson.Extension;
 import hudson.model.Job;
@@ -39,6 +40,14 @@ public class GitLabConnectionProperty extends JobProperty<Job<?, ?>> {
         return null;
     }
 
+    public AsyncGitLabClient getAsyncClient() {
+        if (StringUtils.isNotEmpty(gitLabConnection)) {
+            GitLabConnectionConfig connectionConfig = (GitLabConnectionConfig) Jenkins.getInstance().getDescriptor(GitLabConnectionConfig.class);
+            return connectionConfig != null ? connectionConfig.getAsyncClient(gitLabConnection) : null;
+        }
+        return null;
+    }
+
     public static GitLabClient getClient(Run<?, ?> build) {
         final GitLabConnectionProperty connectionProperty = build.getParent().getProperty(GitLabConnectionProperty.class);
         if (connectionProperty != null) {
@@ -0,0 +1,165 @@
+package com.dabsquared.gitlabjenkins.connection;
+
+
+import com.dabsquared.gitlabjenkins.gitlab.api.ApiMetrics;
+import com.dabsquared.gitlabjenkins.gitlab.api.Bulkhead;
+import com.dabsquared.gitlabjenkins.gitlab.api.CircuitBreaker;
+import com.dabsquared.gitlabjenkins.gitlab.api.ConnectionMonitor;
+import com.dabsquared.gitlabjenkins.gitlab.api.ConnectionPoolStatistics;
+import com.dabsquared.gitlabjenkins.gitlab.api.EndpointMetrics;
+import com.dabsquared.gitlabjenkins.gitlab.api.RateLimiter;
+import com.dabsquared.gitlabjenkins.gitlab.api.ResponseCache;
+import com.dabsquared.gitlabjenkins.trigger.handler.CompletedBuildsIndex;
+import hudson.Extension;
+import hudson.model.RootAction;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.io.IOException;
+import java.util.Map;
+
+
+/**
+ * Reports the utilization and the per endpoint call metrics of every GitLab connection, as well as the executor time saved
+ * by reusing build results, as JSON to administrators at {@code /gitlab-connections/}.
+ */
+@Extension
+public class GitLabConnectionStatisticsAction implements RootAction {
+
+    public static final String URL_NAME = "gitlab-connections";
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return null;
+    }
+
+    @Override
+    public String getUrlName() {
+        return URL_NAME;
+    }
+
+    public void doIndex(StaplerResponse response) throws IOException {
+        Jenkins.getActiveInstance().checkPermission(Jenkins.ADMINISTER);
+        GitLabConnectionConfig config = (GitLabConnectionConfig) Jenkins.getActiveInstance().getDescriptor(GitLabConnectionConfig.class);
+        JSONArray connections = new JSONArray();
+        if (config != null) {
+            for (GitLabConnection connection : config.getConnections()) {
+                connections.add(toJson(connection));
+            }
+        }
+        response.setContentType("application/json;charset=UTF-8");
+        response.getWriter().print(new JSONObject()
+            .element("connections", connections)
+            .element("buildResultReuse", toJson(CompletedBuildsIndex.get()))
+            .toString(2));
+    }
+
+    private JSONObject toJson(CompletedBuildsIndex completedBuilds) {
+        return new JSONObject()
+            .element("reusedBuilds", completedBuilds.getReusedBuildCount())
+            .element("savedExecutorMillis", completedBuilds.getSavedExecutorMillis());
+    }
+
+    private JSONObject toJson(GitLabConnection connection) {
+        JSONObject json = toJson(new JSONObject()
+            .element("name", connection.getName())
+            .element("url", connection.getUrl()), connection.getMonitor());
+        if (connection.getReadUrl() != null) {
+            json.element("readReplica", toJson(new JSONObject().element("url", connection.getReadUrl()), connection.getReadMonitor()));
+        }
+        return json;
+    }
+
+    private JSONObject toJson(JSONObject json, ConnectionMonitor monitor) {
+        return json
+            .element("pool", toJson(monitor.getPoolStatistics()))
+            .element("rateLimit", toJson(monitor.getRateLimiter()))
+            .element("circuitBreaker", toJson(monitor.getCircuitBreaker()))
+            .element("bulkhead", toJson(monitor.getBulkhead()))
+            .element("responseCache", toJson(monitor.getResponseCache()))
+            .element("endpoints", toJson(monitor.getApiMetrics()));
+    }
+
+    private JSONObject toJson(ConnectionPoolStatistics statistics) {
+        return new JSONObject()
+            .element("leased", statistics.getLeased())
+            .element("pending", statistics.getPending())
+            .element("available", statistics.getAvailable())
+            .element("max", statistics.getMax())
+            .element("leases", statistics.getLeaseCount())
+            .element("averageLeaseWaitMillis", statistics.getAverageLeaseWaitMillis())
+            .element("maxLeaseWaitMillis", statistics.getMaxLeaseWaitMillis());
+    }
+
+    private JSONObject toJson(RateLimiter rateLimiter) {
+        return new JSONObject()
+            .element("limit", rateLimiter.getLimit())
+            .element("maxLimit", rateLimiter.getMaxLimit())
+            .element("inFlight", rateLimiter.getInFlight())
+            .element("throttledCalls", rateLimiter.getThrottledCallCount())
+            .element("retriedCalls", rateLimiter.getRetriedCallCount());
+    }
+
+    private JSONObject toJson(CircuitBreaker circuitBreaker) {
+        return new JSONObject()
+            .element("state", circuitBreaker.getState().name())
+            .element("failureRate", circuitBreaker.getFailureRate())
+            .element("slowCallRate", circuitBreaker.getSlowCallRate())
+            .element("opened", circuitBreaker.getOpenedCount())
+            .element("rejectedCalls", circuitBreaker.getRejectedCallCount());
+    }
+
+    private JSONObject toJson(Bulkhead bulkhead) {
+        return new JSONObject()
+            .element("concurrentCalls", bulkhead.getConcurrentCalls())
+            .element("maxConcurrentCalls", bulkhead.getMaxConcurrentCalls())
+            .element("rejectedCalls", bulkhead.getRejectedCallCount());
+    }
+
+    private JSONObject toJson(ResponseCache responseCache) {
+        return new JSONObject()
+            .element("enabled", responseCache.isEnabled())
+            .element("maxBytes", responseCache.getMaxBytes())
+            .element("bytes", responseCache.getSize())
+            .element("entries", responseCache.getEntryCount())
+            .element("lookups", responseCache.getLookupCount())
+            .element("revalidations", responseCache.getRevalidationCount())
+            .element("hits", responseCache.getHitCount())
+            .element("misses", responseCache.getMissCount());
+    }
+
+    private JSONObject toJson(ApiMetrics apiMetrics) {
+        JSONObject endpoints = new JSONObject();
+        for (Map.Entry<String, EndpointMetrics> entry : apiMetrics.getEndpoints().entrySet()) {
+            endpoints.element(entry.getKey(), toJson(entry.getValue()));
+        }
+        return endpoints;
+    }
+
+    private JSONObject toJson(EndpointMetrics metrics) {
+        JSONObject statusCounts = new JSONObject();
+        for (Map.Entry<Integer, Long> entry : metrics.getStatusCounts().entrySet()) {
+            statusCounts.element(String.valueOf(entry.getKey()), entry.getValue());
+        }
+        return new JSONObject()
+            .element("calls", metrics.getCallCount())
+            .element("averageMillis", metrics.getAverageMillis())
+            .element("p50Millis", metrics.getPercentileMillis(50))
+            .element("p95Millis", metrics.getPercentileMillis(95))
+            .element("p99Millis", metrics.getPercentileMillis(99))
+            .element("maxMillis", metrics.getMaxMillis())
+            .element("histogram", JSONObject.fromObject(metrics.getHistogram()))
+            .element("status", statusCounts)
+            .element("transportErrors", metrics.getTransportErrorCount())
+            .element("retries", metrics.getRetryCount())
+            .element("coalesced", metrics.getCoalescedCount())
+            .element("bytesReceived", metrics.getBytesReceived());
+    }
+}
@@ -0,0 +1,32 @@
+package com.dabsquared.gitlabjenkins.gitlab.api;
+
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * The {@link EndpointMetrics} of a GitLab connection, keyed by endpoint template such as
+ * {@code GET /api/v4/projects/{projectId}/repository/commits/{sha}}.
+ */
+public final class ApiMetrics {
+    private final ConcurrentMap<String, EndpointMetrics> endpoints = new ConcurrentHashMap<>();
+
+    public EndpointMetrics endpoint(String template) {
+        EndpointMetrics metrics = endpoints.get(template);
+        if (metrics == null) {
+            EndpointMetrics created = new EndpointMetrics();
+            metrics = endpoints.putIfAbsent(template, created);
+            if (metrics == null) {
+                metrics = created;
+            }
+        }
+        return metrics;
+    }
+
+    public SortedMap<String, EndpointMetrics> getEndpoints() {
+        return new TreeMap<>(endpoints);
+    }
+}
@@ -0,0 +1,36 @@
+package com.dabsquared.gitlabjenkins.gitlab.api;
+
+import com.dabsquared.gitlabjenkins.gitlab.api.model.Awardable;
+import com.dabsquared.gitlabjenkins.gitlab.api.model.Branch;
+import com.dabsquared.gitlabjenkins.gitlab.api.model.BuildState;
+import com.dabsquared.gitlabjenkins.gitlab.api.model.MergeRequest;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.List;
+
+/**
+ * Variant of {@link GitLabClient} for the calls that are made while handling web hooks and builds. The calls return
+ * immediately and are executed by a small, per connection pool of threads, so that the calling thread is not held while
+ * GitLab responds.
+ */
+public interface AsyncGitLabClient {
+    String getHostUrl();
+
+    ListenableFuture<Void> changeBuildStatus(String projectId, String sha, BuildState state, String ref, String context, String targetUrl, String description);
+
+    ListenableFuture<Void> changeBuildStatus(Integer projectId, String sha, BuildState state, String ref, String context, String targetUrl, String description);
+
+    ListenableFuture<Void> getCommit(String projectId, String sha);
+
+    ListenableFuture<Void> acceptMergeRequest(MergeRequest mr, String mergeCommitMessage, boolean shouldRemoveSourceBranch);
+
+    ListenableFuture<Void> createMergeRequestNote(MergeRequest mr, String body);
+
+    ListenableFuture<List<Awardable>> getMergeRequestEmoji(MergeRequest mr);
+
+    ListenableFuture<Void> awardMergeRequestEmoji(MergeRequest mr, String name);
+
+    ListenableFuture<Void> deleteMergeRequestEmoji(MergeRequest mr, Integer awardId);
+
+    ListenableFuture<Branch> getBranch(String projectId, String branch);
+}
@@ -0,0 +1,55 @@
+package com.dabsquared.gitlabjenkins.gitlab.api;
+
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Caps the number of requests that may be in flight to one GitLab server, so that a slow server cannot tie up every web
+ * hook and executor thread. Calls that wait for the rate limit do not hold a permit. Calls beyond the cap wait briefly
+ * and then fail with a {@link CallNotPermittedException}.
+ */
+public final class Bulkhead {
+    private static final long MAX_WAIT_MILLIS = Long.getLong(Bulkhead.class.getName() + ".maxWaitMillis", 500);
+
+    private final int maxConcurrentCalls;
+    private final Semaphore permits;
+    private final AtomicLong rejectedCalls = new AtomicLong();
+
+    public Bulkhead(int maxConcurrentCalls) {
+        if (maxConcurrentCalls < 1) {
+            throw new IllegalArgumentException("maxConcurrentCalls must be at least 1");
+        }
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.permits = new Semaphore(maxConcurrentCalls);
+    }
+
+    /**
+     * @throws CallNotPermittedException if no permit became available in time. Every successful acquire must be followed
+     *                                   by a {@link #release()}.
+     */
+    public void acquire() throws InterruptedException {
+        if (!permits.tryAcquire(MAX_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+            rejectedCalls.incrementAndGet();
+            throw new CallNotPermittedException("Too many concurrent calls to GitLab");
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    public int getConcurrentCalls() {
+        return maxConcurrentCalls - permits.availablePermits();
+    }
+
+    public long getRejectedCallCount() {
+        return rejectedCalls.get();
+    }
+}
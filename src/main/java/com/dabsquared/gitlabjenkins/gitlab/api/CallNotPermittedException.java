@@ -0,0 +1,15 @@
+package com.dabsquared.gitlabjenkins.gitlab.api;
+
+
+import javax.ws.rs.ProcessingException;
+
+
+/**
+ * Thrown instead of calling GitLab when the circuit breaker of the connection is open or its bulkhead is full. It is a
+ * {@link ProcessingException}, so callers that already handle communication failures handle it as well.
+ */
+public class CallNotPermittedException extends ProcessingException {
+    public CallNotPermittedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,178 @@
+package com.dabsquared.gitlabjenkins.gitlab.api;
+
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Stops calling a GitLab server that fails or answers slowly. The outcomes of the most recent calls are kept in a
+ * sliding window; when too many of them failed or were slow, the breaker opens and calls fail fast with a
+ * {@link CallNotPermittedException}. After a while it lets a few probe calls through and closes again if they succeed.
+ */
+public final class CircuitBreaker {
+    private static final String PREFIX = CircuitBreaker.class.getName();
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final int slowCallRateThreshold;
+    private final long slowCallMillis;
+    private final long openMillis;
+    private final int halfOpenCalls;
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private final AtomicLong rejectedCalls = new AtomicLong();
+    private final AtomicLong openedCount = new AtomicLong();
+    private State state = State.CLOSED;
+    private int recorded;
+    private int next;
+    private int failedCount;
+    private int slowCount;
+    private long openedAt;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+
+    public CircuitBreaker() {
+        this(Integer.getInteger(PREFIX + ".windowSize", 20),
+            Integer.getInteger(PREFIX + ".minimumCalls", 10),
+            Integer.getInteger(PREFIX + ".failureRateThreshold", 50),
+            Integer.getInteger(PREFIX + ".slowCallRateThreshold", 80),
+            TimeUnit.SECONDS.toMillis(Integer.getInteger(PREFIX + ".slowCallSeconds", 5)),
+            TimeUnit.SECONDS.toMillis(Integer.getInteger(PREFIX + ".openSeconds", 30)),
+            Integer.getInteger(PREFIX + ".halfOpenCalls", 3));
+    }
+
+    /**
+     * @param windowSize            the number of most recent calls whose outcome is considered
+     * @param minimumCalls          the number of calls that must have been recorded before the breaker may open
+     * @param failureRateThreshold  the percentage of failed calls at which the breaker opens
+     * @param slowCallRateThreshold the percentage of slow calls at which the breaker opens
+     * @param slowCallMillis        the duration from which on a call counts as slow
+     * @param openMillis            how long the breaker stays open before it lets probe calls through
+     * @param halfOpenCalls         the number of probe calls that must succeed to close the breaker again
+     */
+    CircuitBreaker(int windowSize, int minimumCalls, int failureRateThreshold, int slowCallRateThreshold, long slowCallMillis, long openMillis,
+                   int halfOpenCalls) {
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallMillis = slowCallMillis;
+        this.openMillis = openMillis;
+        this.halfOpenCalls = halfOpenCalls;
+        this.failed = new boolean[windowSize];
+        this.slow = new boolean[windowSize];
+    }
+
+    /**
+     * @throws CallNotPermittedException if the breaker is open or all probe calls are already in flight
+     */
+    public synchronized void permit() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+            state = State.HALF_OPEN;
+            halfOpenPermits = halfOpenCalls;
+            halfOpenSuccesses = 0;
+        }
+        if (state == State.OPEN || (state == State.HALF_OPEN && halfOpenPermits == 0)) {
+            rejectedCalls.incrementAndGet();
+            throw new CallNotPermittedException("GitLab is unavailable, calls are suspended until it recovers");
+        }
+        if (state == State.HALF_OPEN) {
+            halfOpenPermits--;
+        }
+    }
+
+    /**
+     * Gives back the permit of a call that was not made after all, e.g. because the bulkhead rejected it, so that it does
+     * not count as a probe call.
+     */
+    public synchronized void release() {
+        if (state == State.HALF_OPEN && halfOpenPermits < halfOpenCalls - halfOpenSuccesses) {
+            halfOpenPermits++;
+        }
+    }
+
+    /**
+     * Records the outcome of a call that was permitted and made.
+     *
+     * @param callFailed     whether the server could not be reached or answered with a server error
+     * @param durationMillis how long the call took
+     */
+    public synchronized void record(boolean callFailed, long durationMillis) {
+        boolean callSlow = durationMillis >= slowCallMillis;
+        if (state == State.HALF_OPEN) {
+            if (callFailed || callSlow) {
+                open();
+            } else if (++halfOpenSuccesses >= halfOpenCalls) {
+                close();
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            return;
+        }
+
+        if (recorded == failed.length) {
+            failedCount -= failed[next] ? 1 : 0;
+            slowCount -= slow[next] ? 1 : 0;
+        } else {
+            recorded++;
+        }
+        failed[next] = callFailed;
+        slow[next] = callSlow;
+        failedCount += callFailed ? 1 : 0;
+        slowCount += callSlow ? 1 : 0;
+        next = (next + 1) % failed.length;
+
+        if (recorded >= minimumCalls
+            && (failedCount * 100 >= failureRateThreshold * recorded || slowCount * 100 >= slowCallRateThreshold * recorded)) {
+            open();
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        openedCount.incrementAndGet();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        recorded = 0;
+        next = 0;
+        failedCount = 0;
+        slowCount = 0;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return the percentage of failed calls in the current window
+     */
+    public synchronized int getFailureRate() {
+        return recorded == 0 ? 0 : failedCount * 100 / recorded;
+    }
+
+    /**
+     * @return the percentage of slow calls in the current window
+     */
+    public synchronized int getSlowCallRate() {
+        return recorded == 0 ? 0 : slowCount * 100 / recorded;
+    }
+
+    public long getRejectedCallCount() {
+        return rejectedCalls.get();
+    }
+
+    /**
+     * @return how often the breaker opened
+     */
+    public long getOpenedCount() {
+        return openedCount.get();
+    }
+}
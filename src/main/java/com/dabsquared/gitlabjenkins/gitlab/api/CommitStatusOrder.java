@@ -0,0 +1,101 @@
+package com.dabsquared.gitlabjenkins.gitlab.api;
+
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Keeps the commit status updates of a connection in the order in which they were issued. Updates of the same status
+ * are sent one at a time, while updates of other statuses do not wait for them. An update that waited in a queue is
+ * dropped if a later update of the same status was sent meanwhile, e.g. a queued "pending" after the build already
+ * reported "success".
+ * <p>
+ * A status is identified by the commit and its context (the build name). The project is left out, because it is
+ * given as id by some callers and as path by others.
+ */
+public final class CommitStatusOrder {
+    private final AtomicLong issued = new AtomicLong();
+    private final AtomicLong droppedUpdates = new AtomicLong();
+    /**
+     * One lock per status, so a slow update only holds up later updates of the same status. A lock is dropped when no
+     * thread holds a reference to it anymore.
+     */
+    private final LoadingCache<List<String>, Lock> locks = CacheBuilder.newBuilder()
+        .weakValues()
+        .build(new CacheLoader<List<String>, Lock>() {
+            @Override
+            public Lock load(List<String> status) {
+                return new ReentrantLock();
+            }
+        });
+    private final Cache<List<String>, Long> sent = CacheBuilder.newBuilder()
+        .maximumSize(10000)
+        .expireAfterWrite(1, TimeUnit.HOURS)
+        .build();
+    private final ThreadLocal<Long> sending = new ThreadLocal<>();
+
+    /**
+     * @return the position of an update that is issued now, but sent later
+     */
+    public long issue() {
+        return issued.incrementAndGet();
+    }
+
+    /**
+     * Sends an update that is issued now, unless the current thread is already sending an update that was issued
+     * earlier.
+     */
+    public void send(String sha, String context, Runnable update) {
+        if (sending.get() != null) {
+            update.run();
+        } else {
+            send(issue(), sha, context, update);
+        }
+    }
+
+    /**
+     * Sends an update that was issued earlier, unless a later update of the same status was sent meanwhile.
+     *
+     * @param position what {@link #issue()} returned when the update was issued
+     * @return {@code false} if the update was dropped
+     */
+    public boolean send(long position, String sha, String context, Runnable update) {
+        List<String> status = Arrays.asList(sha, context);
+        Lock lock = locks.getUnchecked(status);
+        lock.lock();
+        try {
+            Long latest = sent.getIfPresent(status);
+            if (latest != null && latest > position) {
+                droppedUpdates.incrementAndGet();
+                return false;
+            }
+            sent.put(status, position);
+            sending.set(position);
+            try {
+                update.run();
+            } finally {
+                sending.remove();
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of queued updates that were dropped because a later update was sent first
+     */
+    public long getDroppedUpdateCount() {
+        return droppedUpdates.get();
+    }
+}
@@ -0,0 +1,92 @@
+package com.dabsquared.gitlabjenkins.gitlab.api;
+
+
+/**
+ * State of a GitLab connection that is shared by all clients built for it, so that it survives when a client is
+ * rebuilt, e.g. after the API level was detected again.
+ */
+public final class ConnectionMonitor {
+    private final ConnectionPoolStatistics poolStatistics = new ConnectionPoolStatistics();
+    private final RateLimiter rateLimiter;
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker();
+    private final Bulkhead bulkhead;
+    private final ApiMetrics apiMetrics = new ApiMetrics();
+    private final ResponseCache responseCache;
+    private final CommitStatusOrder commitStatusOrder = new CommitStatusOrder();
+    private final boolean compression;
+    private volatile UnauthorizedListener unauthorizedListener;
+
+    public ConnectionMonitor() {
+        this(ConnectionPoolSettings.DEFAULT_MAX_PER_ROUTE, 0);
+    }
+
+    /**
+     * @param maxConcurrency the number of calls that may be in flight at the same time while GitLab does not throttle.
+     *                       By default the bulkhead lets twice as many requests be in flight, as a backstop to the
+     *                       rate limiter.
+     * @param responseCacheBytes the size of the response cache, 0 disables it
+     */
+    public ConnectionMonitor(int maxConcurrency, long responseCacheBytes) {
+        this(maxConcurrency, responseCacheBytes, true);
+    }
+
+    /**
+     * @param compression whether GitLab may send compressed responses
+     */
+    public ConnectionMonitor(int maxConcurrency, long responseCacheBytes, boolean compression) {
+        this.compression = compression;
+        rateLimiter = new RateLimiter(maxConcurrency);
+        responseCache = new ResponseCache(responseCacheBytes);
+        bulkhead = new Bulkhead(Integer.getInteger(Bulkhead.class.getName() + ".maxConcurrentCalls", 2 * maxConcurrency));
+    }
+
+    public ConnectionPoolStatistics getPoolStatistics() {
+        return poolStatistics;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public Bulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    public ApiMetrics getApiMetrics() {
+        return apiMetrics;
+    }
+
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    public CommitStatusOrder getCommitStatusOrder() {
+        return commitStatusOrder;
+    }
+
+    public boolean isCompression() {
+        return compression;
+    }
+
+    public void setUnauthorizedListener(UnauthorizedListener unauthorizedListener) {
+        this.unauthorizedListener = unauthorizedListener;
+    }
+
+    /**
+     * Called when GitLab answered a call with {@code 401 Unauthorized}.
+     */
+    public void unauthorized() {
+        UnauthorizedListener listener = unauthorizedListener;
+        if (listener != null) {
+            listener.unauthorized();
+        }
+    }
+
+    public interface UnauthorizedListener {
+        void unauthorized();
+    }
+}
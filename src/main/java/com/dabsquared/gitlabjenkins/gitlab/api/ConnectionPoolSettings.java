@@ -0,0 +1,52 @@
+package com.dabsquared.gitlabjenkins.gitlab.api;
+
+
+import java.io.Serializable;
+
+
+/**
+ * Limits of the HTTP connection pool of a GitLab client and how it uses its connections.
+ */
+public final class ConnectionPoolSettings implements Serializable {
+    public static final int DEFAULT_MAX_TOTAL = 60;
+    public static final int DEFAULT_MAX_PER_ROUTE = 30;
+    public static final int DEFAULT_IDLE_TIMEOUT = 60;
+    public static final int DEFAULT_KEEP_ALIVE = 30;
+    public static final ConnectionPoolSettings DEFAULT =
+        new ConnectionPoolSettings(DEFAULT_MAX_TOTAL, DEFAULT_MAX_PER_ROUTE, DEFAULT_IDLE_TIMEOUT, DEFAULT_KEEP_ALIVE);
+
+    private final int maxTotal;
+    private final int maxPerRoute;
+    private final int idleTimeout;
+    private final int keepAlive;
+
+    /**
+     * @param idleTimeout seconds after which unused pooled connections are closed
+     * @param keepAlive   seconds to keep a connection for reuse if GitLab does not announce a keep-alive timeout itself
+     */
+    public ConnectionPoolSettings(int maxTotal, int maxPerRoute, int idleTimeout, int keepAlive) {
+        if (maxTotal < 1 || maxPerRoute < 1) {
+            throw new IllegalArgumentException("the pool needs room for at least one connection");
+        }
+        this.maxTotal = maxTotal;
+        this.maxPerRoute = Math.min(maxPerRoute, maxTotal);
+        this.idleTimeout = idleTimeout;
+        this.keepAlive = keepAlive;
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public int getMaxPerRoute() {
+        return maxPerRoute;
+    }
+
+    public int getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public int getKeepAlive() {
+        return keepAlive;
+    }
+}
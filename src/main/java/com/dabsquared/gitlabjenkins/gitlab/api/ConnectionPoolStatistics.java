@@ -0,0 +1,75 @@
+package com.dabsquared.gitlabjenkins.gitlab.api;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Utilization of the HTTP connection pool of a GitLab connection. The pool itself reports the current counts, the
+ * lease wait times are accumulated over the lifetime of the connection.
+ */
+public final class ConnectionPoolStatistics {
+    private final AtomicLong leases = new AtomicLong();
+    private final AtomicLong leaseWaitMillis = new AtomicLong();
+    private final AtomicLong maxLeaseWaitMillis = new AtomicLong();
+    private volatile Pool pool;
+
+    /**
+     * Makes the given pool the one whose counts are reported.
+     */
+    public void attach(Pool pool) {
+        this.pool = pool;
+    }
+
+    public void recordLease(long waitMillis) {
+        leases.incrementAndGet();
+        leaseWaitMillis.addAndGet(waitMillis);
+        long max = maxLeaseWaitMillis.get();
+        while (waitMillis > max && !maxLeaseWaitMillis.compareAndSet(max, waitMillis)) {
+            max = maxLeaseWaitMillis.get();
+        }
+    }
+
+    public int getLeased() {
+        Pool current = pool;
+        return current == null ? 0 : current.getLeased();
+    }
+
+    public int getPending() {
+        Pool current = pool;
+        return current == null ? 0 : current.getPending();
+    }
+
+    public int getAvailable() {
+        Pool current = pool;
+        return current == null ? 0 : current.getAvailable();
+    }
+
+    public int getMax() {
+        Pool current = pool;
+        return current == null ? 0 : current.getMax();
+    }
+
+    public long getLeaseCount() {
+        return leases.get();
+    }
+
+    public long getAverageLeaseWaitMillis() {
+        long count = leases.get();
+        return count == 0 ? 0 : leaseWaitMillis.get() / count;
+    }
+
+    public long getMaxLeaseWaitMillis() {
+        return maxLeaseWaitMillis.get();
+    }
+
+    public interface Pool {
+        int getLeased();
+
+        int getPending();
+
+        int getAvailable();
+
+        int getMax();
+    }
+}
@@ -0,0 +1,150 @@
+package com.dabsquared.gitlabjenkins.gitlab.api;
+
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Latency, status codes, retries, coalesced calls and received bytes of the calls to one endpoint of the GitLab API. Recording only
+ * updates atomic counters, so it never blocks a call.
+ */
+public final class EndpointMetrics {
+    private static final long[] BUCKET_BOUNDS_MILLIS = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, Long.MAX_VALUE};
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_MILLIS.length);
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong totalMillis = new AtomicLong();
+    private final AtomicLong maxMillis = new AtomicLong();
+    private final AtomicLong transportErrors = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final ConcurrentMap<Integer, AtomicLong> statusCounts = new ConcurrentHashMap<>();
+
+    public void recordLatency(long millis) {
+        int bucket = 0;
+        while (millis > BUCKET_BOUNDS_MILLIS[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+        calls.incrementAndGet();
+        totalMillis.addAndGet(millis);
+        long max = maxMillis.get();
+        while (millis > max && !maxMillis.compareAndSet(max, millis)) {
+            max = maxMillis.get();
+        }
+    }
+
+    public void recordStatus(int status) {
+        AtomicLong count = statusCounts.get(status);
+        if (count == null) {
+            AtomicLong created = new AtomicLong();
+            count = statusCounts.putIfAbsent(status, created);
+            if (count == null) {
+                count = created;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    public void recordTransportError() {
+        transportErrors.incrementAndGet();
+    }
+
+    public void recordRetry() {
+        retries.incrementAndGet();
+    }
+
+    public void recordCoalesced() {
+        coalesced.incrementAndGet();
+    }
+
+    public void recordBytesReceived(long bytes) {
+        bytesReceived.addAndGet(bytes);
+    }
+
+    public long getCallCount() {
+        return calls.get();
+    }
+
+    public long getAverageMillis() {
+        long count = calls.get();
+        return count == 0 ? 0 : totalMillis.get() / count;
+    }
+
+    public long getMaxMillis() {
+        return maxMillis.get();
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the upper bound of the histogram bucket that contains the given percentile of the call durations, or the
+     *         longest duration if that is lower
+     */
+    public long getPercentileMillis(double percentile) {
+        long total = 0;
+        long[] counts = new long[BUCKET_BOUNDS_MILLIS.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) {
+                return Math.min(BUCKET_BOUNDS_MILLIS[i], maxMillis.get());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the number of calls per duration bucket, keyed by the inclusive upper bound of the bucket in milliseconds
+     *         with {@code +Inf} for the last one
+     */
+    public Map<String, Long> getHistogram() {
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+            histogram.put(BUCKET_BOUNDS_MILLIS[i] == Long.MAX_VALUE ? "+Inf" : String.valueOf(BUCKET_BOUNDS_MILLIS[i]), buckets.get(i));
+        }
+        return histogram;
+    }
+
+    public SortedMap<Integer, Long> getStatusCounts() {
+        SortedMap<Integer, Long> counts = new TreeMap<>();
+        for (Map.Entry<Integer, AtomicLong> entry : statusCounts.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().get());
+        }
+        return counts;
+    }
+
+    /**
+     * @return the number of calls that got no response, e.g. because the connection failed or timed out
+     */
+    public long getTransportErrorCount() {
+        return transportErrors.get();
+    }
+
+    public long getRetryCount() {
+        return retries.get();
+    }
+
+    /**
+     * @return the number of calls that shared the result of an identical call that was in flight at the same time
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+}
@@ -38,8 +38,23 @@ public interface GitLabClient {
 
     List<MergeRequest> getMergeRequests(String projectId, State state, int page, int perPage);
 
+    Iterable<MergeRequest> getAllMergeRequests(String projectId, State state);
+
+    /**
+     * Like {@link #getAllMergeRequests(String, State)}, but only the fields of the {@link MergeRequest.Summary} view are set.
+     */
+    Iterable<MergeRequest> getAllMergeRequestSummaries(String projectId, State state);
+
+    /**
+     * Like {@link #getAllMergeRequestSummaries(String, State)} for the open merge requests, but if the server supports it
+     * the head of each source branch and the source project are fetched with the same requests.
+     */
+    Iterable<MergeRequestWithSource> getOpenMergeRequestsWithSource(String projectId);
+
     List<Branch> getBranches(String projectId);
 
+    Iterable<Branch> getAllBranches(String projectId);
+
     Branch getBranch(String projectId, String branch);
 
     User getCurrentUser();
@@ -50,5 +65,20 @@ public interface GitLabClient {
 
     List<Label> getLabels(String projectId);
 
+    Iterable<Label> getAllLabels(String projectId);
+
+    /**
+     * Loads all labels of the project. Pages that did not change since {@code previous} are revalidated with
+     * conditional requests and taken over from it.
+     */
+    ListingSnapshot<Label> getLabels(String projectId, ListingSnapshot<Label> previous);
+
     List<Pipeline> getPipelines(String projectName);
+
+    Iterable<Pipeline> getAllPipelines(String projectName);
+
+    /**
+     * Releases the HTTP connections of the client. The client must not be used afterwards.
+     */
+    void close();
 }
@@ -48,6 +48,16 @@ public abstract class GitLabClientBuilder implements Comparable<GitLabClientBuil
     @Nonnull
     public abstract GitLabClient buildClient(String url, String token, boolean ignoreCertificateErrors, int connectionTimeout, int readTimeout);
 
+    /**
+     * Builds a client whose HTTP connection pool is limited by {@code poolSettings} and that reports its utilization and
+     * throttling to {@code monitor}. Builders that do not pool connections ignore both.
+     */
+    @Nonnull
+    public GitLabClient buildClient(String url, String token, boolean ignoreCertificateErrors, int connectionTimeout, int readTimeout,
+                                    ConnectionPoolSettings poolSettings, ConnectionMonitor monitor) {
+        return buildClient(url, token, ignoreCertificateErrors, connectionTimeout, readTimeout);
+    }
+
     @Override
     public final int compareTo(@Nonnull GitLabClientBuilder other) {
         int o = ordinal - other.ordinal;
@@ -0,0 +1,51 @@
+package com.dabsquared.gitlabjenkins.gitlab.api;
+
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+
+/**
+ * A complete paginated listing together with the entity tag GitLab sent for each page,
+ * so that it can later be revalidated page by page with conditional requests.
+ */
+public final class ListingSnapshot<T> {
+    private final List<List<T>> pages;
+    private final List<String> entityTags;
+
+    public ListingSnapshot(List<List<T>> pages, List<String> entityTags) {
+        if (pages.size() != entityTags.size()) {
+            throw new IllegalArgumentException("every page needs an entity tag entry");
+        }
+        this.pages = pages;
+        this.entityTags = entityTags;
+    }
+
+    public List<T> getItems() {
+        ImmutableList.Builder<T> items = ImmutableList.builder();
+        for (List<T> page : pages) {
+            items.addAll(page);
+        }
+        return items.build();
+    }
+
+    public int getPageCount() {
+        return pages.size();
+    }
+
+    /**
+     * @param page 1-based page number
+     */
+    public List<T> getPage(int page) {
+        return pages.get(page - 1);
+    }
+
+    /**
+     * @param page 1-based page number
+     * @return the entity tag of the page or {@code null} if the page is unknown or GitLab did not send one
+     */
+    public String getEntityTag(int page) {
+        return page > 0 && page <= entityTags.size() ? entityTags.get(page - 1) : null;
+    }
+}
@@ -0,0 +1,41 @@
+package com.dabsquared.gitlabjenkins.gitlab.api;
+
+
+import com.dabsquared.gitlabjenkins.gitlab.api.model.Branch;
+import com.dabsquared.gitlabjenkins.gitlab.api.model.MergeRequest;
+import com.dabsquared.gitlabjenkins.gitlab.api.model.Project;
+
+
+/**
+ * A merge request together with the head of its source branch and its source project, if GitLab returned them with the
+ * listing. Otherwise they are {@code null} and the caller has to get them with separate calls.
+ */
+public final class MergeRequestWithSource {
+    private final MergeRequest mergeRequest;
+    private final Branch sourceBranch;
+    private final Project sourceProject;
+
+    public MergeRequestWithSource(MergeRequest mergeRequest, Branch sourceBranch, Project sourceProject) {
+        this.mergeRequest = mergeRequest;
+        this.sourceBranch = sourceBranch;
+        this.sourceProject = sourceProject;
+    }
+
+    public MergeRequest getMergeRequest() {
+        return mergeRequest;
+    }
+
+    /**
+     * @return the source branch with its head commit or {@code null} if it was not fetched with the merge request
+     */
+    public Branch getSourceBranch() {
+        return sourceBranch;
+    }
+
+    /**
+     * @return the source project or {@code null} if it was not fetched with the merge request
+     */
+    public Project getSourceProject() {
+        return sourceProject;
+    }
+}
@@ -0,0 +1,162 @@
+package com.dabsquared.gitlabjenkins.gitlab.api;
+
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Adapts the number of concurrent calls to a GitLab server to the rate limit it reports. The limit grows by one for
+ * every round of calls that were not throttled and is halved when the server answers with {@code 429 Too Many Requests}
+ * or reports that no requests are left. Calls beyond the limit wait instead of failing. When only a few requests are
+ * left in the current window, the remaining ones are spread evenly until the window resets.
+ */
+public final class RateLimiter {
+    public static final int TOO_MANY_REQUESTS = 429;
+
+    private static final long MAX_PAUSE_MILLIS =
+        TimeUnit.SECONDS.toMillis(Long.getLong(RateLimiter.class.getName() + ".maxPauseSeconds", 60));
+    private static final long DEFAULT_PAUSE_MILLIS = TimeUnit.SECONDS.toMillis(1);
+    private static final double LOW_REMAINING_RATIO = 0.1;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final int maxLimit;
+    private final AtomicLong throttledCalls = new AtomicLong();
+    private final AtomicLong retriedCalls = new AtomicLong();
+    private double limit;
+    private int inFlight;
+    private long pausedUntil;
+    private long nextPermitAt;
+    private long minIntervalMillis;
+
+    public RateLimiter(int maxLimit) {
+        if (maxLimit < 1) {
+            throw new IllegalArgumentException("maxLimit must be at least 1");
+        }
+        this.maxLimit = maxLimit;
+        this.limit = maxLimit;
+    }
+
+    /**
+     * Waits until a call may be made. Every successful acquire must be followed by a {@link #release()}.
+     */
+    public void acquire() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            boolean throttled = false;
+            long now = System.currentTimeMillis();
+            long wait;
+            while ((wait = Math.max(pausedUntil, nextPermitAt) - now) > 0 || inFlight >= (int) limit) {
+                throttled = true;
+                if (wait > 0) {
+                    changed.await(wait, TimeUnit.MILLISECONDS);
+                } else {
+                    changed.await();
+                }
+                now = System.currentTimeMillis();
+            }
+            if (throttled) {
+                throttledCalls.incrementAndGet();
+            }
+            inFlight++;
+            nextPermitAt = now + minIntervalMillis;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adjusts the limit to a response of the server.
+     *
+     * @param status     the HTTP status of the response
+     * @param remaining  the value of the {@code RateLimit-Remaining} header or {@code null}
+     * @param windowSize the value of the {@code RateLimit-Limit} header or {@code null}
+     * @param resetAt    the value of the {@code RateLimit-Reset} header in seconds since the epoch or {@code null}
+     * @param retryAfter the value of the {@code Retry-After} header in seconds or {@code null}
+     */
+    public void onResponse(int status, Integer remaining, Integer windowSize, Long resetAt, Long retryAfter) {
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            if (status == TOO_MANY_REQUESTS || (remaining != null && remaining <= 0)) {
+                if (now >= pausedUntil) {
+                    limit = Math.max(1, limit / 2);
+                }
+                long resumeAt = now + DEFAULT_PAUSE_MILLIS;
+                if (retryAfter != null) {
+                    resumeAt = now + TimeUnit.SECONDS.toMillis(retryAfter);
+                } else if (resetAt != null) {
+                    resumeAt = TimeUnit.SECONDS.toMillis(resetAt);
+                }
+                pausedUntil = Math.max(pausedUntil, Math.min(resumeAt, now + MAX_PAUSE_MILLIS));
+            } else if (status < 400) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+
+            if (remaining != null && remaining > 0 && windowSize != null && resetAt != null && remaining < windowSize * LOW_REMAINING_RATIO) {
+                minIntervalMillis = Math.min(Math.max(0, TimeUnit.SECONDS.toMillis(resetAt) - now) / remaining, MAX_PAUSE_MILLIS);
+            } else if (remaining != null) {
+                minIntervalMillis = 0;
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void recordRetry() {
+        retriedCalls.incrementAndGet();
+    }
+
+    /**
+     * @return the number of calls that may currently be in flight at the same time
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of calls that had to wait before they were made
+     */
+    public long getThrottledCallCount() {
+        return throttledCalls.get();
+    }
+
+    /**
+     * @return the number of calls that were made again after the server answered with {@code 429 Too Many Requests}
+     */
+    public long getRetriedCallCount() {
+        return retriedCalls.get();
+    }
+}
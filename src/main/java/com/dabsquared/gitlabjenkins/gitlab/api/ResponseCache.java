@@ -0,0 +1,136 @@
+package com.dabsquared.gitlabjenkins.gitlab.api;
+
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Remembers the deserialized responses of GitLab GET calls together with their {@code ETag} and {@code Last-Modified}
+ * headers, so that a call can be made conditional and the remembered object be returned when GitLab answers with
+ * {@code 304 Not Modified}. The cache is bounded by the size of the JSON that the responses were deserialized from,
+ * i.e. their size after decompression.
+ * <p>
+ * A cached object is returned to every caller that requests it, so callers must not modify it.
+ */
+public final class ResponseCache {
+    public static final int DEFAULT_SIZE_MB = 10;
+
+    private final long maxBytes;
+    private final Cache<String, Entry> entries;
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * @param maxBytes the summed up size of the cached responses, 0 disables the cache
+     */
+    public ResponseCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.entries = CacheBuilder.newBuilder()
+            .maximumWeight(Math.max(0, maxBytes))
+            .weigher(new Weigher<String, Entry>() {
+                @Override
+                public int weigh(String url, Entry entry) {
+                    return entry.size;
+                }
+            })
+            .build();
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * @return the entry for the given URL or {@code null} if there is none, in which case the call is counted as a miss
+     */
+    public Entry lookup(String url) {
+        lookups.incrementAndGet();
+        Entry entry = entries.getIfPresent(url);
+        if (entry != null) {
+            revalidations.incrementAndGet();
+        }
+        return entry;
+    }
+
+    public void store(String url, String etag, String lastModified, Object value, long size) {
+        if (isEnabled() && value != null && (etag != null || lastModified != null)) {
+            entries.put(url, new Entry(etag, lastModified, value, (int) Math.min(size, Integer.MAX_VALUE)));
+        }
+    }
+
+    /**
+     * @return the cached value of an entry that GitLab reported as not modified
+     */
+    public Object notModified(Entry entry) {
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return the summed up size of the cached responses
+     */
+    public long getSize() {
+        long size = 0;
+        for (Entry entry : entries.asMap().values()) {
+            size += entry.size;
+        }
+        return size;
+    }
+
+    public long getLookupCount() {
+        return lookups.get();
+    }
+
+    /**
+     * @return the number of conditional calls that were made because a response was cached
+     */
+    public long getRevalidationCount() {
+        return revalidations.get();
+    }
+
+    /**
+     * @return the number of calls that were answered from the cache
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return lookups.get() - hits.get();
+    }
+
+    public static final class Entry {
+        private final String etag;
+        private final String lastModified;
+        private final Object value;
+        private final int size;
+
+        private Entry(String etag, String lastModified, Object value, int size) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.value = value;
+            this.size = size;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.dabsquared.gitlabjenkins.gitlab.api.impl;
 
 
+import com.dabsquared.gitlabjenkins.gitlab.api.ConnectionPoolSettings;
+import com.dabsquared.gitlabjenkins.gitlab.api.ConnectionMonitor;
 import com.dabsquared.gitlabjenkins.gitlab.api.GitLabClient;
 import com.dabsquared.gitlabjenkins.gitlab.api.GitLabClientBuilder;
 import hudson.Extension;
@@ -22,8 +24,31 @@ public final class AutodetectGitLabClientBuilder extends GitLabClientBuilder {
     @Override
     @Nonnull
     public GitLabClient buildClient(String url, String token, boolean ignoreCertificateErrors, int connectionTimeout, int readTimeout) {
+        return buildClient(url, token, ignoreCertificateErrors, connectionTimeout, readTimeout, ConnectionPoolSettings.DEFAULT, new ConnectionMonitor());
+    }
+
+    @Override
+    @Nonnull
+    public GitLabClient buildClient(String url, String token, boolean ignoreCertificateErrors, int connectionTimeout, int readTimeout,
+                                    ConnectionPoolSettings poolSettings, ConnectionMonitor monitor) {
+        return buildClient(url, token, ignoreCertificateErrors, connectionTimeout, readTimeout, poolSettings, monitor, null, null);
+    }
+
+    /**
+     * Builds a client that starts with the builder {@code detectedClientBuilderId} if it is known, instead of probing
+     * all builders, and reports newly detected builders to {@code detectionListener} so that they can be persisted.
+     */
+    @Nonnull
+    public GitLabClient buildClient(String url, String token, boolean ignoreCertificateErrors, int connectionTimeout, int readTimeout,
+                                    ConnectionPoolSettings poolSettings, ConnectionMonitor monitor,
+                                    String detectedClientBuilderId, DetectionListener detectionListener) {
         Collection<GitLabClientBuilder> candidates = new ArrayList<>(getAllGitLabClientBuilders());
         candidates.remove(this);
-        return new AutodetectingGitLabClient(candidates, url, token, ignoreCertificateErrors, connectionTimeout, readTimeout);
+        return new AutodetectingGitLabClient(candidates, url, token, ignoreCertificateErrors, connectionTimeout, readTimeout, poolSettings, monitor,
+            detectedClientBuilderId, detectionListener);
+    }
+
+    public interface DetectionListener {
+        void detected(String clientBuilderId);
     }
 }
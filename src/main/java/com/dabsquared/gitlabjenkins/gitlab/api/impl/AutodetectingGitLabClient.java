@@ -1,33 +1,66 @@
 package com.dabsquared.gitlabjenkins.gitlab.api.impl;
 
 
+import com.dabsquared.gitlabjenkins.gitlab.api.ConnectionPoolSettings;
+import com.dabsquared.gitlabjenkins.gitlab.api.ConnectionMonitor;
 import com.dabsquared.gitlabjenkins.gitlab.api.GitLabClient;
 import com.dabsquared.gitlabjenkins.gitlab.api.GitLabClientBuilder;
+import com.dabsquared.gitlabjenkins.gitlab.api.ListingSnapshot;
+import com.dabsquared.gitlabjenkins.gitlab.api.MergeRequestWithSource;
 import com.dabsquared.gitlabjenkins.gitlab.api.model.*;
 import com.dabsquared.gitlabjenkins.gitlab.hook.model.State;
+import com.dabsquared.gitlabjenkins.util.LoggerUtil;
 
 import javax.ws.rs.NotFoundException;
+import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 
 final class AutodetectingGitLabClient implements GitLabClient {
+    private static final Logger LOGGER = Logger.getLogger(AutodetectingGitLabClient.class.getName());
+    private static final long REDETECTION_INTERVAL =
+        TimeUnit.MINUTES.toMillis(Long.getLong(AutodetectingGitLabClient.class.getName() + ".redetectionIntervalMinutes", 10));
+
     private final Iterable<GitLabClientBuilder> builders;
     private final String url;
     private final String token;
     private final boolean ignoreCertificateErrors;
     private final int connectionTimeout;
     private final int readTimeout;
-    private GitLabClient delegate;
+    private final ConnectionPoolSettings poolSettings;
+    private final ConnectionMonitor monitor;
+    private final AutodetectGitLabClientBuilder.DetectionListener detectionListener;
+    private volatile String detectedClientBuilderId;
+    private volatile GitLabClient delegate;
+    private long lastVerification;
 
 
     AutodetectingGitLabClient(Iterable<GitLabClientBuilder> builders, String url, String token, boolean ignoreCertificateErrors, int connectionTimeout, int readTimeout) {
+        this(builders, url, token, ignoreCertificateErrors, connectionTimeout, readTimeout, ConnectionPoolSettings.DEFAULT, new ConnectionMonitor(),
+            null, null);
+    }
+
+    /**
+     * @param detectedClientBuilderId the id of the builder that was detected earlier, it is used without probing again
+     * @param detectionListener       is notified when a builder was detected, may be {@code null}
+     */
+    AutodetectingGitLabClient(Iterable<GitLabClientBuilder> builders, String url, String token, boolean ignoreCertificateErrors, int connectionTimeout, int readTimeout,
+                              ConnectionPoolSettings poolSettings, ConnectionMonitor monitor, String detectedClientBuilderId,
+                              AutodetectGitLabClientBuilder.DetectionListener detectionListener) {
         this.builders = builders;
         this.url = url;
         this.token = token;
         this.ignoreCertificateErrors = ignoreCertificateErrors;
         this.connectionTimeout = connectionTimeout;
         this.readTimeout = readTimeout;
+        this.poolSettings = poolSettings;
+        this.monitor = monitor;
+        this.detectedClientBuilderId = detectedClientBuilderId;
+        this.detectionListener = detectionListener;
     }
 
     @Override
@@ -215,6 +248,39 @@ final class AutodetectingGitLabClient implements GitLabClient {
             });
     }
 
+    @Override
+    public Iterable<MergeRequest> getAllMergeRequests(final String projectId, final State state) {
+        return executeAll(
+            new GitLabOperation<Iterable<MergeRequest>>() {
+                @Override
+                Iterable<MergeRequest> execute(GitLabClient client) {
+                    return client.getAllMergeRequests(projectId, state);
+                }
+            });
+    }
+
+    @Override
+    public Iterable<MergeRequest> getAllMergeRequestSummaries(final String projectId, final State state) {
+        return executeAll(
+            new GitLabOperation<Iterable<MergeRequest>>() {
+                @Override
+                Iterable<MergeRequest> execute(GitLabClient client) {
+                    return client.getAllMergeRequestSummaries(projectId, state);
+                }
+            });
+    }
+
+    @Override
+    public Iterable<MergeRequestWithSource> getOpenMergeRequestsWithSource(final String projectId) {
+        return executeAll(
+            new GitLabOperation<Iterable<MergeRequestWithSource>>() {
+                @Override
+                Iterable<MergeRequestWithSource> execute(GitLabClient client) {
+                    return client.getOpenMergeRequestsWithSource(projectId);
+                }
+            });
+    }
+
     @Override
     public List<Branch> getBranches(final String projectId) {
         return execute(
@@ -226,6 +292,17 @@ final class AutodetectingGitLabClient implements GitLabClient {
             });
     }
 
+    @Override
+    public Iterable<Branch> getAllBranches(final String projectId) {
+        return executeAll(
+            new GitLabOperation<Iterable<Branch>>() {
+                @Override
+                Iterable<Branch> execute(GitLabClient client) {
+                    return client.getAllBranches(projectId);
+                }
+            });
+    }
+
     @Override
     public Branch getBranch(final String projectId, final String branch) {
         return execute(
@@ -281,6 +358,28 @@ final class AutodetectingGitLabClient implements GitLabClient {
             });
     }
 
+    @Override
+    public Iterable<Label> getAllLabels(final String projectId) {
+        return executeAll(
+            new GitLabOperation<Iterable<Label>>() {
+                @Override
+                Iterable<Label> execute(GitLabClient client) {
+                    return client.getAllLabels(projectId);
+                }
+            });
+    }
+
+    @Override
+    public ListingSnapshot<Label> getLabels(final String projectId, final ListingSnapshot<Label> previous) {
+        return execute(
+            new GitLabOperation<ListingSnapshot<Label>>() {
+                @Override
+                ListingSnapshot<Label> execute(GitLabClient client) {
+                    return client.getLabels(projectId, previous);
+                }
+            });
+    }
+
     @Override
     public List<Pipeline> getPipelines(final String projectName) {
         return execute(
@@ -292,13 +391,52 @@ final class AutodetectingGitLabClient implements GitLabClient {
             });
     }
 
+    @Override
+    public Iterable<Pipeline> getAllPipelines(final String projectName) {
+        return executeAll(
+            new GitLabOperation<Iterable<Pipeline>>() {
+                @Override
+                Iterable<Pipeline> execute(GitLabClient client) {
+                    return client.getAllPipelines(projectName);
+                }
+            });
+    }
+
+
+    @Override
+    public synchronized void close() {
+        if (delegate != null) {
+            delegate.close();
+            delegate = null;
+        }
+    }
+
+    String getDetectedClientBuilderId() {
+        return detectedClientBuilderId;
+    }
+
+    private GitLabClient delegate() {
+        GitLabClient current = delegate;
+        if (current == null) {
+            synchronized (this) {
+                if (delegate == null) {
+                    delegate = detectedClientBuilderId == null ? autodetectOrDie() : buildDetectedOrAutodetect();
+                }
+                current = delegate;
+            }
+        }
+
+        return current;
+    }
 
-    private GitLabClient delegate(boolean reset) {
-        if (reset || delegate == null) {
-            delegate = autodetectOrDie();
+    private GitLabClient buildDetectedOrAutodetect() {
+        for (GitLabClientBuilder candidate : builders) {
+            if (candidate.id().equals(detectedClientBuilderId)) {
+                return candidate.buildClient(url, token, ignoreCertificateErrors, connectionTimeout, readTimeout, poolSettings, monitor);
+            }
         }
 
-        return delegate;
+        return autodetectOrDie();
     }
 
     private GitLabClient autodetectOrDie() {
@@ -312,33 +450,101 @@ final class AutodetectingGitLabClient implements GitLabClient {
 
     private GitLabClient autodetect() {
         for (GitLabClientBuilder candidate : builders) {
-            GitLabClient client = candidate.buildClient(url, token, ignoreCertificateErrors, connectionTimeout, readTimeout);
+            GitLabClient client = candidate.buildClient(url, token, ignoreCertificateErrors, connectionTimeout, readTimeout, poolSettings, monitor);
             try {
                 client.getCurrentUser();
+                detected(candidate.id());
                 return client;
             } catch (NotFoundException ignored) {
                 // api-endpoint not found (== api-level not supported by this client)
+                client.close();
+            } catch (RuntimeException e) {
+                client.close();
+                throw e;
             }
         }
 
         return null;
     }
 
+    private void detected(String clientBuilderId) {
+        if (!clientBuilderId.equals(detectedClientBuilderId)) {
+            LOGGER.log(Level.INFO, "Detected API level {0} of GitLab server at {1}", LoggerUtil.toArray(clientBuilderId, url));
+            detectedClientBuilderId = clientBuilderId;
+            if (detectionListener != null) {
+                detectionListener.detected(clientBuilderId);
+            }
+        }
+    }
+
+    /**
+     * Called when {@code client} answered a call with 404. That is an ordinary answer for a missing commit, branch or
+     * project, so the API level is detected again only if the current user cannot be found either, which means that the
+     * API level is not supported anymore. This is checked at most once per {@link #REDETECTION_INTERVAL}.
+     *
+     * @return {@code true} if the call should be retried with another client
+     */
+    private synchronized boolean redetect(GitLabClient client) {
+        if (client != delegate) {
+            return delegate != null;
+        }
+        long now = System.currentTimeMillis();
+        if (now - lastVerification < REDETECTION_INTERVAL) {
+            return false;
+        }
+        lastVerification = now;
+        try {
+            client.getCurrentUser();
+            return false;
+        } catch (NotFoundException e) {
+            LOGGER.log(Level.INFO, "API level {0} is not supported by GitLab server at {1} anymore", LoggerUtil.toArray(detectedClientBuilderId, url));
+        }
+        GitLabClient detected = autodetect();
+        if (detected == null) {
+            return false;
+        }
+        delegate = detected;
+        client.close();
+        return true;
+    }
+
     private <R> R execute(GitLabOperation<R> operation) {
-        return operation.execute(false);
+        return operation.execute();
+    }
+
+    /**
+     * Listings are loaded lazily, so the first page is loaded within {@link GitLabOperation#execute()} when the iteration
+     * starts. Otherwise a {@code 404} of an API level that is not supported anymore would reach the caller.
+     */
+    private <T> Iterable<T> executeAll(final GitLabOperation<Iterable<T>> operation) {
+        return new Iterable<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                return execute(
+                    new GitLabOperation<Iterator<T>>() {
+                        @Override
+                        Iterator<T> execute(GitLabClient client) {
+                            Iterator<T> iterator = operation.execute(client).iterator();
+                            iterator.hasNext();
+                            return iterator;
+                        }
+                    });
+            }
+        };
     }
 
 
     private abstract class GitLabOperation<R> {
-        private R execute(boolean reset) {
+        private R execute() {
+            GitLabClient client = delegate();
             try {
-                return execute(delegate(reset));
+                return execute(client);
             } catch (NotFoundException e) {
-                if (reset) {
+                if (!redetect(client)) {
                     throw e;
                 }
 
-                return execute(true);
+                return execute(delegate());
             }
         }
 
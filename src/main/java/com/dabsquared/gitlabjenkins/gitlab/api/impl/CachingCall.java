@@ -0,0 +1,84 @@
+package com.dabsquared.gitlabjenkins.gitlab.api.impl;
+
+
+import com.dabsquared.gitlabjenkins.gitlab.api.ResponseCache;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+
+
+/**
+ * A cacheable call that the current thread makes. The invocation handler starts and ends it, the response cache filter
+ * makes the request conditional and records the validators of the response.
+ */
+final class CachingCall {
+    private static final ThreadLocal<CachingCall> CURRENT = new ThreadLocal<>();
+
+    private final ResponseCache cache;
+    private String url;
+    private ResponseCache.Entry entry;
+    private boolean notModified;
+    private String etag;
+    private String lastModified;
+    private long size;
+
+    private CachingCall(ResponseCache cache) {
+        this.cache = cache;
+    }
+
+    static CachingCall start(ResponseCache cache) {
+        CachingCall call = new CachingCall(cache);
+        CURRENT.set(call);
+        return call;
+    }
+
+    /**
+     * @return the cacheable call of the current thread or {@code null} if it does not make one
+     */
+    static CachingCall current() {
+        return CURRENT.get();
+    }
+
+    void end() {
+        CURRENT.remove();
+    }
+
+    void onRequest(String url, MultivaluedMap<String, Object> headers) {
+        this.url = url;
+        this.entry = cache.lookup(url);
+        this.notModified = false;
+        if (entry != null) {
+            if (entry.getEtag() != null) {
+                headers.putSingle(HttpHeaders.IF_NONE_MATCH, entry.getEtag());
+            }
+            if (entry.getLastModified() != null) {
+                headers.putSingle(HttpHeaders.IF_MODIFIED_SINCE, entry.getLastModified());
+            }
+        }
+    }
+
+    void onResponse(int status, MultivaluedMap<String, String> headers) {
+        notModified = status == 304 && entry != null;
+        etag = headers.getFirst(HttpHeaders.ETAG);
+        lastModified = headers.getFirst(HttpHeaders.LAST_MODIFIED);
+        size = 0;
+    }
+
+    void addReceivedBytes(long bytes) {
+        size += bytes;
+    }
+
+    boolean isNotModified() {
+        return notModified;
+    }
+
+    Object getCachedValue() {
+        return cache.notModified(entry);
+    }
+
+    void store(Object value) {
+        if (url != null) {
+            cache.store(url, etag, lastModified, value, size);
+        }
+    }
+}
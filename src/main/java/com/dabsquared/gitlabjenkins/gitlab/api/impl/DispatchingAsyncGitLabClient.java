@@ -0,0 +1,256 @@
+package com.dabsquared.gitlabjenkins.gitlab.api.impl;
+
+
+import com.dabsquared.gitlabjenkins.gitlab.api.AsyncGitLabClient;
+import com.dabsquared.gitlabjenkins.gitlab.api.CommitStatusOrder;
+import com.dabsquared.gitlabjenkins.gitlab.api.GitLabClient;
+import com.dabsquared.gitlabjenkins.gitlab.api.model.Awardable;
+import com.dabsquared.gitlabjenkins.gitlab.api.model.Branch;
+import com.dabsquared.gitlabjenkins.gitlab.api.model.BuildState;
+import com.dabsquared.gitlabjenkins.gitlab.api.model.MergeRequest;
+import com.dabsquared.gitlabjenkins.util.LoggerUtil;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * Executes the calls of a {@link GitLabClient} on a bounded pool of threads. Calls that exceed the pool size wait in
+ * the pool's queue instead of holding the threads that issued them.
+ * <p>
+ * Commit status updates keep the order in which they were issued relative to all other status updates of the
+ * connection, a queued update is dropped if a later one of the same status was sent meanwhile. The queue is bounded;
+ * when it is full during an outage of GitLab, the oldest queued status update is dropped to make room.
+ */
+@Restricted(NoExternalUse.class)
+public final class DispatchingAsyncGitLabClient implements AsyncGitLabClient {
+    private static final Logger LOGGER = Logger.getLogger(DispatchingAsyncGitLabClient.class.getName());
+    private static final int THREADS = Integer.getInteger(DispatchingAsyncGitLabClient.class.getName() + ".threads", 4);
+    private static final int QUEUE_SIZE = Integer.getInteger(DispatchingAsyncGitLabClient.class.getName() + ".queueSize", 1000);
+
+    private final GitLabClient client;
+    private final ListeningExecutorService executor;
+    private final CommitStatusOrder statusOrder;
+
+    public DispatchingAsyncGitLabClient(GitLabClient client, ListeningExecutorService executor, CommitStatusOrder statusOrder) {
+        this.client = client;
+        this.executor = executor;
+        this.statusOrder = statusOrder;
+    }
+
+    public static DispatchingAsyncGitLabClient create(GitLabClient client, String connectionName, CommitStatusOrder statusOrder) {
+        return new DispatchingAsyncGitLabClient(client, MoreExecutors.listeningDecorator(createExecutor(connectionName, QUEUE_SIZE)), statusOrder);
+    }
+
+    static ThreadPoolExecutor createExecutor(String connectionName, int queueSize) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(queueSize),
+            new NamingThreadFactory(new DaemonThreadFactory(), "GitLab calls [" + connectionName + "]"), new DropOldestStatusUpdatePolicy(connectionName));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Stops accepting calls. Calls that were already submitted are still executed.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * @return {@code true} if the client was shut down and all submitted calls have completed
+     */
+    public boolean isTerminated() {
+        return executor.isTerminated();
+    }
+
+    @Override
+    public String getHostUrl() {
+        return client.getHostUrl();
+    }
+
+    @Override
+    public ListenableFuture<Void> changeBuildStatus(final String projectId, final String sha, final BuildState state, final String ref,
+                                                   final String context, final String targetUrl, final String description) {
+        return submitStatusUpdate(sha, context, new Runnable() {
+            @Override
+            public void run() {
+                client.changeBuildStatus(projectId, sha, state, ref, context, targetUrl, description);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<Void> changeBuildStatus(final Integer projectId, final String sha, final BuildState state, final String ref,
+                                                   final String context, final String targetUrl, final String description) {
+        return submitStatusUpdate(sha, context, new Runnable() {
+            @Override
+            public void run() {
+                client.changeBuildStatus(projectId, sha, state, ref, context, targetUrl, description);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<Void> getCommit(final String projectId, final String sha) {
+        return submit(new Call() {
+            @Override
+            void run() {
+                client.getCommit(projectId, sha);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<Void> acceptMergeRequest(final MergeRequest mr, final String mergeCommitMessage, final boolean shouldRemoveSourceBranch) {
+        return submit(new Call() {
+            @Override
+            void run() {
+                client.acceptMergeRequest(mr, mergeCommitMessage, shouldRemoveSourceBranch);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<Void> createMergeRequestNote(final MergeRequest mr, final String body) {
+        return submit(new Call() {
+            @Override
+            void run() {
+                client.createMergeRequestNote(mr, body);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<List<Awardable>> getMergeRequestEmoji(final MergeRequest mr) {
+        return executor.submit(new Callable<List<Awardable>>() {
+            @Override
+            public List<Awardable> call() {
+                return client.getMergeRequestEmoji(mr);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<Void> awardMergeRequestEmoji(final MergeRequest mr, final String name) {
+        return submit(new Call() {
+            @Override
+            void run() {
+                client.awardMergeRequestEmoji(mr, name);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<Void> deleteMergeRequestEmoji(final MergeRequest mr, final Integer awardId) {
+        return submit(new Call() {
+            @Override
+            void run() {
+                client.deleteMergeRequestEmoji(mr, awardId);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<Branch> getBranch(final String projectId, final String branch) {
+        return executor.submit(new Callable<Branch>() {
+            @Override
+            public Branch call() {
+                return client.getBranch(projectId, branch);
+            }
+        });
+    }
+
+    private ListenableFuture<Void> submit(Call call) {
+        return executor.submit(call);
+    }
+
+    private ListenableFuture<Void> submitStatusUpdate(final String sha, final String context, final Runnable update) {
+        final long position = statusOrder.issue();
+        ListenableFutureTask<Void> task = ListenableFutureTask.create(new Call() {
+            @Override
+            void run() {
+                if (!statusOrder.send(position, sha, context, update)) {
+                    LOGGER.log(Level.FINE, "Dropped outdated status update of {0} for commit {1}", LoggerUtil.toArray(context, sha));
+                }
+            }
+        });
+        executor.execute(new StatusUpdate(task));
+        return task;
+    }
+
+    private abstract static class Call implements Callable<Void> {
+        @Override
+        public final Void call() {
+            run();
+            return null;
+        }
+
+        abstract void run();
+    }
+
+    private static final class StatusUpdate implements Runnable {
+        private final ListenableFutureTask<Void> task;
+
+        private StatusUpdate(ListenableFutureTask<Void> task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+    }
+
+    /**
+     * Makes room for a call by dropping the oldest queued status update. A status update that finds no other one to
+     * drop is dropped itself, other calls are rejected.
+     */
+    private static final class DropOldestStatusUpdatePolicy implements RejectedExecutionHandler {
+        private final String connectionName;
+
+        private DropOldestStatusUpdatePolicy(String connectionName) {
+            this.connectionName = connectionName;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable call, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("GitLab connection " + connectionName + " was closed");
+            }
+            BlockingQueue<Runnable> queue = executor.getQueue();
+            for (Runnable queued : queue) {
+                if (queued instanceof StatusUpdate && queue.remove(queued)) {
+                    ((StatusUpdate) queued).task.cancel(false);
+                    LOGGER.log(Level.WARNING, "Too many queued calls to GitLab connection {0}, dropped the oldest status update", connectionName);
+                    if (queue.offer(call)) {
+                        return;
+                    }
+                    break;
+                }
+            }
+            if (call instanceof StatusUpdate) {
+                ((StatusUpdate) call).task.cancel(false);
+                LOGGER.log(Level.WARNING, "Too many queued calls to GitLab connection {0}, dropped a status update", connectionName);
+                return;
+            }
+            LOGGER.log(Level.WARNING, "Too many queued calls to GitLab connection {0}, rejected a call", connectionName);
+            throw new RejectedExecutionException("Too many queued calls to GitLab connection " + connectionName);
+        }
+    }
+}
@@ -4,6 +4,7 @@ package com.dabsquared.gitlabjenkins.gitlab.api.impl;
 import com.dabsquared.gitlabjenkins.gitlab.api.model.*;
 import com.dabsquared.gitlabjenkins.gitlab.hook.model.State;
 
+import javax.ws.rs.core.Response;
 import java.util.List;
 
 
@@ -38,8 +39,12 @@ interface GitLabApiProxy {
 
     List<MergeRequest> getMergeRequests(String projectId, State state, int page, int perPage);
 
+    Response getMergeRequestsPage(String projectId, State state, int page, int perPage);
+
     List<Branch> getBranches(String projectId);
 
+    Response getBranchesPage(String projectId, int page, int perPage);
+
     Branch getBranch(String projectId, String branch);
 
     void headCurrentUser();
@@ -52,5 +57,9 @@ interface GitLabApiProxy {
 
     List<Label> getLabels(String projectId);
 
+    Response getLabelsPage(String projectId, int page, int perPage, String entityTag);
+
     List<Pipeline> getPipelines(String projectName);
+
+    Response getPipelinesPage(String projectName, int page, int perPage);
 }
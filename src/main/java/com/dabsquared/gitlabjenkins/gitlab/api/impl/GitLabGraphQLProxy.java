@@ -0,0 +1,28 @@
+package com.dabsquared.gitlabjenkins.gitlab.api.impl;
+
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import java.util.Map;
+
+
+/**
+ * The GraphQL endpoint of GitLab. It is not versioned like the REST API and exists since GitLab 12.
+ */
+@Path("/api/graphql")
+interface GitLabGraphQLProxy {
+
+    /**
+     * @param request the {@code query} and its {@code variables}
+     * @return the whole response document with its {@code data} and {@code errors}
+     */
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    JsonNode query(Map<String, Object> request);
+}
@@ -0,0 +1,355 @@
+package com.dabsquared.gitlabjenkins.gitlab.api.impl;
+
+
+import com.dabsquared.gitlabjenkins.gitlab.api.MergeRequestWithSource;
+import com.dabsquared.gitlabjenkins.gitlab.api.model.Branch;
+import com.dabsquared.gitlabjenkins.gitlab.api.model.Commit;
+import com.dabsquared.gitlabjenkins.gitlab.api.model.MergeRequest;
+import com.dabsquared.gitlabjenkins.gitlab.api.model.Namespace;
+import com.dabsquared.gitlabjenkins.gitlab.api.model.Project;
+import com.dabsquared.gitlabjenkins.util.LoggerUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableSet;
+
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.WebApplicationException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * Loads the open merge requests of a project together with the head commit of their source branch and their source
+ * project through the GraphQL API of GitLab, so that two requests per page replace the listing plus two REST calls per
+ * merge request. The heads are queried from the source branches with the second request, because the {@code diffHeadSha}
+ * of a merge request lags behind its source branch until GitLab has processed a push.
+ * <p>
+ * If the server has no GraphQL endpoint or its schema lacks fields of the query (e.g. because it is older than GitLab
+ * 14.7), {@code null} is returned without asking again for {@link #REPROBE_INTERVAL}, so that the caller uses the REST API.
+ * Afterwards GraphQL is tried again, the server may have been upgraded meanwhile. Other errors only make the current call
+ * fall back to the REST API.
+ */
+final class GraphQLMergeRequestLoader {
+    private static final Logger LOGGER = Logger.getLogger(GraphQLMergeRequestLoader.class.getName());
+    private static final long REPROBE_INTERVAL =
+        TimeUnit.MINUTES.toMillis(Long.getLong(GraphQLMergeRequestLoader.class.getName() + ".reprobeIntervalMinutes", 60));
+    private static final int PER_PAGE = 100;
+    // GitLab limits the complexity of a query, so the heads of a page are queried in batches
+    private static final int HEADS_PER_QUERY = Integer.getInteger(GraphQLMergeRequestLoader.class.getName() + ".headsPerQuery", 20);
+    private static final String PROJECT_GID = "gid://gitlab/Project/";
+    private static final Set<String> SCHEMA_ERROR_CODES =
+        ImmutableSet.of("undefinedField", "undefinedType", "argumentNotAccepted", "missingRequiredArguments");
+    private static final String QUERY =
+        "query($ids: [ID!], $after: String) {"
+            + " projects(ids: $ids) { nodes {"
+            + " mergeRequests(state: opened, first: " + PER_PAGE + ", after: $after) {"
+            + " pageInfo { hasNextPage endCursor }"
+            + " nodes {"
+            + " id iid title description draft sourceBranch targetBranch sourceProjectId targetProjectId"
+            + " labels { nodes { title } }"
+            + " sourceProject { id name fullPath webUrl sshUrlToRepo httpUrlToRepo namespace { path } }"
+            + " } } } } }";
+
+    private final GitLabGraphQLProxy api;
+    private final long reprobeInterval;
+    private volatile long unsupportedSince;
+    private volatile boolean supported = true;
+
+    GraphQLMergeRequestLoader(GitLabGraphQLProxy api) {
+        this(api, REPROBE_INTERVAL);
+    }
+
+    GraphQLMergeRequestLoader(GitLabGraphQLProxy api, long reprobeInterval) {
+        this.api = api;
+        this.reprobeInterval = reprobeInterval;
+    }
+
+    /**
+     * Loads the first page right away, the following ones while iterating.
+     *
+     * @param projectId the numeric id of the project
+     * @return the open merge requests or {@code null} if they cannot be loaded through GraphQL
+     */
+    Iterable<MergeRequestWithSource> getOpenMergeRequests(final String projectId) {
+        if (!isSupported() || !isNumeric(projectId)) {
+            return null;
+        }
+
+        final ResultPage first;
+        try {
+            first = load(projectId, null);
+        } catch (NotFoundException e) {
+            unsupported("GitLab has no GraphQL endpoint");
+            return null;
+        } catch (UnsupportedQueryException e) {
+            if (e.isSchemaError()) {
+                unsupported(e.getMessage());
+            } else {
+                LOGGER.log(Level.FINE, "Falling back to the REST API to get the open merge requests of {0}: {1}",
+                    LoggerUtil.toArray(projectId, e.getMessage()));
+            }
+            return null;
+        }
+        supported = true;
+        return new Iterable<MergeRequestWithSource>() {
+            @Override
+            public Iterator<MergeRequestWithSource> iterator() {
+                return new PageIterator(projectId, first);
+            }
+        };
+    }
+
+    /**
+     * @return {@code false} if GraphQL is known to be unsupported and should not be probed again yet
+     */
+    private boolean isSupported() {
+        return supported || System.currentTimeMillis() - unsupportedSince >= reprobeInterval;
+    }
+
+    private void unsupported(String reason) {
+        unsupportedSince = System.currentTimeMillis();
+        if (supported) {
+            supported = false;
+            LOGGER.log(Level.INFO, "Falling back to the REST API to get open merge requests: {0}", reason);
+        }
+    }
+
+    private ResultPage load(String projectId, String cursor) {
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("ids", Collections.singletonList(PROJECT_GID + projectId));
+        variables.put("after", cursor);
+        Map<String, Object> request = new HashMap<>();
+        request.put("query", QUERY);
+        request.put("variables", variables);
+
+        JsonNode response = api.query(request);
+        JsonNode projects = response == null ? null : response.path("data").path("projects");
+        if (projects == null || !projects.isObject()) {
+            throw new UnsupportedQueryException(getErrorMessage(response), isSchemaError(response));
+        }
+
+        Iterator<JsonNode> projectNodes = projects.path("nodes").elements();
+        if (!projectNodes.hasNext()) {
+            return new ResultPage(Collections.<MergeRequestWithSource>emptyList(), null);
+        }
+        JsonNode mergeRequests = projectNodes.next().path("mergeRequests");
+        List<JsonNode> nodes = new ArrayList<>();
+        for (JsonNode node : mergeRequests.path("nodes")) {
+            nodes.add(node);
+        }
+        List<MergeRequestWithSource> items = new ArrayList<>();
+        for (int from = 0; from < nodes.size(); from += HEADS_PER_QUERY) {
+            List<JsonNode> batch = nodes.subList(from, Math.min(from + HEADS_PER_QUERY, nodes.size()));
+            List<Branch> sourceBranches = loadSourceBranches(batch);
+            for (int i = 0; i < batch.size(); i++) {
+                items.add(toMergeRequestWithSource(batch.get(i), sourceBranches.get(i)));
+            }
+        }
+        JsonNode pageInfo = mergeRequests.path("pageInfo");
+        return new ResultPage(items, pageInfo.path("hasNextPage").asBoolean() ? pageInfo.path("endCursor").textValue() : null);
+    }
+
+    /**
+     * @return the source branches of the merge requests with their head commits, {@code null} for those whose head
+     * could not be queried, so that the caller gets them through the REST API
+     */
+    private List<Branch> loadSourceBranches(List<JsonNode> mergeRequests) {
+        List<Branch> result = new ArrayList<>(Collections.<Branch>nCopies(mergeRequests.size(), null));
+        StringBuilder parameters = new StringBuilder();
+        StringBuilder fields = new StringBuilder();
+        Map<String, Object> variables = new HashMap<>();
+        for (int i = 0; i < mergeRequests.size(); i++) {
+            String projectPath = mergeRequests.get(i).path("sourceProject").path("fullPath").textValue();
+            String sourceBranch = mergeRequests.get(i).path("sourceBranch").textValue();
+            if (projectPath == null || sourceBranch == null) {
+                continue;
+            }
+            parameters.append(parameters.length() == 0 ? "" : ", ")
+                .append("$project").append(i).append(": ID!, $ref").append(i).append(": String");
+            fields.append(" head").append(i).append(": project(fullPath: $project").append(i).append(") {")
+                .append(" repository { tree(ref: $ref").append(i).append(") { lastCommit { sha authorName authorEmail } } } }");
+            variables.put("project" + i, projectPath);
+            variables.put("ref" + i, sourceBranch);
+        }
+        if (variables.isEmpty()) {
+            return result;
+        }
+        Map<String, Object> request = new HashMap<>();
+        request.put("query", "query(" + parameters + ") {" + fields + " }");
+        request.put("variables", variables);
+
+        JsonNode response;
+        try {
+            response = api.query(request);
+        } catch (WebApplicationException | ProcessingException e) {
+            LOGGER.log(Level.FINE, "Falling back to the REST API to get the heads of the source branches", e);
+            return result;
+        }
+        JsonNode data = response == null ? null : response.path("data");
+        if (data == null || !data.isObject()) {
+            LOGGER.log(Level.FINE, "Falling back to the REST API to get the heads of the source branches: {0}", getErrorMessage(response));
+            return result;
+        }
+        for (int i = 0; i < mergeRequests.size(); i++) {
+            JsonNode lastCommit = data.path("head" + i).path("repository").path("tree").path("lastCommit");
+            if (lastCommit.path("sha").isTextual()) {
+                Commit commit = new Commit();
+                commit.setId(lastCommit.path("sha").textValue());
+                commit.setAuthorName(lastCommit.path("authorName").textValue());
+                commit.setAuthorEmail(lastCommit.path("authorEmail").textValue());
+                Branch branch = new Branch();
+                branch.setName(mergeRequests.get(i).path("sourceBranch").textValue());
+                branch.setCommit(commit);
+                result.set(i, branch);
+            }
+        }
+        return result;
+    }
+
+    private static MergeRequestWithSource toMergeRequestWithSource(JsonNode node, Branch sourceBranch) {
+        MergeRequest mergeRequest = new MergeRequest();
+        mergeRequest.setId(toId(node.path("id")));
+        mergeRequest.setIid(toInteger(node.path("iid")));
+        mergeRequest.setTitle(node.path("title").textValue());
+        mergeRequest.setDescription(node.path("description").textValue());
+        mergeRequest.setWorkInProgress(node.path("draft").isBoolean() ? node.path("draft").booleanValue() : null);
+        mergeRequest.setSourceBranch(node.path("sourceBranch").textValue());
+        mergeRequest.setTargetBranch(node.path("targetBranch").textValue());
+        mergeRequest.setSourceProjectId(toInteger(node.path("sourceProjectId")));
+        mergeRequest.setTargetProjectId(toInteger(node.path("targetProjectId")));
+        mergeRequest.setProjectId(mergeRequest.getTargetProjectId());
+        List<String> labels = new ArrayList<>();
+        for (JsonNode label : node.path("labels").path("nodes")) {
+            labels.add(label.path("title").textValue());
+        }
+        mergeRequest.setLabels(labels);
+        return new MergeRequestWithSource(mergeRequest, sourceBranch, toProject(node.path("sourceProject")));
+    }
+
+    private static Project toProject(JsonNode node) {
+        if (!node.isObject()) {
+            return null;
+        }
+        Namespace namespace = new Namespace();
+        namespace.setPath(node.path("namespace").path("path").textValue());
+        Project project = new Project();
+        project.setId(toId(node.path("id")));
+        project.setName(node.path("name").textValue());
+        project.setNamespace(namespace);
+        project.setWebUrl(node.path("webUrl").textValue());
+        project.setSshUrlToRepo(node.path("sshUrlToRepo").textValue());
+        project.setHttpUrlToRepo(node.path("httpUrlToRepo").textValue());
+        return project;
+    }
+
+    /**
+     * @param node a global id like {@code gid://gitlab/MergeRequest/42}
+     */
+    private static Integer toId(JsonNode node) {
+        String id = node.textValue();
+        return id == null ? null : toInteger(id.substring(id.lastIndexOf('/') + 1));
+    }
+
+    private static Integer toInteger(JsonNode node) {
+        if (node.isNumber()) {
+            return node.intValue();
+        }
+        return node.isTextual() ? toInteger(node.textValue()) : null;
+    }
+
+    private static Integer toInteger(String value) {
+        try {
+            return Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static boolean isNumeric(String value) {
+        return value != null && toInteger(value) != null;
+    }
+
+    private static String getErrorMessage(JsonNode response) {
+        if (response != null && response.path("errors").size() > 0) {
+            return response.path("errors").path(0).path("message").asText();
+        }
+        return "GitLab returned no data for the GraphQL query";
+    }
+
+    /**
+     * @return {@code true} if GitLab rejected the query because its schema lacks a type, field or argument of it
+     */
+    private static boolean isSchemaError(JsonNode response) {
+        if (response == null) {
+            return false;
+        }
+        for (JsonNode error : response.path("errors")) {
+            String code = error.path("extensions").path("code").asText();
+            String message = error.path("message").asText();
+            if (SCHEMA_ERROR_CODES.contains(code) || message.contains("doesn't exist") || message.contains("doesn't accept argument")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private class PageIterator extends AbstractIterator<MergeRequestWithSource> {
+        private final String projectId;
+        private ResultPage page;
+        private Iterator<MergeRequestWithSource> current;
+
+        private PageIterator(String projectId, ResultPage first) {
+            this.projectId = projectId;
+            this.page = first;
+            this.current = first.items.iterator();
+        }
+
+        @Override
+        protected MergeRequestWithSource computeNext() {
+            while (!current.hasNext()) {
+                if (page.endCursor == null) {
+                    return endOfData();
+                }
+                page = load(projectId, page.endCursor);
+                current = page.items.iterator();
+            }
+            return current.next();
+        }
+    }
+
+    private static final class ResultPage {
+        private final List<MergeRequestWithSource> items;
+        private final String endCursor;
+
+        private ResultPage(List<MergeRequestWithSource> items, String endCursor) {
+            this.items = items;
+            this.endCursor = endCursor;
+        }
+    }
+
+    /**
+     * GitLab answered the query with errors instead of data. On a following page this ends the iteration like any
+     * other failed call.
+     */
+    private static final class UnsupportedQueryException extends ProcessingException {
+        private final boolean schemaError;
+
+        private UnsupportedQueryException(String message, boolean schemaError) {
+            super(message);
+            this.schemaError = schemaError;
+        }
+
+        private boolean isSchemaError() {
+            return schemaError;
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package com.dabsquared.gitlabjenkins.gitlab.api.impl;
+
+
+import com.dabsquared.gitlabjenkins.gitlab.api.ApiMetrics;
+import com.dabsquared.gitlabjenkins.gitlab.api.Bulkhead;
+import com.dabsquared.gitlabjenkins.gitlab.api.CallNotPermittedException;
+import com.dabsquared.gitlabjenkins.gitlab.api.CircuitBreaker;
+import com.dabsquared.gitlabjenkins.gitlab.api.ConnectionMonitor;
+import com.dabsquared.gitlabjenkins.gitlab.api.EndpointMetrics;
+import com.dabsquared.gitlabjenkins.gitlab.api.RateLimiter;
+import com.dabsquared.gitlabjenkins.gitlab.api.ResponseCache;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.Path;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.RedirectionException;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.client.ResponseProcessingException;
+import javax.ws.rs.core.Response;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * Guards every call of an API proxy with the circuit breaker, the bulkhead and the rate limiter of its connection and
+ * records its latency in the metrics of the called endpoint. GET calls that return an object are answered from the response
+ * cache of the connection when GitLab reports that the cached response was not modified, and concurrent identical GET
+ * calls share one request.
+ * Calls that were answered with {@code 429 Too Many Requests} are repeated; the rate limiter learns about the throttling
+ * from the response headers, so a repeated call waits until the server accepts requests again. A call only takes a
+ * permit of the bulkhead once the rate limiter let it through, so calls waiting for the rate limit do not crowd out the
+ * others. Only calls that were sent count towards the circuit breaker, and only the time spent on the request itself
+ * counts towards its slow call rate.
+ */
+final class GuardingInvocationHandler implements InvocationHandler {
+    private static final int MAX_RETRIES = Integer.getInteger(GuardingInvocationHandler.class.getName() + ".maxRetries", 3);
+
+    private static final ThreadLocal<EndpointMetrics> CURRENT_ENDPOINT = new ThreadLocal<>();
+
+    private final Class<?> apiProxyClass;
+    private final Object delegate;
+    private final ConnectionMonitor monitor;
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+    private final RateLimiter rateLimiter;
+    private final ApiMetrics apiMetrics;
+    private final ResponseCache responseCache;
+    private final ConcurrentMap<Method, EndpointMetrics> endpoints = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Method, Boolean> cacheable = new ConcurrentHashMap<>();
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    private GuardingInvocationHandler(Class<?> apiProxyClass, Object delegate, ConnectionMonitor monitor) {
+        this.apiProxyClass = apiProxyClass;
+        this.delegate = delegate;
+        this.monitor = monitor;
+        this.circuitBreaker = monitor.getCircuitBreaker();
+        this.bulkhead = monitor.getBulkhead();
+        this.rateLimiter = monitor.getRateLimiter();
+        this.apiMetrics = monitor.getApiMetrics();
+        this.responseCache = monitor.getResponseCache();
+    }
+
+    static GitLabApiProxy wrap(Class<? extends GitLabApiProxy> apiProxyClass, GitLabApiProxy delegate, ConnectionMonitor monitor) {
+        return apiProxyClass.cast(newProxy(apiProxyClass, delegate, monitor));
+    }
+
+    static GitLabGraphQLProxy wrap(GitLabGraphQLProxy delegate, ConnectionMonitor monitor) {
+        return GitLabGraphQLProxy.class.cast(newProxy(GitLabGraphQLProxy.class, delegate, monitor));
+    }
+
+    private static Object newProxy(Class<?> apiProxyClass, Object delegate, ConnectionMonitor monitor) {
+        return Proxy.newProxyInstance(apiProxyClass.getClassLoader(), new Class<?>[]{apiProxyClass},
+            new GuardingInvocationHandler(apiProxyClass, delegate, monitor));
+    }
+
+    /**
+     * @return the metrics of the endpoint that the given method of a proxy calls, detached metrics if the proxy is not
+     * guarded
+     */
+    static EndpointMetrics endpoint(Object proxy, Method method) {
+        if (Proxy.isProxyClass(proxy.getClass()) && Proxy.getInvocationHandler(proxy) instanceof GuardingInvocationHandler) {
+            return ((GuardingInvocationHandler) Proxy.getInvocationHandler(proxy)).endpoint(method);
+        }
+        return new EndpointMetrics();
+    }
+
+    /**
+     * @return the metrics of the endpoint that the current thread is calling or {@code null} if it does not call GitLab
+     */
+    static EndpointMetrics currentEndpoint() {
+        return CURRENT_ENDPOINT.get();
+    }
+
+    @Override
+    public Object invoke(Object proxy, final Method method, final Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return invokeDelegate(method, args);
+        }
+
+        final EndpointMetrics endpoint = endpoint(method);
+        if (!isCacheable(method)) {
+            return invokeGuarded(method, args, endpoint);
+        }
+        List<Object> key = Arrays.<Object>asList(method, args == null ? Collections.emptyList() : Arrays.asList(args));
+        return singleFlight.execute(key, new SingleFlight.Call() {
+            @Override
+            public Object call() throws Throwable {
+                return invokeGuarded(method, args, endpoint);
+            }
+        }, endpoint);
+    }
+
+    private Object invokeGuarded(Method method, Object[] args, EndpointMetrics endpoint) throws Throwable {
+        circuitBreaker.permit();
+        boolean sent = false;
+        boolean failed = true;
+        long duration = 0;
+        CURRENT_ENDPOINT.set(endpoint);
+        try {
+            for (int attempt = 0; ; attempt++) {
+                acquire(rateLimiter);
+                Object result;
+                try {
+                    acquire(bulkhead);
+                    sent = true;
+                    failed = true;
+                    long start = System.currentTimeMillis();
+                    try {
+                        result = invokeCaching(method, args);
+                    } catch (WebApplicationException e) {
+                        failed = isServerError(e.getResponse());
+                        checkAuthorized(e.getResponse());
+                        if (attempt < MAX_RETRIES && isTooManyRequests(e.getResponse())) {
+                            recordRetry(endpoint);
+                            continue;
+                        }
+                        throw e;
+                    } catch (ProcessingException e) {
+                        if (!(e instanceof ResponseProcessingException)) {
+                            endpoint.recordTransportError();
+                        }
+                        throw e;
+                    } finally {
+                        duration = System.currentTimeMillis() - start;
+                        endpoint.recordLatency(duration);
+                        bulkhead.release();
+                    }
+                } finally {
+                    rateLimiter.release();
+                }
+
+                if (result instanceof Response) {
+                    if (attempt < MAX_RETRIES && isTooManyRequests((Response) result)) {
+                        ((Response) result).close();
+                        recordRetry(endpoint);
+                        continue;
+                    }
+                    failed = isServerError((Response) result);
+                    checkAuthorized((Response) result);
+                } else {
+                    failed = false;
+                }
+                return result;
+            }
+        } catch (ProcessingException | WebApplicationException | Error e) {
+            throw e;
+        } catch (RuntimeException e) {
+            failed = false;
+            throw e;
+        } finally {
+            CURRENT_ENDPOINT.remove();
+            if (sent) {
+                circuitBreaker.record(failed, duration);
+            } else {
+                circuitBreaker.release();
+            }
+        }
+    }
+
+    private Object invokeCaching(Method method, Object[] args) throws Throwable {
+        if (!responseCache.isEnabled() || !isCacheable(method)) {
+            return invokeDelegate(method, args);
+        }
+
+        CachingCall call = CachingCall.start(responseCache);
+        try {
+            Object result = invokeDelegate(method, args);
+            call.store(result);
+            return result;
+        } catch (RedirectionException e) {
+            if (call.isNotModified()) {
+                e.getResponse().close();
+                return call.getCachedValue();
+            }
+            throw e;
+        } finally {
+            call.end();
+        }
+    }
+
+    private boolean isCacheable(Method method) {
+        Boolean result = cacheable.get(method);
+        if (result == null) {
+            Method declared = getDeclaredMethod(method);
+            Class<?> returnType = declared.getReturnType();
+            result = declared.isAnnotationPresent(GET.class) && returnType != void.class && returnType != Response.class;
+            cacheable.put(method, result);
+        }
+        return result;
+    }
+
+    private Method getDeclaredMethod(Method method) {
+        try {
+            return apiProxyClass.getMethod(method.getName(), method.getParameterTypes());
+        } catch (NoSuchMethodException e) {
+            return method;
+        }
+    }
+
+    private EndpointMetrics endpoint(Method method) {
+        EndpointMetrics metrics = endpoints.get(method);
+        if (metrics == null) {
+            metrics = apiMetrics.endpoint(getTemplate(method));
+            endpoints.put(method, metrics);
+        }
+        return metrics;
+    }
+
+    private String getTemplate(Method method) {
+        Method declared = getDeclaredMethod(method);
+        String httpMethod = "";
+        for (Annotation annotation : declared.getAnnotations()) {
+            HttpMethod designator = annotation.annotationType().getAnnotation(HttpMethod.class);
+            if (designator != null) {
+                httpMethod = designator.value() + " ";
+            }
+        }
+        Path apiPath = apiProxyClass.getAnnotation(Path.class);
+        Path methodPath = declared.getAnnotation(Path.class);
+        return httpMethod + (apiPath == null ? "" : apiPath.value()) + (methodPath == null ? "" : methodPath.value());
+    }
+
+    private void recordRetry(EndpointMetrics endpoint) {
+        rateLimiter.recordRetry();
+        endpoint.recordRetry();
+    }
+
+    private void acquire(RateLimiter rateLimiter) {
+        try {
+            rateLimiter.acquire();
+        } catch (InterruptedException e) {
+            throw interrupted(e);
+        }
+    }
+
+    private void acquire(Bulkhead bulkhead) {
+        try {
+            bulkhead.acquire();
+        } catch (InterruptedException e) {
+            throw interrupted(e);
+        }
+    }
+
+    private ProcessingException interrupted(InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return new ProcessingException("Interrupted while waiting to call GitLab", e);
+    }
+
+    private boolean isTooManyRequests(Response response) {
+        return response != null && response.getStatus() == RateLimiter.TOO_MANY_REQUESTS;
+    }
+
+    private void checkAuthorized(Response response) {
+        if (response != null && response.getStatus() == Response.Status.UNAUTHORIZED.getStatusCode()) {
+            monitor.unauthorized();
+        }
+    }
+
+    private boolean isServerError(Response response) {
+        return response != null && response.getStatus() >= 500;
+    }
+
+    private Object invokeDelegate(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(delegate, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
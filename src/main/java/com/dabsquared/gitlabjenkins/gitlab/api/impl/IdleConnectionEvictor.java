@@ -0,0 +1,29 @@
+package com.dabsquared.gitlabjenkins.gitlab.api.impl;
+
+
+import hudson.Extension;
+import hudson.model.PeriodicWork;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Closes expired and idle pooled connections of all GitLab clients.
+ */
+@Extension
+@Restricted(NoExternalUse.class)
+public final class IdleConnectionEvictor extends PeriodicWork {
+    private static final long RECURRENCE_PERIOD = TimeUnit.SECONDS.toMillis(Long.getLong(IdleConnectionEvictor.class.getName() + ".periodSeconds", 15));
+
+    @Override
+    public long getRecurrencePeriod() {
+        return RECURRENCE_PERIOD;
+    }
+
+    @Override
+    protected void doRun() {
+        InstrumentedConnectionManager.evictIdleConnections();
+    }
+}
@@ -0,0 +1,121 @@
+package com.dabsquared.gitlabjenkins.gitlab.api.impl;
+
+
+import com.dabsquared.gitlabjenkins.gitlab.api.ConnectionPoolStatistics;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Wraps the pooling connection manager of a client to measure how long requests wait for a connection, to report the
+ * pool's counts and to close idle connections periodically.
+ */
+@SuppressWarnings("deprecation")
+final class InstrumentedConnectionManager implements ClientConnectionManager, ConnectionPoolStatistics.Pool {
+    private static final Set<InstrumentedConnectionManager> MANAGERS =
+        Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<InstrumentedConnectionManager, Boolean>()));
+
+    private final PoolingClientConnectionManager delegate;
+    private final ConnectionPoolStatistics statistics;
+    private final int idleTimeout;
+
+    InstrumentedConnectionManager(PoolingClientConnectionManager delegate, ConnectionPoolStatistics statistics, int idleTimeout) {
+        this.delegate = delegate;
+        this.statistics = statistics;
+        this.idleTimeout = idleTimeout;
+        statistics.attach(this);
+        MANAGERS.add(this);
+    }
+
+    static void evictIdleConnections() {
+        List<InstrumentedConnectionManager> managers;
+        synchronized (MANAGERS) {
+            managers = new ArrayList<>(MANAGERS);
+        }
+        for (InstrumentedConnectionManager manager : managers) {
+            manager.closeExpiredConnections();
+            if (manager.idleTimeout > 0) {
+                manager.closeIdleConnections(manager.idleTimeout, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    @Override
+    public SchemeRegistry getSchemeRegistry() {
+        return delegate.getSchemeRegistry();
+    }
+
+    @Override
+    public ClientConnectionRequest requestConnection(HttpRoute route, Object state) {
+        final ClientConnectionRequest request = delegate.requestConnection(route, state);
+        return new ClientConnectionRequest() {
+            @Override
+            public ManagedClientConnection getConnection(long timeout, TimeUnit tunit) throws InterruptedException, ConnectionPoolTimeoutException {
+                long start = System.nanoTime();
+                try {
+                    return request.getConnection(timeout, tunit);
+                } finally {
+                    statistics.recordLease(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                }
+            }
+
+            @Override
+            public void abortRequest() {
+                request.abortRequest();
+            }
+        };
+    }
+
+    @Override
+    public void releaseConnection(ManagedClientConnection conn, long validDuration, TimeUnit timeUnit) {
+        delegate.releaseConnection(conn, validDuration, timeUnit);
+    }
+
+    @Override
+    public void closeIdleConnections(long idletime, TimeUnit tunit) {
+        delegate.closeIdleConnections(idletime, tunit);
+    }
+
+    @Override
+    public void closeExpiredConnections() {
+        delegate.closeExpiredConnections();
+    }
+
+    @Override
+    public void shutdown() {
+        MANAGERS.remove(this);
+        delegate.shutdown();
+    }
+
+    @Override
+    public int getLeased() {
+        return delegate.getTotalStats().getLeased();
+    }
+
+    @Override
+    public int getPending() {
+        return delegate.getTotalStats().getPending();
+    }
+
+    @Override
+    public int getAvailable() {
+        return delegate.getTotalStats().getAvailable();
+    }
+
+    @Override
+    public int getMax() {
+        return delegate.getTotalStats().getMax();
+    }
+}
@@ -0,0 +1,122 @@
+package com.dabsquared.gitlabjenkins.gitlab.api.impl;
+
+
+import org.apache.commons.lang.StringUtils;
+
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Link;
+import javax.ws.rs.core.Response;
+import java.lang.annotation.Annotation;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * One page of a paginated GitLab listing together with the pagination metadata GitLab sends in the response headers.
+ */
+final class Page<T> {
+    static final String NEXT_PAGE = "X-Next-Page";
+    static final String TOTAL_PAGES = "X-Total-Pages";
+
+    private final List<T> items;
+    private final Integer nextPage;
+    private final Integer totalPages;
+    private final String entityTag;
+    private final boolean notModified;
+
+    Page(List<T> items, Integer nextPage, Integer totalPages) {
+        this(items, nextPage, totalPages, null, false);
+    }
+
+    private Page(List<T> items, Integer nextPage, Integer totalPages, String entityTag, boolean notModified) {
+        this.items = items == null ? Collections.<T>emptyList() : items;
+        this.nextPage = nextPage;
+        this.totalPages = totalPages;
+        this.entityTag = entityTag;
+        this.notModified = notModified;
+    }
+
+    static <T> Page<T> from(Response response, GenericType<List<T>> itemsType) {
+        return from(response, itemsType, new Annotation[0]);
+    }
+
+    /**
+     * @param annotations are passed to the JSON provider, e.g. to bind only the fields of a {@code JsonView}
+     */
+    static <T> Page<T> from(Response response, GenericType<List<T>> itemsType, Annotation[] annotations) {
+        try {
+            if (response.getStatus() == Response.Status.NOT_MODIFIED.getStatusCode()) {
+                return new Page<>(null, null, null, response.getHeaderString(HttpHeaders.ETAG), true);
+            }
+            if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+                if (response.getStatus() == Response.Status.NOT_FOUND.getStatusCode()) {
+                    throw new NotFoundException(response);
+                }
+                throw new WebApplicationException(response);
+            }
+            return new Page<>(response.readEntity(itemsType, annotations), getNextPage(response), toInteger(response.getHeaderString(TOTAL_PAGES)),
+                              response.getHeaderString(HttpHeaders.ETAG), false);
+        } finally {
+            response.close();
+        }
+    }
+
+    List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * @return the number of the following page or {@code null} if this is the last one
+     */
+    Integer getNextPage() {
+        return nextPage;
+    }
+
+    /**
+     * @return the total number of pages or {@code null} if GitLab did not send it (e.g. for listings with more than 10,000 items)
+     */
+    Integer getTotalPages() {
+        return totalPages;
+    }
+
+    String getEntityTag() {
+        return entityTag;
+    }
+
+    /**
+     * @return {@code true} if GitLab answered a conditional request with 304, the page carries no items then
+     */
+    boolean isNotModified() {
+        return notModified;
+    }
+
+    private static Integer getNextPage(Response response) {
+        String nextPage = response.getHeaderString(NEXT_PAGE);
+        if (nextPage != null) {
+            return toInteger(nextPage);
+        }
+        Link next = response.getLink("next");
+        if (next != null && next.getUri().getRawQuery() != null) {
+            for (String parameter : next.getUri().getRawQuery().split("&")) {
+                if (parameter.startsWith("page=")) {
+                    return toInteger(parameter.substring("page=".length()));
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Integer toInteger(String value) {
+        if (StringUtils.isBlank(value)) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.dabsquared.gitlabjenkins.gitlab.api.impl;
+
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+
+/**
+ * Lazily walks through all pages of a GitLab listing.
+ *
+ * The first page is loaded on the calling thread as soon as the iteration starts. While the items of a page are
+ * consumed the following page is already loaded on the given executor. If GitLab reports the total number of pages
+ * up to {@code parallelism} pages are loaded concurrently, so a large listing takes roughly the time of one request.
+ * <p>
+ * The pages that are still loaded ahead are cancelled when a page cannot be loaded or the iterator is closed, so a
+ * listing that is not consumed to the end does not keep the executor busy.
+ */
+final class PaginatedIterable<T> implements Iterable<T> {
+    private final PageLoader<T> loader;
+    private final ExecutorService executor;
+    private final int parallelism;
+
+    PaginatedIterable(PageLoader<T> loader, ExecutorService executor, int parallelism) {
+        this.loader = loader;
+        this.executor = executor;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new PageIterator();
+    }
+
+    interface PageLoader<T> {
+        Page<T> load(int page);
+    }
+
+    private class PageIterator extends AbstractIterator<T> implements Closeable {
+        private final Deque<Future<Page<T>>> pending = new ArrayDeque<>();
+        private Iterator<T> current = Collections.emptyIterator();
+        private int lastRequestedPage = 0;
+
+        @Override
+        protected T computeNext() {
+            try {
+                return loadNext();
+            } catch (RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() {
+            for (Future<Page<T>> page : pending) {
+                page.cancel(true);
+            }
+            pending.clear();
+            current = Collections.emptyIterator();
+        }
+
+        private T loadNext() {
+            while (!current.hasNext()) {
+                Page<T> page;
+                if (lastRequestedPage == 0) {
+                    lastRequestedPage = 1;
+                    page = loader.load(1);
+                } else if (!pending.isEmpty()) {
+                    page = await(pending.poll());
+                } else {
+                    return endOfData();
+                }
+                prefetch(page);
+                current = page.getItems().iterator();
+            }
+            return current.next();
+        }
+
+        private void prefetch(Page<T> page) {
+            Integer totalPages = page.getTotalPages();
+            if (totalPages != null) {
+                while (pending.size() < parallelism && lastRequestedPage < totalPages) {
+                    request(lastRequestedPage + 1);
+                }
+            } else if (pending.isEmpty() && page.getNextPage() != null && page.getNextPage() > lastRequestedPage) {
+                request(page.getNextPage());
+            }
+        }
+
+        private void request(final int page) {
+            lastRequestedPage = page;
+            pending.add(executor.submit(new Callable<Page<T>>() {
+                @Override
+                public Page<T> call() {
+                    return loader.load(page);
+                }
+            }));
+        }
+
+        private Page<T> await(Future<Page<T>> page) {
+            try {
+                return page.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw Throwables.propagate(e);
+            } catch (ExecutionException e) {
+                throw Throwables.propagate(e.getCause());
+            }
+        }
+    }
+}
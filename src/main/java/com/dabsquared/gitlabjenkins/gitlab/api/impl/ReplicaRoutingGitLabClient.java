@@ -0,0 +1,324 @@
+package com.dabsquared.gitlabjenkins.gitlab.api.impl;
+
+
+import com.dabsquared.gitlabjenkins.gitlab.api.GitLabClient;
+import com.dabsquared.gitlabjenkins.gitlab.api.ListingSnapshot;
+import com.dabsquared.gitlabjenkins.gitlab.api.MergeRequestWithSource;
+import com.dabsquared.gitlabjenkins.gitlab.api.model.*;
+import com.dabsquared.gitlabjenkins.gitlab.hook.model.State;
+import com.dabsquared.gitlabjenkins.util.LoggerUtil;
+import com.google.common.base.Function;
+import com.google.common.collect.Iterables;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.WebApplicationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * Sends the reading calls that tolerate slightly outdated data to a read replica of the GitLab server, e.g. a Geo
+ * secondary, and everything else to the primary. A reading call is repeated on the primary if the replica does not
+ * know the requested object yet (404), cannot be reached or fails with a server error.
+ * <p>
+ * The emoji of a merge request are always read from the primary, because the vote publisher removes the awards it finds
+ * right after it made them. So are the heads of branches: the web hook handlers build the commit they find there, and a
+ * replica that lags behind would return an older commit. For the same reason the open merge requests that are listed by
+ * the replica come without their source branch, the handlers look it up on the primary.
+ */
+@Restricted(NoExternalUse.class)
+public final class ReplicaRoutingGitLabClient implements GitLabClient {
+    private static final Logger LOGGER = Logger.getLogger(ReplicaRoutingGitLabClient.class.getName());
+    private static final Function<MergeRequestWithSource, MergeRequestWithSource> WITHOUT_SOURCE_BRANCH =
+        new Function<MergeRequestWithSource, MergeRequestWithSource>() {
+            @Override
+            public MergeRequestWithSource apply(MergeRequestWithSource mergeRequest) {
+                return new MergeRequestWithSource(mergeRequest.getMergeRequest(), null, mergeRequest.getSourceProject());
+            }
+        };
+
+    private final GitLabClient primary;
+    private final GitLabClient replica;
+
+    public ReplicaRoutingGitLabClient(GitLabClient primary, GitLabClient replica) {
+        this.primary = primary;
+        this.replica = replica;
+    }
+
+    @Override
+    public String getHostUrl() {
+        return primary.getHostUrl();
+    }
+
+    @Override
+    public Project createProject(String projectName) {
+        return primary.createProject(projectName);
+    }
+
+    @Override
+    public MergeRequest createMergeRequest(Integer projectId, String sourceBranch, String targetBranch, String title) {
+        return primary.createMergeRequest(projectId, sourceBranch, targetBranch, title);
+    }
+
+    @Override
+    public Project getProject(final String projectName) {
+        return read(new Read<Project>() {
+            @Override
+            Project execute(GitLabClient client) {
+                return client.getProject(projectName);
+            }
+        });
+    }
+
+    @Override
+    public Project updateProject(String projectId, String name, String path) {
+        return primary.updateProject(projectId, name, path);
+    }
+
+    @Override
+    public void deleteProject(String projectId) {
+        primary.deleteProject(projectId);
+    }
+
+    @Override
+    public void addProjectHook(String projectId, String url, Boolean pushEvents, Boolean mergeRequestEvents, Boolean noteEvents) {
+        primary.addProjectHook(projectId, url, pushEvents, mergeRequestEvents, noteEvents);
+    }
+
+    @Override
+    public void changeBuildStatus(String projectId, String sha, BuildState state, String ref, String context, String targetUrl, String description) {
+        primary.changeBuildStatus(projectId, sha, state, ref, context, targetUrl, description);
+    }
+
+    @Override
+    public void changeBuildStatus(Integer projectId, String sha, BuildState state, String ref, String context, String targetUrl, String description) {
+        primary.changeBuildStatus(projectId, sha, state, ref, context, targetUrl, description);
+    }
+
+    @Override
+    public void getCommit(final String projectId, final String sha) {
+        read(new Read<Void>() {
+            @Override
+            Void execute(GitLabClient client) {
+                client.getCommit(projectId, sha);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void acceptMergeRequest(MergeRequest mr, String mergeCommitMessage, boolean shouldRemoveSourceBranch) {
+        primary.acceptMergeRequest(mr, mergeCommitMessage, shouldRemoveSourceBranch);
+    }
+
+    @Override
+    public void createMergeRequestNote(MergeRequest mr, String body) {
+        primary.createMergeRequestNote(mr, body);
+    }
+
+    @Override
+    public List<Awardable> getMergeRequestEmoji(MergeRequest mr) {
+        return primary.getMergeRequestEmoji(mr);
+    }
+
+    @Override
+    public void awardMergeRequestEmoji(MergeRequest mr, String name) {
+        primary.awardMergeRequestEmoji(mr, name);
+    }
+
+    @Override
+    public void deleteMergeRequestEmoji(MergeRequest mr, Integer awardId) {
+        primary.deleteMergeRequestEmoji(mr, awardId);
+    }
+
+    @Override
+    public List<MergeRequest> getMergeRequests(final String projectId, final State state, final int page, final int perPage) {
+        return read(new Read<List<MergeRequest>>() {
+            @Override
+            List<MergeRequest> execute(GitLabClient client) {
+                return client.getMergeRequests(projectId, state, page, perPage);
+            }
+        });
+    }
+
+    @Override
+    public Iterable<MergeRequest> getAllMergeRequests(final String projectId, final State state) {
+        return readAll(new Read<Iterable<MergeRequest>>() {
+            @Override
+            Iterable<MergeRequest> execute(GitLabClient client) {
+                return client.getAllMergeRequests(projectId, state);
+            }
+        });
+    }
+
+    @Override
+    public Iterable<MergeRequest> getAllMergeRequestSummaries(final String projectId, final State state) {
+        return readAll(new Read<Iterable<MergeRequest>>() {
+            @Override
+            Iterable<MergeRequest> execute(GitLabClient client) {
+                return client.getAllMergeRequestSummaries(projectId, state);
+            }
+        });
+    }
+
+    @Override
+    public Iterable<MergeRequestWithSource> getOpenMergeRequestsWithSource(final String projectId) {
+        return readAll(new Read<Iterable<MergeRequestWithSource>>() {
+            @Override
+            Iterable<MergeRequestWithSource> execute(GitLabClient client) {
+                Iterable<MergeRequestWithSource> mergeRequests = client.getOpenMergeRequestsWithSource(projectId);
+                return client == primary ? mergeRequests : Iterables.transform(mergeRequests, WITHOUT_SOURCE_BRANCH);
+            }
+        });
+    }
+
+    @Override
+    public List<Branch> getBranches(final String projectId) {
+        return read(new Read<List<Branch>>() {
+            @Override
+            List<Branch> execute(GitLabClient client) {
+                return client.getBranches(projectId);
+            }
+        });
+    }
+
+    @Override
+    public Iterable<Branch> getAllBranches(final String projectId) {
+        return readAll(new Read<Iterable<Branch>>() {
+            @Override
+            Iterable<Branch> execute(GitLabClient client) {
+                return client.getAllBranches(projectId);
+            }
+        });
+    }
+
+    @Override
+    public Branch getBranch(String projectId, String branch) {
+        return primary.getBranch(projectId, branch);
+    }
+
+    @Override
+    public User getCurrentUser() {
+        return primary.getCurrentUser();
+    }
+
+    @Override
+    public User addUser(String email, String username, String name, String password) {
+        return primary.addUser(email, username, name, password);
+    }
+
+    @Override
+    public User updateUser(String userId, String email, String username, String name, String password) {
+        return primary.updateUser(userId, email, username, name, password);
+    }
+
+    @Override
+    public List<Label> getLabels(final String projectId) {
+        return read(new Read<List<Label>>() {
+            @Override
+            List<Label> execute(GitLabClient client) {
+                return client.getLabels(projectId);
+            }
+        });
+    }
+
+    @Override
+    public Iterable<Label> getAllLabels(final String projectId) {
+        return readAll(new Read<Iterable<Label>>() {
+            @Override
+            Iterable<Label> execute(GitLabClient client) {
+                return client.getAllLabels(projectId);
+            }
+        });
+    }
+
+    @Override
+    public ListingSnapshot<Label> getLabels(final String projectId, final ListingSnapshot<Label> previous) {
+        return read(new Read<ListingSnapshot<Label>>() {
+            @Override
+            ListingSnapshot<Label> execute(GitLabClient client) {
+                return client.getLabels(projectId, previous);
+            }
+        });
+    }
+
+    @Override
+    public List<Pipeline> getPipelines(final String projectName) {
+        return read(new Read<List<Pipeline>>() {
+            @Override
+            List<Pipeline> execute(GitLabClient client) {
+                return client.getPipelines(projectName);
+            }
+        });
+    }
+
+    @Override
+    public Iterable<Pipeline> getAllPipelines(final String projectName) {
+        return readAll(new Read<Iterable<Pipeline>>() {
+            @Override
+            Iterable<Pipeline> execute(GitLabClient client) {
+                return client.getAllPipelines(projectName);
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        try {
+            replica.close();
+        } finally {
+            primary.close();
+        }
+    }
+
+    private <R> R read(Read<R> read) {
+        try {
+            return read.execute(replica);
+        } catch (RuntimeException e) {
+            fallBackOrRethrow(e);
+            return read.execute(primary);
+        }
+    }
+
+    /**
+     * The first page of a listing is only loaded when the iteration starts, so that is when the replica may fail. Later
+     * pages are not repeated on the primary, because the pages of two servers do not necessarily fit together.
+     */
+    private <T> Iterable<T> readAll(final Read<Iterable<T>> read) {
+        return new Iterable<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                try {
+                    Iterator<T> iterator = read.execute(replica).iterator();
+                    iterator.hasNext();
+                    return iterator;
+                } catch (RuntimeException e) {
+                    fallBackOrRethrow(e);
+                    return read.execute(primary).iterator();
+                }
+            }
+        };
+    }
+
+    private void fallBackOrRethrow(RuntimeException e) {
+        if (e instanceof NotFoundException || e instanceof ProcessingException || isServerError(e)) {
+            LOGGER.log(Level.FINE, "Read replica {0} failed, repeating the call on {1}: {2}",
+                LoggerUtil.toArray(replica.getHostUrl(), primary.getHostUrl(), e.getMessage()));
+            return;
+        }
+        throw e;
+    }
+
+    private boolean isServerError(RuntimeException e) {
+        return e instanceof WebApplicationException && ((WebApplicationException) e).getResponse().getStatus() >= 500;
+    }
+
+    private abstract static class Read<R> {
+        abstract R execute(GitLabClient client);
+    }
+}
@@ -1,23 +1,56 @@
 package com.dabsquared.gitlabjenkins.gitlab.api.impl;
 
 
+import com.dabsquared.gitlabjenkins.gitlab.api.CommitStatusOrder;
 import com.dabsquared.gitlabjenkins.gitlab.api.GitLabClient;
+import com.dabsquared.gitlabjenkins.gitlab.api.ListingSnapshot;
+import com.dabsquared.gitlabjenkins.gitlab.api.MergeRequestWithSource;
 import com.dabsquared.gitlabjenkins.gitlab.api.model.*;
 import com.dabsquared.gitlabjenkins.gitlab.hook.model.State;
+import com.fasterxml.jackson.annotation.JsonView;
 import com.google.common.base.Function;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.core.GenericType;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 
 final class ResteasyGitLabClient implements GitLabClient {
+    private static final int PER_PAGE = 100;
+    private static final Annotation[] SUMMARY_VIEW = getAnnotations("summaryView");
+    private static final Method MERGE_REQUESTS_PAGE = getApiMethod("getMergeRequestsPage", String.class, State.class, int.class, int.class);
+
     private final String hostUrl;
     private final GitLabApiProxy api;
+    private final GraphQLMergeRequestLoader graphQL;
+    private final CommitStatusOrder statusOrder;
+    private final Client httpClient;
     private final Function<MergeRequest, Integer> mergeRequestIdProvider;
+    private final ExecutorService paginationExecutor;
+    private final int paginationParallelism;
+    private final SingleFlight mergeRequestPageLoads = new SingleFlight();
 
-    ResteasyGitLabClient(String hostUrl, GitLabApiProxy api, Function<MergeRequest, Integer> mergeRequestIdProvider) {
+    /**
+     * @param graphQL loads merge requests through the GraphQL API, {@code null} if the server does not offer it
+     */
+    ResteasyGitLabClient(String hostUrl, GitLabApiProxy api, GraphQLMergeRequestLoader graphQL, CommitStatusOrder statusOrder, Client httpClient,
+                         Function<MergeRequest, Integer> mergeRequestIdProvider, ExecutorService paginationExecutor, int paginationParallelism) {
         this.hostUrl = hostUrl;
         this.api = api;
+        this.graphQL = graphQL;
+        this.statusOrder = statusOrder;
+        this.httpClient = httpClient;
         this.mergeRequestIdProvider = mergeRequestIdProvider;
+        this.paginationExecutor = paginationExecutor;
+        this.paginationParallelism = paginationParallelism;
     }
 
     @Override
@@ -56,13 +89,25 @@ final class ResteasyGitLabClient implements GitLabClient {
     }
 
     @Override
-    public void changeBuildStatus(String projectId, String sha, BuildState state, String ref, String context, String targetUrl, String description) {
-        api.changeBuildStatus(projectId, sha, state, ref, context, targetUrl, description);
+    public void changeBuildStatus(final String projectId, final String sha, final BuildState state, final String ref, final String context,
+                                  final String targetUrl, final String description) {
+        statusOrder.send(sha, context, new Runnable() {
+            @Override
+            public void run() {
+                api.changeBuildStatus(projectId, sha, state, ref, context, targetUrl, description);
+            }
+        });
     }
 
     @Override
-    public void changeBuildStatus(Integer projectId, String sha, BuildState state, String ref, String context, String targetUrl, String description) {
-        api.changeBuildStatus(projectId, sha, state, ref, context, targetUrl, description);
+    public void changeBuildStatus(final Integer projectId, final String sha, final BuildState state, final String ref, final String context,
+                                  final String targetUrl, final String description) {
+        statusOrder.send(sha, context, new Runnable() {
+            @Override
+            public void run() {
+                api.changeBuildStatus(projectId, sha, state, ref, context, targetUrl, description);
+            }
+        });
     }
 
     @Override
@@ -100,9 +145,53 @@ final class ResteasyGitLabClient implements GitLabClient {
         return api.getMergeRequests(projectId, state, page, perPage);
     }
 
+    @Override
+    public Iterable<MergeRequest> getAllMergeRequests(final String projectId, final State state) {
+        return paginate(new PaginatedIterable.PageLoader<MergeRequest>() {
+            @Override
+            public Page<MergeRequest> load(int page) {
+                return loadMergeRequestsPage(projectId, state, page, new Annotation[0]);
+            }
+        });
+    }
+
+    @Override
+    public Iterable<MergeRequest> getAllMergeRequestSummaries(final String projectId, final State state) {
+        return paginate(new PaginatedIterable.PageLoader<MergeRequest>() {
+            @Override
+            public Page<MergeRequest> load(int page) {
+                return loadMergeRequestsPage(projectId, state, page, SUMMARY_VIEW);
+            }
+        });
+    }
+
+    @Override
+    public Iterable<MergeRequestWithSource> getOpenMergeRequestsWithSource(String projectId) {
+        Iterable<MergeRequestWithSource> mergeRequests = graphQL == null ? null : graphQL.getOpenMergeRequests(projectId);
+        if (mergeRequests != null) {
+            return mergeRequests;
+        }
+        return Iterables.transform(getAllMergeRequestSummaries(projectId, State.opened), new Function<MergeRequest, MergeRequestWithSource>() {
+            @Override
+            public MergeRequestWithSource apply(MergeRequest mergeRequest) {
+                return new MergeRequestWithSource(mergeRequest, null, null);
+            }
+        });
+    }
+
     @Override
     public List<Branch> getBranches(String projectId) {
-        return api.getBranches(projectId);
+        return Lists.newArrayList(getAllBranches(projectId));
+    }
+
+    @Override
+    public Iterable<Branch> getAllBranches(final String projectId) {
+        return paginate(new PaginatedIterable.PageLoader<Branch>() {
+            @Override
+            public Page<Branch> load(int page) {
+                return Page.from(api.getBranchesPage(projectId, page, PER_PAGE), new GenericType<List<Branch>>() {});
+            }
+        });
     }
 
     @Override
@@ -127,11 +216,120 @@ final class ResteasyGitLabClient implements GitLabClient {
 
     @Override
     public List<Label> getLabels(String projectId) {
-        return api.getLabels(projectId);
+        return Lists.newArrayList(getAllLabels(projectId));
+    }
+
+    @Override
+    public Iterable<Label> getAllLabels(final String projectId) {
+        return paginate(new PaginatedIterable.PageLoader<Label>() {
+            @Override
+            public Page<Label> load(int page) {
+                return Page.from(api.getLabelsPage(projectId, page, PER_PAGE, null), new GenericType<List<Label>>() {});
+            }
+        });
+    }
+
+    @Override
+    public ListingSnapshot<Label> getLabels(String projectId, ListingSnapshot<Label> previous) {
+        List<List<Label>> pages = new ArrayList<>();
+        List<String> entityTags = new ArrayList<>();
+        Integer page = 1;
+        while (page != null) {
+            String entityTag = previous == null ? null : previous.getEntityTag(page);
+            Page<Label> result = Page.from(api.getLabelsPage(projectId, page, PER_PAGE, entityTag), new GenericType<List<Label>>() {});
+            if (result.isNotModified()) {
+                List<Label> items = previous.getPage(page);
+                pages.add(items);
+                entityTags.add(entityTag);
+                page = getPageAfterNotModified(result, page, previous.getPageCount(), items.size());
+            } else if (result.getItems().isEmpty() && page > 1) {
+                // the listing got shorter, a page that used to exist is empty now
+                page = null;
+            } else {
+                pages.add(result.getItems());
+                entityTags.add(result.getEntityTag());
+                page = result.getNextPage();
+            }
+        }
+        return new ListingSnapshot<>(pages, entityTags);
+    }
+
+    /**
+     * GitLab does not always send the pagination headers with a {@code 304 Not Modified}. Without them, the listing
+     * goes on if the previous listing did, or if the unchanged page is full, because then a new page may have been
+     * added after it.
+     */
+    private Integer getPageAfterNotModified(Page<?> result, int page, int previousPageCount, int itemCount) {
+        if (result.getNextPage() != null) {
+            return result.getNextPage();
+        }
+        return page < previousPageCount || itemCount >= PER_PAGE ? page + 1 : null;
     }
 
     @Override
     public List<Pipeline> getPipelines(String projectName) {
         return api.getPipelines(projectName);
     }
+
+    @Override
+    public Iterable<Pipeline> getAllPipelines(final String projectName) {
+        return paginate(new PaginatedIterable.PageLoader<Pipeline>() {
+            @Override
+            public Page<Pipeline> load(int page) {
+                return Page.from(api.getPipelinesPage(projectName, page, PER_PAGE), new GenericType<List<Pipeline>>() {});
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        httpClient.close();
+    }
+
+    private <T> Iterable<T> paginate(PaginatedIterable.PageLoader<T> loader) {
+        return new PaginatedIterable<>(loader, paginationExecutor, paginationParallelism);
+    }
+
+    @JsonView(MergeRequest.Summary.class)
+    private static void summaryView() {
+        // only carries the view annotation that is passed on to the JSON provider
+    }
+
+    /**
+     * The merge requests of a project are listed for every open merge request trigger when a branch is pushed, so
+     * concurrent loads of the same page share one request. The page is read by the caller that makes the request, so
+     * the callers share the deserialized merge requests.
+     */
+    @SuppressWarnings("unchecked")
+    private Page<MergeRequest> loadMergeRequestsPage(final String projectId, final State state, final int page, final Annotation[] view) {
+        List<Object> key = Arrays.<Object>asList(projectId, state, page, view == SUMMARY_VIEW);
+        try {
+            return (Page<MergeRequest>) mergeRequestPageLoads.execute(key, new SingleFlight.Call() {
+                @Override
+                public Object call() {
+                    return Page.from(api.getMergeRequestsPage(projectId, state, page, PER_PAGE), new GenericType<List<MergeRequest>>() {}, view);
+                }
+            }, GuardingInvocationHandler.endpoint(api, MERGE_REQUESTS_PAGE));
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new ProcessingException(e);
+        }
+    }
+
+    private static Method getApiMethod(String name, Class<?>... parameterTypes) {
+        try {
+            return GitLabApiProxy.class.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Annotation[] getAnnotations(String methodName) {
+        try {
+            return ResteasyGitLabClient.class.getDeclaredMethod(methodName).getAnnotations();
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
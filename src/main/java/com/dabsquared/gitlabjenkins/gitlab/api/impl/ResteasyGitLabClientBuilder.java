@@ -2,8 +2,12 @@ package com.dabsquared.gitlabjenkins.gitlab.api.impl;
 
 
 import com.dabsquared.gitlabjenkins.gitlab.JacksonConfig;
+import com.dabsquared.gitlabjenkins.gitlab.api.ConnectionPoolSettings;
+import com.dabsquared.gitlabjenkins.gitlab.api.ConnectionMonitor;
+import com.dabsquared.gitlabjenkins.gitlab.api.EndpointMetrics;
 import com.dabsquared.gitlabjenkins.gitlab.api.GitLabClient;
 import com.dabsquared.gitlabjenkins.gitlab.api.GitLabClientBuilder;
+import com.dabsquared.gitlabjenkins.gitlab.api.RateLimiter;
 import com.dabsquared.gitlabjenkins.gitlab.api.model.MergeRequest;
 import com.dabsquared.gitlabjenkins.util.JsonUtil;
 import com.dabsquared.gitlabjenkins.util.LoggerUtil;
@@ -14,16 +18,24 @@ import com.google.common.collect.FluentIterable;
 import hudson.ProxyConfiguration;
 import hudson.init.InitMilestone;
 import hudson.init.Initializer;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
 import jenkins.model.Jenkins;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
+import org.apache.http.HttpResponse;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
 import org.jboss.resteasy.client.jaxrs.ClientHttpEngine;
+import org.jboss.resteasy.client.jaxrs.ResteasyClient;
 import org.jboss.resteasy.client.jaxrs.engines.ApacheHttpClient4Engine;
+import org.jboss.resteasy.plugins.interceptors.encoding.GZIPDecodingInterceptor;
 import org.jboss.resteasy.plugins.providers.JaxrsFormProvider;
 import org.jboss.resteasy.spi.ResteasyProviderFactory;
 import org.kohsuke.accmod.Restricted;
@@ -32,15 +44,20 @@ import org.kohsuke.accmod.restrictions.NoExternalUse;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.Priority;
+import javax.ws.rs.HttpMethod;
 import javax.ws.rs.Priorities;
 import javax.ws.rs.client.ClientRequestContext;
 import javax.ws.rs.client.ClientRequestFilter;
 import javax.ws.rs.client.ClientResponseContext;
 import javax.ws.rs.client.ClientResponseFilter;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.ReaderInterceptor;
+import javax.ws.rs.ext.ReaderInterceptorContext;
 import javax.ws.rs.ext.RuntimeDelegate;
 import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetSocketAddress;
@@ -49,9 +66,12 @@ import java.net.Proxy;
 import java.net.URL;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
 
 import static java.net.Proxy.Type.HTTP;
 
@@ -60,6 +80,10 @@ import static java.net.Proxy.Type.HTTP;
 public class ResteasyGitLabClientBuilder extends GitLabClientBuilder {
     private static final Logger LOGGER = Logger.getLogger(ResteasyGitLabClientBuilder.class.getName());
     private static final String PRIVATE_TOKEN = "PRIVATE-TOKEN";
+    private static final int PAGINATION_PARALLELISM = Integer.getInteger(ResteasyGitLabClientBuilder.class.getName() + ".paginationParallelism", 4);
+    private static final boolean GRAPHQL_DISABLED = Boolean.getBoolean(ResteasyGitLabClientBuilder.class.getName() + ".disableGraphQL");
+    private static final ExecutorService PAGINATION_EXECUTOR =
+        Executors.newCachedThreadPool(new NamingThreadFactory(new DaemonThreadFactory(), "GitLab pagination"));
 
     @Initializer(before = InitMilestone.PLUGINS_STARTED)
     public static void setRuntimeDelegate() {
@@ -68,28 +92,48 @@ public class ResteasyGitLabClientBuilder extends GitLabClientBuilder {
 
     private final Class<? extends GitLabApiProxy> apiProxyClass;
     private final Function<MergeRequest, Integer> mergeRequestIdProvider;
+    private final boolean graphQLSupported;
 
     ResteasyGitLabClientBuilder(String id, int ordinal, Class<? extends GitLabApiProxy> apiProxyClass, Function<MergeRequest, Integer> mergeRequestIdProvider) {
+        this(id, ordinal, apiProxyClass, mergeRequestIdProvider, false);
+    }
+
+    /**
+     * @param graphQLSupported whether servers of this API version may offer the GraphQL endpoint
+     */
+    ResteasyGitLabClientBuilder(String id, int ordinal, Class<? extends GitLabApiProxy> apiProxyClass, Function<MergeRequest, Integer> mergeRequestIdProvider,
+                                boolean graphQLSupported) {
         super(id, ordinal);
         this.apiProxyClass = apiProxyClass;
         this.mergeRequestIdProvider = mergeRequestIdProvider;
+        this.graphQLSupported = graphQLSupported;
     }
 
     @Nonnull
     @Override
     public final GitLabClient buildClient(String url, String apiToken, boolean ignoreCertificateErrors, int connectionTimeout, int readTimeout) {
+        return buildClient(url, apiToken, ignoreCertificateErrors, connectionTimeout, readTimeout, ConnectionPoolSettings.DEFAULT, new ConnectionMonitor());
+    }
+
+    @Nonnull
+    @Override
+    public final GitLabClient buildClient(String url, String apiToken, boolean ignoreCertificateErrors, int connectionTimeout, int readTimeout,
+                                          ConnectionPoolSettings poolSettings, ConnectionMonitor monitor) {
         return buildClient(
             url,
             apiToken,
             Jenkins.getActiveInstance().proxy,
             ignoreCertificateErrors,
             connectionTimeout,
-            readTimeout
+            readTimeout,
+            poolSettings,
+            monitor
         );
     }
 
-    private GitLabClient buildClient(String url, String apiToken, ProxyConfiguration httpProxyConfig, boolean ignoreCertificateErrors, int connectionTimeout, int readTimeout) {
-        ResteasyClientBuilder builder = new ResteasyClientBuilder();
+    private GitLabClient buildClient(String url, String apiToken, ProxyConfiguration httpProxyConfig, boolean ignoreCertificateErrors, int connectionTimeout, int readTimeout,
+                                     ConnectionPoolSettings poolSettings, ConnectionMonitor monitor) {
+        ResteasyClientBuilder builder = new ResteasyClientBuilder(poolSettings, monitor);
 
         if (ignoreCertificateErrors) {
             builder.hostnameVerification(ResteasyClientBuilder.HostnameVerificationPolicy.ANY);
@@ -108,23 +152,41 @@ public class ResteasyGitLabClientBuilder extends GitLabClientBuilder {
             }
         }
 
-        GitLabApiProxy apiProxy = builder
-            .connectionPoolSize(60)
-            .maxPooledPerRoute(30)
+        builder
+            .connectionPoolSize(poolSettings.getMaxTotal())
+            .maxPooledPerRoute(poolSettings.getMaxPerRoute())
             .establishConnectionTimeout(connectionTimeout, TimeUnit.SECONDS)
             .socketTimeout(readTimeout, TimeUnit.SECONDS)
             .register(new JacksonJsonProvider())
             .register(new JacksonConfig())
             .register(new ApiHeaderTokenFilter(apiToken))
-            .register(new LoggingFilter())
-            .register(new RemoveAcceptEncodingFilter())
+            .register(new RateLimitFilter(monitor.getRateLimiter()))
+            .register(new MetricsFilter())
+            .register(new LoggingFilter());
+        if (monitor.getResponseCache().isEnabled()) {
+            builder.register(new ResponseCacheFilter());
+        }
+        if (monitor.isCompression()) {
+            builder.register(new AcceptGzipEncodingFilter()).register(new GZIPDecodingInterceptor());
+        } else {
+            builder.register(new RemoveAcceptEncodingFilter());
+        }
+        ResteasyClient httpClient = builder
             .register(new JaxrsFormProvider())
-            .build().target(url)
+            .build();
+        GitLabApiProxy apiProxy = GuardingInvocationHandler.wrap(apiProxyClass, httpClient.target(url)
             .proxyBuilder(apiProxyClass)
             .classloader(apiProxyClass.getClassLoader())
-            .build();
+            .build(), monitor);
+        GraphQLMergeRequestLoader graphQL = null;
+        if (graphQLSupported && !GRAPHQL_DISABLED) {
+            graphQL = new GraphQLMergeRequestLoader(GuardingInvocationHandler.wrap(httpClient.target(url)
+                .proxyBuilder(GitLabGraphQLProxy.class)
+                .classloader(GitLabGraphQLProxy.class.getClassLoader())
+                .build(), monitor));
+        }
 
-        return new ResteasyGitLabClient(url, apiProxy, mergeRequestIdProvider);
+        return new ResteasyGitLabClient(url, apiProxy, graphQL, monitor.getCommitStatusOrder(), httpClient, mergeRequestIdProvider, PAGINATION_EXECUTOR, PAGINATION_PARALLELISM);
     }
 
     private String getHost(String url) {
@@ -148,6 +210,127 @@ public class ResteasyGitLabClientBuilder extends GitLabClientBuilder {
         }
     }
 
+    @Priority(Priorities.USER)
+    private static class RateLimitFilter implements ClientResponseFilter {
+        private final RateLimiter rateLimiter;
+
+        RateLimitFilter(RateLimiter rateLimiter) {
+            this.rateLimiter = rateLimiter;
+        }
+
+        @Override
+        public void filter(ClientRequestContext request, ClientResponseContext response) {
+            MultivaluedMap<String, String> headers = response.getHeaders();
+            Long remaining = getNumber(headers, "RateLimit-Remaining");
+            Long windowSize = getNumber(headers, "RateLimit-Limit");
+            rateLimiter.onResponse(response.getStatus(),
+                remaining == null ? null : remaining.intValue(),
+                windowSize == null ? null : windowSize.intValue(),
+                getNumber(headers, "RateLimit-Reset"),
+                getNumber(headers, "Retry-After"));
+        }
+
+        private Long getNumber(MultivaluedMap<String, String> headers, String name) {
+            String value = headers.getFirst(name);
+            if (value != null) {
+                try {
+                    return Long.valueOf(value.trim());
+                } catch (NumberFormatException e) {
+                    LOGGER.log(Level.FINE, "Ignoring non-numeric header {0}: {1}", LoggerUtil.toArray(name, value));
+                }
+            }
+            return null;
+        }
+    }
+
+    @Priority(Priorities.USER)
+    private static class MetricsFilter implements ClientResponseFilter {
+        @Override
+        public void filter(ClientRequestContext request, ClientResponseContext response) {
+            final EndpointMetrics endpoint = GuardingInvocationHandler.currentEndpoint();
+            if (endpoint != null) {
+                endpoint.recordStatus(response.getStatus());
+                if (response.hasEntity()) {
+                    response.setEntityStream(new CountingInputStream(response.getEntityStream()) {
+                        @Override
+                        protected void count(long bytes) {
+                            endpoint.recordBytesReceived(bytes);
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs after {@link GZIPDecodingInterceptor}, so the decoded size of a response is recorded for the cache.
+     */
+    @Priority(Priorities.USER)
+    private static class ResponseCacheFilter implements ClientRequestFilter, ClientResponseFilter, ReaderInterceptor {
+        @Override
+        public void filter(ClientRequestContext request) {
+            CachingCall call = CachingCall.current();
+            if (call != null && HttpMethod.GET.equals(request.getMethod())) {
+                call.onRequest(request.getUri().toString(), request.getHeaders());
+            }
+        }
+
+        @Override
+        public void filter(ClientRequestContext request, ClientResponseContext response) {
+            CachingCall call = CachingCall.current();
+            if (call != null && HttpMethod.GET.equals(request.getMethod())) {
+                call.onResponse(response.getStatus(), response.getHeaders());
+            }
+        }
+
+        @Override
+        public Object aroundReadFrom(ReaderInterceptorContext context) throws IOException {
+            final CachingCall call = CachingCall.current();
+            if (call != null) {
+                context.setInputStream(new CountingInputStream(context.getInputStream()) {
+                    @Override
+                    protected void count(long bytes) {
+                        call.addReceivedBytes(bytes);
+                    }
+                });
+            }
+            return context.proceed();
+        }
+    }
+
+    private abstract static class CountingInputStream extends FilterInputStream {
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        protected abstract void count(long bytes);
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+    }
+
     @Priority(Priorities.USER)
     private static class LoggingFilter implements ClientRequestFilter, ClientResponseFilter {
         @Override
@@ -188,6 +371,9 @@ public class ResteasyGitLabClientBuilder extends GitLabClientBuilder {
                 if (entityStream != null) {
                     byte[] bytes = IOUtils.toByteArray(entityStream);
                     context.setEntityStream(new ByteArrayInputStream(bytes));
+                    if ("gzip".equalsIgnoreCase(context.getHeaderString(HttpHeaders.CONTENT_ENCODING))) {
+                        return new String(IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(bytes))));
+                    }
                     return new String(bytes);
                 }
             } catch (IOException e) {
@@ -220,6 +406,17 @@ public class ResteasyGitLabClientBuilder extends GitLabClientBuilder {
         }
     }
 
+    /**
+     * Only asks for gzip as that is the encoding {@link GZIPDecodingInterceptor} decodes.
+     */
+    @Priority(Priorities.HEADER_DECORATOR)
+    private static class AcceptGzipEncodingFilter implements ClientRequestFilter {
+        @Override
+        public void filter(ClientRequestContext clientRequestContext) {
+            clientRequestContext.getHeaders().putSingle(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        }
+    }
+
     @Priority(Priorities.HEADER_DECORATOR)
     private static class RemoveAcceptEncodingFilter implements ClientRequestFilter {
         RemoveAcceptEncodingFilter() {}
@@ -230,8 +427,15 @@ public class ResteasyGitLabClientBuilder extends GitLabClientBuilder {
     }
 
     private static class ResteasyClientBuilder extends org.jboss.resteasy.client.jaxrs.ResteasyClientBuilder {
+        private final ConnectionPoolSettings poolSettings;
+        private final ConnectionMonitor monitor;
         private CredentialsProvider proxyCredentials;
 
+        ResteasyClientBuilder(ConnectionPoolSettings poolSettings, ConnectionMonitor monitor) {
+            this.poolSettings = poolSettings;
+            this.monitor = monitor;
+        }
+
         @SuppressWarnings("UnusedReturnValue")
         ResteasyClientBuilder defaultProxy(String hostname, int port, final String scheme, String username, String password) {
             super.defaultProxy(hostname, port, scheme);
@@ -246,10 +450,37 @@ public class ResteasyGitLabClientBuilder extends GitLabClientBuilder {
         @Override
         protected ClientHttpEngine initDefaultEngine() {
             ApacheHttpClient4Engine httpEngine = (ApacheHttpClient4Engine) super.initDefaultEngine();
+            DefaultHttpClient httpClient = (DefaultHttpClient) httpEngine.getHttpClient();
+            if (httpClient.getConnectionManager() instanceof PoolingClientConnectionManager) {
+                PoolingClientConnectionManager pool = (PoolingClientConnectionManager) httpClient.getConnectionManager();
+                DefaultHttpClient instrumentedClient =
+                    new DefaultHttpClient(new InstrumentedConnectionManager(pool, monitor.getPoolStatistics(), poolSettings.getIdleTimeout()), httpClient.getParams());
+                ApacheHttpClient4Engine instrumentedEngine = new ApacheHttpClient4Engine(instrumentedClient, true);
+                instrumentedEngine.setResponseBufferSize(httpEngine.getResponseBufferSize());
+                instrumentedEngine.setHostnameVerifier(httpEngine.getHostnameVerifier());
+                instrumentedEngine.setSslContext(httpEngine.getSslContext());
+                httpEngine = instrumentedEngine;
+                httpClient = instrumentedClient;
+            }
+            httpClient.setKeepAliveStrategy(new KeepAliveStrategy(TimeUnit.SECONDS.toMillis(poolSettings.getKeepAlive())));
             if (proxyCredentials != null) {
-                ((DefaultHttpClient) httpEngine.getHttpClient()).setCredentialsProvider(proxyCredentials);
+                httpClient.setCredentialsProvider(proxyCredentials);
             }
             return httpEngine;
         }
     }
+
+    private static class KeepAliveStrategy extends DefaultConnectionKeepAliveStrategy {
+        private final long defaultKeepAliveMillis;
+
+        KeepAliveStrategy(long defaultKeepAliveMillis) {
+            this.defaultKeepAliveMillis = defaultKeepAliveMillis;
+        }
+
+        @Override
+        public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+            long keepAlive = super.getKeepAliveDuration(response, context);
+            return keepAlive < 0 ? defaultKeepAliveMillis : keepAlive;
+        }
+    }
 }
@@ -0,0 +1,87 @@
+package com.dabsquared.gitlabjenkins.gitlab.api.impl;
+
+
+import com.dabsquared.gitlabjenkins.gitlab.api.EndpointMetrics;
+import com.google.common.util.concurrent.SettableFuture;
+
+import javax.ws.rs.ProcessingException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+
+/**
+ * Lets concurrent identical calls share one execution: the first caller executes the call, callers that arrive while it
+ * is in flight wait for it and get the same result or exception. If the first caller fails for a reason of its own,
+ * e.g. because it was interrupted, the waiting callers make the call again.
+ */
+final class SingleFlight {
+    private final ConcurrentMap<Object, SettableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    interface Call {
+        Object call() throws Throwable;
+    }
+
+    /**
+     * @param endpoint records the calls that did not execute themselves
+     */
+    Object execute(Object key, Call call, EndpointMetrics endpoint) throws Throwable {
+        boolean coalesced = false;
+        while (true) {
+            SettableFuture<Object> future = SettableFuture.create();
+            SettableFuture<Object> running = inFlight.putIfAbsent(key, future);
+            if (running == null) {
+                return lead(key, future, call);
+            }
+
+            if (!coalesced) {
+                endpoint.recordCoalesced();
+                coalesced = true;
+            }
+            try {
+                return await(running);
+            } catch (CancellationException e) {
+                // the caller that executed the call gave up, the call is made again
+            }
+        }
+    }
+
+    private Object lead(Object key, SettableFuture<Object> future, Call call) throws Throwable {
+        try {
+            Object result = call.call();
+            future.set(result);
+            return result;
+        } catch (Throwable e) {
+            if (Thread.currentThread().isInterrupted() || isInterruption(e)) {
+                future.cancel(false);
+            } else {
+                future.setException(e);
+            }
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    private boolean isInterruption(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof InterruptedException || cause instanceof InterruptedIOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Object await(SettableFuture<Object> running) throws Throwable {
+        try {
+            return running.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProcessingException("Interrupted while waiting for a concurrent call to GitLab", e);
+        }
+    }
+}
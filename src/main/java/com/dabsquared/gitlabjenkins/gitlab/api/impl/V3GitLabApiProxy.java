@@ -9,13 +9,16 @@ import javax.ws.rs.DELETE;
 import javax.ws.rs.FormParam;
 import javax.ws.rs.GET;
 import javax.ws.rs.HEAD;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 import java.util.List;
 
 import static com.dabsquared.gitlabjenkins.gitlab.api.impl.V3GitLabApiProxy.ID;
@@ -164,12 +167,29 @@ interface V3GitLabApiProxy extends GitLabApiProxy {
                                         @QueryParam("page") int page,
                                         @QueryParam("per_page") int perPage);
 
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/projects/{projectId}/merge_requests")
+    @Override
+    Response getMergeRequestsPage(@PathParam("projectId") String projectId,
+                                  @QueryParam("state") State state,
+                                  @QueryParam("page") int page,
+                                  @QueryParam("per_page") int perPage);
+
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/projects/{projectId}/repository/branches")
     @Override
     List<Branch> getBranches(@PathParam("projectId") String projectId);
 
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/projects/{projectId}/repository/branches")
+    @Override
+    Response getBranchesPage(@PathParam("projectId") String projectId,
+                             @QueryParam("page") int page,
+                             @QueryParam("per_page") int perPage);
+
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/projects/{projectId}/repository/branches/{branch}")
@@ -216,9 +236,26 @@ interface V3GitLabApiProxy extends GitLabApiProxy {
     @Override
     List<Label> getLabels(@PathParam("projectId") String projectId);
 
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/projects/{projectId}/labels")
+    @Override
+    Response getLabelsPage(@PathParam("projectId") String projectId,
+                           @QueryParam("page") int page,
+                           @QueryParam("per_page") int perPage,
+                           @HeaderParam(HttpHeaders.IF_NONE_MATCH) String entityTag);
+
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/projects/{projectId}/pipelines")
     @Override
     List<Pipeline> getPipelines(@PathParam("projectId") String projectId);
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/projects/{projectId}/pipelines")
+    @Override
+    Response getPipelinesPage(@PathParam("projectId") String projectId,
+                              @QueryParam("page") int page,
+                              @QueryParam("per_page") int perPage);
 }
@@ -20,6 +20,6 @@ public final class V4GitLabClientBuilder extends ResteasyGitLabClientBuilder {
     };
 
     public V4GitLabClientBuilder() {
-        super(V4GitLabApiProxy.ID, ORDINAL, V4GitLabApiProxy.class, MERGE_REQUEST_ID_PROVIDER);
+        super(V4GitLabApiProxy.ID, ORDINAL, V4GitLabApiProxy.class, MERGE_REQUEST_ID_PROVIDER, true);
     }
 }
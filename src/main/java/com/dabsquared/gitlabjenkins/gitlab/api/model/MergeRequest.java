@@ -1,6 +1,7 @@
 package com.dabsquared.gitlabjenkins.gitlab.api.model;
 
 import com.dabsquared.gitlabjenkins.gitlab.hook.model.State;
+import com.fasterxml.jackson.annotation.JsonView;
 import net.karneim.pojobuilder.GeneratePojoBuilder;
 import org.apache.commons.lang.builder.EqualsBuilder;
 import org.apache.commons.lang.builder.HashCodeBuilder;
@@ -16,21 +17,37 @@ import java.util.List;
 @ExportedBean
 @GeneratePojoBuilder(intoPackage = "*.builder.generated", withFactoryMethod = "*")
 public class MergeRequest {
+    /**
+     * Binds only the fields needed to trigger builds for a merge request, all others are skipped while parsing.
+     */
+    public interface Summary {}
+
+    @JsonView(Summary.class)
     private Integer id;
+    @JsonView(Summary.class)
     private Integer iid;
+    @JsonView(Summary.class)
     private String sourceBranch;
+    @JsonView(Summary.class)
     private String targetBranch;
+    @JsonView(Summary.class)
     private Integer projectId;
+    @JsonView(Summary.class)
     private String title;
     private State state;
     private Integer upvotes;
     private Integer downvotes;
     private User author;
     private User assignee;
+    @JsonView(Summary.class)
     private Integer sourceProjectId;
+    @JsonView(Summary.class)
     private Integer targetProjectId;
+    @JsonView(Summary.class)
     private List<String> labels;
+    @JsonView(Summary.class)
     private String description;
+    @JsonView(Summary.class)
     private Boolean workInProgress;
     private Boolean mergeWhenBuildSucceeds;
     private String mergeStatus;
@@ -0,0 +1,266 @@
+package com.dabsquared.gitlabjenkins.service;
+
+
+import com.google.common.collect.ImmutableList;
+import org.springframework.util.AntPathMatcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Search index over the branch names of one GitLab project.
+ *
+ * The names are kept in an array sorted by their lower-cased form, prefix queries are answered by binary search. Projects
+ * with many branches additionally get a trigram index for substring queries, whose postings are arrays of positions in
+ * the sorted array, so autocompletion does not scan every branch on each keystroke. Ant style branch specs are only
+ * matched against the branches that share their literal prefix.
+ * <p>
+ * The index is immutable: adding or removing a branch publishes a new one, which is cheap compared to the web hook that
+ * caused it.
+ */
+public final class BranchIndex {
+
+    private static final int GRAM_LENGTH = 3;
+    private static final int SUBSTRING_INDEX_MIN_BRANCHES = Integer.getInteger(BranchIndex.class.getName() + ".substringIndexMinBranches", 1000);
+    private static final AntPathMatcher MATCHER = new AntPathMatcher();
+    private static final String DOUBLE_SEPARATOR = AntPathMatcher.DEFAULT_PATH_SEPARATOR + AntPathMatcher.DEFAULT_PATH_SEPARATOR;
+    private static final Comparator<String> BY_LOWER_CASE_NAME = new Comparator<String>() {
+        @Override
+        public int compare(String left, String right) {
+            int result = left.toLowerCase().compareTo(right.toLowerCase());
+            return result != 0 ? result : left.compareTo(right);
+        }
+    };
+
+    private final Object writeLock = new Object();
+    private final int substringIndexMinBranches;
+    private volatile List<String> branches;
+    private volatile Snapshot snapshot;
+
+    public BranchIndex(Collection<String> branches) {
+        this(branches, SUBSTRING_INDEX_MIN_BRANCHES);
+    }
+
+    BranchIndex(Collection<String> branches, int substringIndexMinBranches) {
+        this.substringIndexMinBranches = substringIndexMinBranches;
+        this.branches = ImmutableList.copyOf(branches);
+        this.snapshot = new Snapshot(this.branches, substringIndexMinBranches);
+    }
+
+    /**
+     * @return all branch names in the order GitLab returned them, followed by branches created since then
+     */
+    public List<String> getBranches() {
+        return branches;
+    }
+
+    public boolean contains(String branch) {
+        return snapshot.contains(branch);
+    }
+
+    /**
+     * Finds branches whose name contains the query, ignoring case. Branches starting with the query come first.
+     */
+    public List<String> find(String query, int limit) {
+        Snapshot snapshot = this.snapshot;
+        String lowerCaseQuery = query.toLowerCase();
+        Set<String> result = new LinkedHashSet<>();
+        for (int i = snapshot.firstWithPrefix(lowerCaseQuery); i < snapshot.size() && result.size() < limit; i++) {
+            if (!snapshot.lowerCaseNames[i].startsWith(lowerCaseQuery)) {
+                break;
+            }
+            result.add(snapshot.names[i]);
+        }
+        int[] candidates = snapshot.getSubstringCandidates(lowerCaseQuery);
+        for (int i = 0; i < (candidates == null ? snapshot.size() : candidates.length) && result.size() < limit; i++) {
+            int position = candidates == null ? i : candidates[i];
+            if (snapshot.lowerCaseNames[position].contains(lowerCaseQuery)) {
+                result.add(snapshot.names[position]);
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * @param spec an Ant style branch spec, e.g. {@code feature/**}
+     * @return {@code true} if at least one branch matches the spec
+     */
+    public boolean matchesAny(String spec) {
+        int wildcard = indexOfWildcard(spec);
+        String literalPrefix = wildcard < 0 ? spec : spec.substring(0, wildcard);
+        // the matcher tokenizes on separators and trims tokens, such specs may match branches not starting with them
+        if (literalPrefix.contains(DOUBLE_SEPARATOR) || literalPrefix.contains(" ")) {
+            return matchesAny(spec, branches);
+        }
+        if (wildcard < 0) {
+            return contains(spec);
+        }
+        Snapshot snapshot = this.snapshot;
+        String lowerCasePrefix = literalPrefix.toLowerCase();
+        for (int i = snapshot.firstWithPrefix(lowerCasePrefix); i < snapshot.size(); i++) {
+            if (!snapshot.lowerCaseNames[i].startsWith(lowerCasePrefix)) {
+                break;
+            }
+            if (MATCHER.match(spec, snapshot.names[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void add(String branch) {
+        synchronized (writeLock) {
+            if (!contains(branch)) {
+                publish(ImmutableList.<String>builder().addAll(branches).add(branch).build());
+            }
+        }
+    }
+
+    void remove(String branch) {
+        synchronized (writeLock) {
+            if (contains(branch)) {
+                List<String> remaining = new ArrayList<>(branches);
+                remaining.remove(branch);
+                publish(ImmutableList.copyOf(remaining));
+            }
+        }
+    }
+
+    private void publish(List<String> newBranches) {
+        snapshot = new Snapshot(newBranches, substringIndexMinBranches);
+        branches = newBranches;
+    }
+
+    private static boolean matchesAny(String spec, Iterable<String> candidates) {
+        for (String branch : candidates) {
+            if (MATCHER.match(spec, branch)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int indexOfWildcard(String spec) {
+        for (int i = 0; i < spec.length(); i++) {
+            char c = spec.charAt(i);
+            if (c == '*' || c == '?' || c == '{') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Set<String> trigrams(String value) {
+        Set<String> result = new LinkedHashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= value.length(); i++) {
+            result.add(value.substring(i, i + GRAM_LENGTH));
+        }
+        return result;
+    }
+
+    private static final class Snapshot {
+        private final String[] names;
+        private final String[] lowerCaseNames;
+        /**
+         * The sorted positions of the names that contain a trigram, {@code null} if the project has too few branches
+         * to be worth it.
+         */
+        private final Map<String, int[]> byTrigram;
+
+        private Snapshot(List<String> branches, int substringIndexMinBranches) {
+            names = branches.toArray(new String[branches.size()]);
+            Arrays.sort(names, BY_LOWER_CASE_NAME);
+            lowerCaseNames = new String[names.length];
+            for (int i = 0; i < names.length; i++) {
+                lowerCaseNames[i] = names[i].toLowerCase();
+            }
+            byTrigram = names.length >= substringIndexMinBranches ? indexTrigrams(lowerCaseNames) : null;
+        }
+
+        private int size() {
+            return names.length;
+        }
+
+        private boolean contains(String branch) {
+            String lowerCaseName = branch.toLowerCase();
+            for (int i = firstWithPrefix(lowerCaseName); i < names.length && lowerCaseNames[i].equals(lowerCaseName); i++) {
+                if (names[i].equals(branch)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return the position of the first name that is not lower than the prefix
+         */
+        private int firstWithPrefix(String lowerCasePrefix) {
+            int low = 0;
+            int high = lowerCaseNames.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (lowerCaseNames[middle].compareTo(lowerCasePrefix) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * @return the positions of the names that may contain the query or {@code null} if all names have to be checked
+         */
+        private int[] getSubstringCandidates(String lowerCaseQuery) {
+            if (byTrigram == null || lowerCaseQuery.length() < GRAM_LENGTH) {
+                return null;
+            }
+            int[] smallest = null;
+            for (String trigram : trigrams(lowerCaseQuery)) {
+                int[] posting = byTrigram.get(trigram);
+                if (posting == null) {
+                    return new int[0];
+                }
+                if (smallest == null || posting.length < smallest.length) {
+                    smallest = posting;
+                }
+            }
+            return smallest;
+        }
+
+        private static Map<String, int[]> indexTrigrams(String[] lowerCaseNames) {
+            Map<String, int[]> counts = new HashMap<>();
+            for (String name : lowerCaseNames) {
+                for (String trigram : trigrams(name)) {
+                    int[] count = counts.get(trigram);
+                    if (count == null) {
+                        counts.put(trigram, new int[]{1});
+                    } else {
+                        count[0]++;
+                    }
+                }
+            }
+            Map<String, int[]> postings = new HashMap<>(counts.size() * 4 / 3 + 1);
+            for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+                postings.put(entry.getKey(), new int[entry.getValue()[0]]);
+                entry.getValue()[0] = 0;
+            }
+            for (int i = 0; i < lowerCaseNames.length; i++) {
+                for (String trigram : trigrams(lowerCaseNames[i])) {
+                    int[] filled = counts.get(trigram);
+                    postings.get(trigram)[filled[0]++] = i;
+                }
+            }
+            return Collections.unmodifiableMap(postings);
+        }
+    }
+}
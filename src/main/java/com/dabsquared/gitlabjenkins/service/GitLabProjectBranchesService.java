@@ -3,35 +3,60 @@ package com.dabsquared.gitlabjenkins.service;
 
 import com.dabsquared.gitlabjenkins.gitlab.api.GitLabClient;
 import com.dabsquared.gitlabjenkins.gitlab.api.model.Branch;
+import com.dabsquared.gitlabjenkins.gitlab.hook.model.PushHook;
 import com.dabsquared.gitlabjenkins.util.LoggerUtil;
 import com.dabsquared.gitlabjenkins.util.ProjectIdUtil;
-import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import org.apache.commons.lang.StringUtils;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 
+/**
+ * Caches the branch names of GitLab projects.
+ *
+ * Loads for different projects run concurrently, concurrent loads for the same project share one request.
+ * Entries older than the refresh interval are still served while they are reloaded in the background, and push hooks
+ * that create or delete a branch update the cached entry in place. Each entry is a {@link BranchIndex}, so
+ * autocompletion and branch spec validation stay fast for projects with many branches.
+ */
 public class GitLabProjectBranchesService {
 
     private static final Logger LOGGER = Logger.getLogger(GitLabProjectBranchesService.class.getName());
+    private static final long REFRESH_AFTER_SECONDS = Long.getLong(GitLabProjectBranchesService.class.getName() + ".refreshAfterSeconds", 300);
+    private static final long EXPIRE_AFTER_SECONDS = Long.getLong(GitLabProjectBranchesService.class.getName() + ".expireAfterSeconds", 3600);
+    private static final String NO_COMMIT = "0000000000000000000000000000000000000000";
+    private static final String BRANCH_REF_PREFIX = "refs/heads/";
 
     private static transient GitLabProjectBranchesService gitLabProjectBranchesService;
-    private final Cache<String, List<String>> projectBranchCache;
+    private final LoadingCache<ProjectKey, BranchIndex> projectBranchCache;
 
     GitLabProjectBranchesService() {
-        this.projectBranchCache = CacheBuilder.<String, String>newBuilder()
+        this(REFRESH_AFTER_SECONDS, EXPIRE_AFTER_SECONDS, TimeUnit.SECONDS,
+             Executors.newCachedThreadPool(new NamingThreadFactory(new DaemonThreadFactory(), "GitLab branch cache refresh")));
+    }
+
+    GitLabProjectBranchesService(long refreshAfter, long expireAfter, TimeUnit unit, Executor refreshExecutor) {
+        this.projectBranchCache = CacheBuilder.newBuilder()
                 .maximumSize(1000)
-                .expireAfterWrite(5, TimeUnit.SECONDS)
-                .build();
+                .refreshAfterWrite(refreshAfter, unit)
+                .expireAfterAccess(expireAfter, unit)
+                .build(CacheLoader.asyncReloading(new BranchNamesLoader(), refreshExecutor));
     }
 
-    public static GitLabProjectBranchesService instance() {
+    public static synchronized GitLabProjectBranchesService instance() {
         if (gitLabProjectBranchesService == null) {
             gitLabProjectBranchesService = new GitLabProjectBranchesService();
         }
@@ -39,13 +64,64 @@ public class GitLabProjectBranchesService {
     }
 
     public List<String> getBranches(GitLabClient client, String sourceRepositoryString) {
-        synchronized (projectBranchCache) {
+        return getBranchIndex(client, sourceRepositoryString).getBranches();
+    }
+
+    public BranchIndex getBranchIndex(GitLabClient client, String sourceRepositoryString) {
+        try {
+            return projectBranchCache.get(new ProjectKey(client, ProjectIdUtil.retrieveProjectId(client, sourceRepositoryString)));
+        } catch (ProjectIdUtil.ProjectIdResolutionException e) {
+            throw new BranchLoadingException(e);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw new BranchLoadingException(e.getCause());
+        }
+    }
+
+    /**
+     * Applies branch creations and deletions announced by a push hook to the cached branches of the pushed project.
+     * Projects that are not cached yet are left alone, they get loaded completely on their first lookup.
+     */
+    public void updateBranches(GitLabClient client, PushHook hook) {
+        String ref = hook.getRef();
+        if (ref == null || !ref.startsWith(BRANCH_REF_PREFIX)) {
+            return;
+        }
+        boolean created = NO_COMMIT.equals(hook.getBefore());
+        boolean deleted = NO_COMMIT.equals(hook.getAfter());
+        if (created == deleted) {
+            return;
+        }
+
+        String projectId = retrieveProjectId(client, hook);
+        if (projectId == null) {
+            return;
+        }
+
+        String branch = ref.substring(BRANCH_REF_PREFIX.length());
+        BranchIndex index = projectBranchCache.getIfPresent(new ProjectKey(client, projectId));
+        if (index == null) {
+            return;
+        }
+        if (created) {
+            index.add(branch);
+        } else {
+            index.remove(branch);
+        }
+        LOGGER.log(Level.FINEST, "{0} branch {1} in cache of repo {2}", LoggerUtil.toArray(created ? "added" : "removed", branch, projectId));
+    }
+
+    private String retrieveProjectId(GitLabClient client, PushHook hook) {
+        if (hook.getProject() != null && StringUtils.isNotBlank(hook.getProject().getPathWithNamespace())) {
+            return hook.getProject().getPathWithNamespace();
+        }
+        if (hook.getRepository() != null && hook.getRepository().getUrl() != null) {
             try {
-                return projectBranchCache.get(sourceRepositoryString, new BranchNamesLoader(client, sourceRepositoryString));
-            } catch (ExecutionException e) {
-                throw new BranchLoadingException(e);
+                return ProjectIdUtil.retrieveProjectId(client, hook.getRepository().getUrl());
+            } catch (ProjectIdUtil.ProjectIdResolutionException e) {
+                LOGGER.log(Level.FINEST, "Failed to resolve project of push hook", e);
             }
         }
+        return null;
     }
 
     public static class BranchLoadingException extends RuntimeException {
@@ -54,24 +130,15 @@ public class GitLabProjectBranchesService {
         }
     }
 
-    private static class BranchNamesLoader implements Callable<List<String>> {
-        private final GitLabClient client;
-        private final String sourceRepository;
-
-        private BranchNamesLoader(GitLabClient client, String sourceRepository) {
-            this.client = client;
-            this.sourceRepository = sourceRepository;
-        }
-
+    private static class BranchNamesLoader extends CacheLoader<ProjectKey, BranchIndex> {
         @Override
-        public List<String> call() throws Exception {
+        public BranchIndex load(ProjectKey key) {
             List<String> result = new ArrayList<>();
-            String projectId = ProjectIdUtil.retrieveProjectId(client, sourceRepository);
-            for (Branch branch : client.getBranches(projectId)) {
+            for (Branch branch : key.getClient().getAllBranches(key.getProjectId())) {
                 result.add(branch.getName());
             }
-            LOGGER.log(Level.FINEST, "found these branches for repo {0} : {1}", LoggerUtil.toArray(sourceRepository, result));
-            return result;
+            LOGGER.log(Level.FINEST, "found these branches for repo {0} : {1}", LoggerUtil.toArray(key.getProjectId(), result));
+            return new BranchIndex(result);
         }
     }
 }
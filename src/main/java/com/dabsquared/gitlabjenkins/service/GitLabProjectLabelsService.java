@@ -2,49 +2,134 @@ package com.dabsquared.gitlabjenkins.service;
 
 
 import com.dabsquared.gitlabjenkins.gitlab.api.GitLabClient;
+import com.dabsquared.gitlabjenkins.gitlab.api.ListingSnapshot;
 import com.dabsquared.gitlabjenkins.gitlab.api.model.Label;
 import com.dabsquared.gitlabjenkins.util.LoggerUtil;
 import com.dabsquared.gitlabjenkins.util.ProjectIdUtil;
-import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import hudson.XmlFile;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.Callable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 
+/**
+ * Caches the label names of GitLab projects.
+ *
+ * Lookups of cached projects never block, stale entries are served while they are revalidated in the background with
+ * conditional requests. The cache is snapshotted to disk, so it is warm again right after a restart.
+ */
 public class GitLabProjectLabelsService {
 
     private static final Logger LOGGER = Logger.getLogger(GitLabProjectLabelsService.class.getName());
+    private static final long REFRESH_AFTER_SECONDS = Long.getLong(GitLabProjectLabelsService.class.getName() + ".refreshAfterSeconds", 300);
+    private static final long EXPIRE_AFTER_SECONDS = Long.getLong(GitLabProjectLabelsService.class.getName() + ".expireAfterSeconds", 86400);
+    private static final long SNAPSHOT_DELAY_SECONDS = 30;
 
     private static transient GitLabProjectLabelsService instance;
-    private final Cache<String, List<String>> projectLabelsCache;
+    private final LoadingCache<ProjectKey, ProjectLabels> projectLabelsCache;
+    private final Map<ProjectKey, ListingSnapshot<Label>> restoredLabels = new ConcurrentHashMap<>();
+    private final XmlFile snapshotFile;
+    private final AtomicBoolean snapshotScheduled = new AtomicBoolean();
 
     GitLabProjectLabelsService() {
-        this.projectLabelsCache = CacheBuilder.<String, String>newBuilder()
+        this(REFRESH_AFTER_SECONDS, EXPIRE_AFTER_SECONDS, TimeUnit.SECONDS,
+             Executors.newCachedThreadPool(new NamingThreadFactory(new DaemonThreadFactory(), "GitLab label cache refresh")), null);
+    }
+
+    GitLabProjectLabelsService(long refreshAfter, long expireAfter, TimeUnit unit, Executor refreshExecutor, XmlFile snapshotFile) {
+        this.projectLabelsCache = CacheBuilder.newBuilder()
                 .maximumSize(1000)
-                .expireAfterWrite(5, TimeUnit.SECONDS)
-                .build();
+                .refreshAfterWrite(refreshAfter, unit)
+                .expireAfterAccess(expireAfter, unit)
+                .build(CacheLoader.asyncReloading(new LabelNamesLoader(), refreshExecutor));
+        this.snapshotFile = snapshotFile;
+        restoreSnapshot();
     }
 
-    public static GitLabProjectLabelsService instance() {
+    public static synchronized GitLabProjectLabelsService instance() {
         if (instance == null) {
-            instance = new GitLabProjectLabelsService();
+            instance = new GitLabProjectLabelsService(REFRESH_AFTER_SECONDS, EXPIRE_AFTER_SECONDS, TimeUnit.SECONDS,
+                Executors.newCachedThreadPool(new NamingThreadFactory(new DaemonThreadFactory(), "GitLab label cache refresh")),
+                new XmlFile(Jenkins.XSTREAM2, new File(Jenkins.getInstance().getRootDir(), GitLabProjectLabelsService.class.getName() + ".xml")));
         }
         return instance;
     }
 
+    /**
+     * @return the label names of the project; {@code contains} on the returned list is a constant time lookup
+     */
     public List<String> getLabels(GitLabClient client, String sourceRepositoryString) {
-        synchronized (projectLabelsCache) {
-            try {
-                return projectLabelsCache.get(sourceRepositoryString, new LabelNamesLoader(client, sourceRepositoryString));
-            } catch (ExecutionException e) {
-                throw new LabelLoadingException(e);
+        try {
+            ProjectKey key = new ProjectKey(client, ProjectIdUtil.retrieveProjectId(client, sourceRepositoryString));
+            ListingSnapshot<Label> restored = restoredLabels.remove(key);
+            if (restored != null) {
+                projectLabelsCache.asMap().putIfAbsent(key, new ProjectLabels(restored));
+                projectLabelsCache.refresh(key);
+            }
+            return projectLabelsCache.get(key).getNames();
+        } catch (ProjectIdUtil.ProjectIdResolutionException e) {
+            throw new LabelLoadingException(e);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw new LabelLoadingException(e.getCause());
+        }
+    }
+
+    private void restoreSnapshot() {
+        if (snapshotFile == null || !snapshotFile.exists()) {
+            return;
+        }
+        try {
+            Snapshot snapshot = (Snapshot) snapshotFile.read();
+            for (SnapshotEntry entry : snapshot.entries) {
+                restoredLabels.put(new ProjectKey(entry.hostUrl, entry.projectId), entry.labels);
             }
+            LOGGER.log(Level.FINE, "restored labels of {0} projects", snapshot.entries.size());
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to restore the label cache from " + snapshotFile, e);
+        }
+    }
+
+    private void scheduleSnapshot() {
+        if (snapshotFile != null && snapshotScheduled.compareAndSet(false, true)) {
+            Timer.get().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    snapshotScheduled.set(false);
+                    writeSnapshot();
+                }
+            }, SNAPSHOT_DELAY_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    void writeSnapshot() {
+        Snapshot snapshot = new Snapshot();
+        for (Map.Entry<ProjectKey, ProjectLabels> entry : projectLabelsCache.asMap().entrySet()) {
+            snapshot.entries.add(new SnapshotEntry(entry.getKey().getHostUrl(), entry.getKey().getProjectId(), entry.getValue().listing));
+        }
+        try {
+            snapshotFile.write(snapshot);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to write the label cache to " + snapshotFile, e);
         }
     }
 
@@ -54,24 +139,57 @@ public class GitLabProjectLabelsService {
         }
     }
 
-    private static class LabelNamesLoader implements Callable<List<String>> {
-        private final GitLabClient client;
-        private final String sourceRepository;
+    private static class ProjectLabels {
+        private final ListingSnapshot<Label> listing;
+        private final List<String> names;
+
+        private ProjectLabels(ListingSnapshot<Label> listing) {
+            this.listing = listing;
+            List<String> names = new ArrayList<>();
+            for (Label label : listing.getItems()) {
+                names.add(label.getName());
+            }
+            // the list view of an ImmutableSet delegates contains() to the set
+            this.names = ImmutableSet.copyOf(names).asList();
+        }
 
-        private LabelNamesLoader(GitLabClient client, String sourceRepository) {
-            this.client = client;
-            this.sourceRepository = sourceRepository;
+        private List<String> getNames() {
+            return names;
         }
+    }
 
+    private class LabelNamesLoader extends CacheLoader<ProjectKey, ProjectLabels> {
         @Override
-        public List<String> call() throws Exception {
-            List<String> result = new ArrayList<>();
-            String projectId = ProjectIdUtil.retrieveProjectId(client, sourceRepository);
-            for (Label label : client.getLabels(projectId)) {
-                result.add(label.getName());
-            }
-            LOGGER.log(Level.FINEST, "found these labels for repo {0} : {1}", LoggerUtil.toArray(sourceRepository, result));
+        public ProjectLabels load(ProjectKey key) {
+            return load(key, null);
+        }
+
+        @Override
+        public ProjectLabels reload(ProjectKey key, ProjectLabels oldValue) {
+            return load(key, oldValue.listing);
+        }
+
+        private ProjectLabels load(ProjectKey key, ListingSnapshot<Label> previous) {
+            ProjectLabels result = new ProjectLabels(key.getClient().getLabels(key.getProjectId(), previous));
+            LOGGER.log(Level.FINEST, "found these labels for repo {0} : {1}", LoggerUtil.toArray(key.getProjectId(), result.getNames()));
+            scheduleSnapshot();
             return result;
         }
     }
+
+    private static class Snapshot {
+        private final List<SnapshotEntry> entries = new ArrayList<>();
+    }
+
+    private static class SnapshotEntry {
+        private final String hostUrl;
+        private final String projectId;
+        private final ListingSnapshot<Label> labels;
+
+        private SnapshotEntry(String hostUrl, String projectId, ListingSnapshot<Label> labels) {
+            this.hostUrl = hostUrl;
+            this.projectId = projectId;
+            this.labels = labels;
+        }
+    }
 }
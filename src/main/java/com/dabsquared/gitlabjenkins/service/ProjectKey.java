@@ -0,0 +1,59 @@
+package com.dabsquared.gitlabjenkins.service;
+
+
+import com.dabsquared.gitlabjenkins.gitlab.api.GitLabClient;
+import org.apache.commons.lang.StringUtils;
+
+
+/**
+ * Identifies a project by GitLab host and project path. The client is only carried along to load the cached entry
+ * and is not part of the identity.
+ */
+final class ProjectKey {
+    private final GitLabClient client;
+    private final String hostUrl;
+    private final String projectId;
+
+    ProjectKey(GitLabClient client, String projectId) {
+        this(client, client.getHostUrl(), projectId);
+    }
+
+    ProjectKey(String hostUrl, String projectId) {
+        this(null, hostUrl, projectId);
+    }
+
+    private ProjectKey(GitLabClient client, String hostUrl, String projectId) {
+        this.client = client;
+        this.hostUrl = hostUrl;
+        this.projectId = projectId;
+    }
+
+    GitLabClient getClient() {
+        return client;
+    }
+
+    String getHostUrl() {
+        return hostUrl;
+    }
+
+    String getProjectId() {
+        return projectId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ProjectKey that = (ProjectKey) o;
+        return StringUtils.equals(hostUrl, that.hostUrl) && projectId.equals(that.projectId);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (hostUrl == null ? 0 : hostUrl.hashCode()) + projectId.hashCode();
+    }
+}
@@ -0,0 +1,8 @@
+package com.dabsquared.gitlabjenkins.trigger;
+
+/**
+ * What to do when a trigger fires for a revision that a queued or running build of the job already builds.
+ */
+public enum DuplicateBuildPolicy {
+    build, attach, drop
+}
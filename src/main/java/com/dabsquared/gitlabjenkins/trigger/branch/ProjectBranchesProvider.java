@@ -2,6 +2,7 @@ package com.dabsquared.gitlabjenkins.trigger.branch;
 
 import com.dabsquared.gitlabjenkins.Messages;
 import com.dabsquared.gitlabjenkins.connection.GitLabConnectionProperty;
+import com.dabsquared.gitlabjenkins.service.BranchIndex;
 import com.dabsquared.gitlabjenkins.service.GitLabProjectBranchesService;
 import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
@@ -33,6 +34,7 @@ public final class ProjectBranchesProvider {
 
     private static final Logger LOGGER = Logger.getLogger(ProjectBranchesProvider.class.getName());
     private static final ProjectBranchesProvider INSTANCE = new ProjectBranchesProvider();
+    private static final int MAX_SUGGESTIONS = Integer.getInteger(ProjectBranchesProvider.class.getName() + ".maxSuggestions", 100);
 
     private ProjectBranchesProvider() {
     }
@@ -41,28 +43,26 @@ public final class ProjectBranchesProvider {
         return INSTANCE;
     }
 
-    private List<String> getProjectBranches(Job<?, ?> project) {
+    private BranchIndex getProjectBranches(Job<?, ?> project) {
         final URIish sourceRepository = getSourceRepoURLDefault(project);
         GitLabConnectionProperty connectionProperty = project.getProperty(GitLabConnectionProperty.class);
         if (connectionProperty != null && connectionProperty.getClient() != null) {
-            return GitLabProjectBranchesService.instance().getBranches(connectionProperty.getClient(), sourceRepository.toString());
+            return GitLabProjectBranchesService.instance().getBranchIndex(connectionProperty.getClient(), sourceRepository.toString());
         } else {
             LOGGER.log(Level.WARNING, "getProjectBranches: gitlabHostUrl hasn't been configured globally. Job {0}.", project.getFullName());
-            return Collections.emptyList();
+            return new BranchIndex(Collections.<String>emptyList());
         }
     }
 
     public AutoCompletionCandidates doAutoCompleteBranchesSpec(Job<?, ?> job, String query) {
         AutoCompletionCandidates result = new AutoCompletionCandidates();
+        BranchIndex branches = getProjectBranchIndex(job);
         // show all suggestions for short strings
         if (query.length() < 2) {
-            result.add(getProjectBranchesAsArray(job));
+            List<String> all = branches.getBranches();
+            result.add(all.subList(0, Math.min(all.size(), MAX_SUGGESTIONS)).toArray(new String[0]));
         } else {
-            for (String branch : getProjectBranchesAsArray(job)) {
-                if (branch.toLowerCase().contains(query.toLowerCase())) {
-                    result.add(branch);
-                }
-            }
+            result.add(branches.find(query, MAX_SUGGESTIONS).toArray(new String[0]));
         }
         return result;
     }
@@ -79,12 +79,11 @@ public final class ProjectBranchesProvider {
         }
     }
 
-    private FormValidation checkMatchingBranches(@QueryParameter String value, List<String> projectBranches) {
+    private FormValidation checkMatchingBranches(@QueryParameter String value, BranchIndex projectBranches) {
         Set<String> matchingSpecs = new HashSet<>();
         Set<String> unknownSpecs = new HashSet<>();
-        AntPathMatcherSet projectBranchesMatcherSet = new AntPathMatcherSet(projectBranches);
         for (String branchSpec : Splitter.on(',').omitEmptyStrings().trimResults().split(value)) {
-            if (projectBranchesMatcherSet.contains(branchSpec)) {
+            if (projectBranches.matchesAny(branchSpec)) {
                 matchingSpecs.add(branchSpec);
             } else {
                 unknownSpecs.add(branchSpec);
@@ -103,14 +102,13 @@ public final class ProjectBranchesProvider {
     }
 
 
-    private String[] getProjectBranchesAsArray(Job<?, ?> job) {
+    private BranchIndex getProjectBranchIndex(Job<?, ?> job) {
         try {
-            List<String> branches = getProjectBranches(job);
-            return branches.toArray(new String[branches.size()]);
+            return getProjectBranches(job);
         } catch (GitLabProjectBranchesService.BranchLoadingException e) {
             LOGGER.log(Level.FINEST, "Failed to load branch names from GitLab. Please check the logs and your configuration.", e);
         }
-        return new String[0];
+        return new BranchIndex(Collections.<String>emptyList());
     }
 
 
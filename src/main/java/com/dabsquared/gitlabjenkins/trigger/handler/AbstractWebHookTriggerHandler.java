@@ -3,13 +3,15 @@ package com.dabsquared.gitlabjenkins.trigger.handler;
 import com.dabsquared.gitlabjenkins.cause.CauseData;
 import com.dabsquared.gitlabjenkins.cause.GitLabWebHookCause;
 import com.dabsquared.gitlabjenkins.connection.GitLabConnectionProperty;
-import com.dabsquared.gitlabjenkins.gitlab.api.GitLabClient;
+import com.dabsquared.gitlabjenkins.gitlab.api.AsyncGitLabClient;
 import com.dabsquared.gitlabjenkins.gitlab.api.model.BuildState;
 import com.dabsquared.gitlabjenkins.gitlab.hook.model.WebHook;
 import com.dabsquared.gitlabjenkins.trigger.exception.NoRevisionToBuildException;
 import com.dabsquared.gitlabjenkins.trigger.filter.BranchFilter;
 import com.dabsquared.gitlabjenkins.trigger.filter.MergeRequestLabelFilter;
 import com.dabsquared.gitlabjenkins.util.LoggerUtil;
+import com.dabsquared.gitlabjenkins.util.LoggingFutureCallback;
+import com.google.common.util.concurrent.Futures;
 import hudson.model.Action;
 import hudson.model.CauseAction;
 import hudson.model.Job;
@@ -23,8 +25,6 @@ import org.apache.commons.lang.StringUtils;
 import org.eclipse.jgit.transport.URIish;
 import org.jenkinsci.plugins.displayurlapi.DisplayURLProvider;
 
-import javax.ws.rs.ProcessingException;
-import javax.ws.rs.WebApplicationException;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.logging.Level;
@@ -50,8 +50,13 @@ public abstract class AbstractWebHookTriggerHandler<H extends WebHook> implement
         if (branchFilter.isBranchAllowed(sourceBranch, targetBranch)) {
             LOGGER.log(Level.INFO, "{0} triggered for {1}.", LoggerUtil.toArray(job.getFullName(), getTriggerType()));
             cancelPendingBuildsIfNecessary(job, hook);
+            abortSupersededBuildsIfNecessary(job, hook);
+            GitLabWebHookCause cause = new GitLabWebHookCause(retrieveCauseData(hook));
+            if (pendingBuildsHandler.skipDuplicateBuild(job, cause)) {
+                return;
+            }
             setCommitStatusPendingIfNecessary(job, hook);
-            scheduleBuild(job, createActions(job, hook));
+            scheduleBuild(job, createActions(job, hook, cause));
         } else {
             LOGGER.log(Level.INFO, "branch {0} is not allowed", sourceBranch + " or " + targetBranch);
         }
@@ -64,25 +69,26 @@ public abstract class AbstractWebHookTriggerHandler<H extends WebHook> implement
     private void setCommitStatusPendingIfNecessary(Job<?, ?> job, H hook) {
         String buildName = PendingBuildsHandler.resolvePendingBuildName(job);
         if (StringUtils.isNotBlank(buildName)) {
-            GitLabClient client = job.getProperty(GitLabConnectionProperty.class).getClient();
+            AsyncGitLabClient client = job.getProperty(GitLabConnectionProperty.class).getAsyncClient();
             BuildStatusUpdate buildStatusUpdate = retrieveBuildStatusUpdate(hook);
-            try {
-                if (client == null) {
-                    LOGGER.log(Level.SEVERE, "No GitLab connection configured");
-                } else {
-                    String targetUrl = DisplayURLProvider.get().getJobURL(job);
-                    client.changeBuildStatus(buildStatusUpdate.getProjectId(), buildStatusUpdate.getSha(),
-                        BuildState.pending, buildStatusUpdate.getRef(), buildName, targetUrl, BuildState.pending.name());
-                }
-            } catch (WebApplicationException | ProcessingException e) {
-                LOGGER.log(Level.SEVERE, "Failed to set build state to pending", e);
+            if (client == null) {
+                LOGGER.log(Level.SEVERE, "No GitLab connection configured");
+            } else {
+                String targetUrl = DisplayURLProvider.get().getJobURL(job);
+                Futures.addCallback(client.changeBuildStatus(buildStatusUpdate.getProjectId(), buildStatusUpdate.getSha(),
+                    BuildState.pending, buildStatusUpdate.getRef(), buildName, targetUrl, BuildState.pending.name()),
+                    new LoggingFutureCallback(LOGGER, "Failed to set build state to pending"));
             }
         }
     }
 
     protected Action[] createActions(Job<?, ?> job, H hook) {
+        return createActions(job, hook, new GitLabWebHookCause(retrieveCauseData(hook)));
+    }
+
+    private Action[] createActions(Job<?, ?> job, H hook, GitLabWebHookCause cause) {
         ArrayList<Action> actions = new ArrayList<>();
-        actions.add(new CauseAction(new GitLabWebHookCause(retrieveCauseData(hook))));
+        actions.add(new CauseAction(cause));
         try {
             SCMTriggerItem item = SCMTriggerItem.SCMTriggerItems.asSCMTriggerItem(job);
             GitSCM gitSCM = getGitSCM(item);
@@ -96,6 +102,8 @@ public abstract class AbstractWebHookTriggerHandler<H extends WebHook> implement
 
     protected void cancelPendingBuildsIfNecessary(Job<?, ?> job, H hook) {}
 
+    protected void abortSupersededBuildsIfNecessary(Job<?, ?> job, H hook) {}
+
     protected abstract CauseData retrieveCauseData(H hook);
 
     protected abstract String getSourceBranch(H hook);
@@ -0,0 +1,43 @@
+package com.dabsquared.gitlabjenkins.trigger.handler;
+
+import com.dabsquared.gitlabjenkins.cause.CauseData;
+import hudson.model.Job;
+
+/**
+ * Identifies the builds of a job that were triggered for the same branch of a GitLab project.
+ */
+final class BuildKey {
+    private final String jobFullName;
+    private final Integer sourceProjectId;
+    private final String branch;
+
+    BuildKey(Job<?, ?> job, CauseData causeData) {
+        this(job, causeData.getSourceProjectId(), causeData.getBranch());
+    }
+
+    BuildKey(Job<?, ?> job, Integer sourceProjectId, String branch) {
+        this.jobFullName = job.getFullName();
+        this.sourceProjectId = sourceProjectId;
+        this.branch = branch;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        BuildKey that = (BuildKey) o;
+        return jobFullName.equals(that.jobFullName) && sourceProjectId.equals(that.sourceProjectId) && branch.equals(that.branch);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = jobFullName.hashCode();
+        result = 31 * result + sourceProjectId.hashCode();
+        result = 31 * result + branch.hashCode();
+        return result;
+    }
+}
@@ -0,0 +1,78 @@
+package com.dabsquared.gitlabjenkins.trigger.handler;
+
+import com.dabsquared.gitlabjenkins.cause.CauseData;
+import com.dabsquared.gitlabjenkins.cause.GitLabWebHookCause;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import hudson.Extension;
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the latest successful build of each commit that was triggered by GitLab, so that its result can be reused
+ * when the same revision is triggered again. Also counts how often results were reused and how much executor time that saved.
+ */
+@Extension
+public class CompletedBuildsIndex extends RunListener<Run<?, ?>> {
+
+    private static final int MAX_SIZE = Integer.getInteger(CompletedBuildsIndex.class.getName() + ".maxSize", 10000);
+
+    private final Cache<RevisionKey, String> successfulBuilds = CacheBuilder.newBuilder().maximumSize(MAX_SIZE).build();
+    private final AtomicLong reusedBuilds = new AtomicLong();
+    private final AtomicLong savedExecutorMillis = new AtomicLong();
+
+    public static CompletedBuildsIndex get() {
+        return RunListener.all().get(CompletedBuildsIndex.class);
+    }
+
+    /**
+     * @return a successful build of the job for the same revision as the given cause that completed at most
+     *         {@code maxAgeMillis} ago or {@code null} if there is none
+     */
+    public Run<?, ?> getSuccessfulBuild(Job<?, ?> job, CauseData causeData, long maxAgeMillis) {
+        RevisionKey key = RevisionKey.of(job, causeData);
+        String id = key == null ? null : successfulBuilds.getIfPresent(key);
+        Run<?, ?> run = id == null ? null : Run.fromExternalizableId(id);
+        if (run == null || run.getResult() != Result.SUCCESS) {
+            return null;
+        }
+        GitLabWebHookCause cause = run.getCause(GitLabWebHookCause.class);
+        if (cause == null || !RevisionKey.isSameRevision(cause.getData(), causeData)) {
+            return null;
+        }
+        long completedAt = run.getStartTimeInMillis() + run.getDuration();
+        return System.currentTimeMillis() - completedAt <= maxAgeMillis ? run : null;
+    }
+
+    public long getReusedBuildCount() {
+        return reusedBuilds.get();
+    }
+
+    /**
+     * @return the summed up duration of all builds whose result was reused instead of building again
+     */
+    public long getSavedExecutorMillis() {
+        return savedExecutorMillis.get();
+    }
+
+    void recordReuse(Run<?, ?> run) {
+        reusedBuilds.incrementAndGet();
+        savedExecutorMillis.addAndGet(run.getDuration());
+    }
+
+    @Override
+    public void onCompleted(Run<?, ?> run, TaskListener listener) {
+        GitLabWebHookCause cause = run.getCause(GitLabWebHookCause.class);
+        if (cause != null && run.getResult() == Result.SUCCESS) {
+            RevisionKey key = RevisionKey.of(run.getParent(), cause.getData());
+            if (key != null) {
+                successfulBuilds.put(key, run.getExternalizableId());
+            }
+        }
+    }
+}
@@ -4,19 +4,37 @@ import com.dabsquared.gitlabjenkins.GitLabPushTrigger;
 import com.dabsquared.gitlabjenkins.cause.CauseData;
 import com.dabsquared.gitlabjenkins.cause.GitLabWebHookCause;
 import com.dabsquared.gitlabjenkins.connection.GitLabConnectionProperty;
-import com.dabsquared.gitlabjenkins.gitlab.api.GitLabClient;
+import com.dabsquared.gitlabjenkins.gitlab.api.AsyncGitLabClient;
 import com.dabsquared.gitlabjenkins.gitlab.api.model.BuildState;
+import com.dabsquared.gitlabjenkins.gitlab.hook.model.MergeRequestObjectAttributes;
 import com.dabsquared.gitlabjenkins.publisher.GitLabCommitStatusPublisher;
+import com.dabsquared.gitlabjenkins.trigger.DuplicateBuildPolicy;
 import com.dabsquared.gitlabjenkins.util.LoggerUtil;
+import com.dabsquared.gitlabjenkins.util.LoggingFutureCallback;
+import com.google.common.base.Objects;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.util.concurrent.Futures;
 import hudson.model.AbstractProject;
+import hudson.model.Action;
 import hudson.model.Cause;
+import hudson.model.CauseAction;
+import hudson.model.Executor;
 import hudson.model.Job;
 import hudson.model.Queue;
+import hudson.model.Result;
+import hudson.model.Run;
+import jenkins.model.CauseOfInterruption;
 import jenkins.model.Jenkins;
 import org.apache.commons.lang.StringUtils;
 import org.jenkinsci.plugins.displayurlapi.DisplayURLProvider;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -25,24 +43,162 @@ public class PendingBuildsHandler {
     private static final Logger LOGGER = Logger.getLogger(PendingBuildsHandler.class.getName());
 
     public void cancelPendingBuilds(Job<?, ?> job, Integer projectId, String branch) {
+        setCommitStatusCancelledIfNecessary(cancelQueuedBuilds(job, projectId, branch, Predicates.<CauseData>alwaysTrue()), job);
+    }
+
+    /**
+     * Aborts the running builds of the job that were triggered for the same source project and branch
+     * but for another commit than the given one.
+     */
+    public void abortSupersededBuilds(Job<?, ?> job, Integer projectId, String branch, final String sha) {
+        Predicate<CauseData> otherCommit = new Predicate<CauseData>() {
+            @Override
+            public boolean apply(CauseData causeData) {
+                return !StringUtils.equals(sha, causeData.getLastCommit());
+            }
+        };
+        setCommitStatusCancelledIfNecessary(abortRunningBuilds(job, projectId, branch, otherCommit, "Superseded by a newer commit"), job);
+    }
+
+    /**
+     * Cancels the queued and aborts the running builds of the job that were triggered for a merge request
+     * that has been closed or merged.
+     */
+    public void cancelMergeRequestBuilds(Job<?, ?> job, final MergeRequestObjectAttributes mergeRequest) {
+        Predicate<CauseData> ofMergeRequest = new Predicate<CauseData>() {
+            @Override
+            public boolean apply(CauseData causeData) {
+                return mergeRequest.getIid().equals(causeData.getMergeRequestIid())
+                    && Objects.equal(mergeRequest.getTargetProjectId(), causeData.getMergeRequestTargetProjectId());
+            }
+        };
+        cancelBuilds(job, mergeRequest.getSourceProjectId(), mergeRequest.getSourceBranch(), ofMergeRequest,
+            "Merge request !" + mergeRequest.getIid() + " was " + mergeRequest.getState());
+    }
+
+    /**
+     * Cancels the queued and aborts the running builds of the job that were triggered for a branch that has been deleted.
+     */
+    public void cancelBranchBuilds(Job<?, ?> job, Integer projectId, String branch) {
+        cancelBuilds(job, projectId, branch, Predicates.<CauseData>alwaysTrue(), "Branch " + branch + " was deleted");
+    }
+
+    /**
+     * Looks for a queued or running build of the job that builds the same revision as the given cause. Depending on the
+     * {@link DuplicateBuildPolicy} of the job's trigger the cause is attached to that build or dropped.
+     * If the job's trigger allows to reuse build results, a recent successful build of the revision is reported to
+     * GitLab for the cause instead of building it again.
+     *
+     * @return {@code true} if no new build should be scheduled for the cause
+     */
+    public boolean skipDuplicateBuild(Job<?, ?> job, GitLabWebHookCause cause) {
+        GitLabPushTrigger trigger = GitLabPushTrigger.getFromJob(job);
+        if (trigger == null) {
+            return false;
+        }
+        return skipInFlightBuild(job, cause, trigger.getDuplicateBuildPolicy())
+            || reuseSuccessfulBuild(job, cause.getData(), trigger.getBuildResultReuseMinutes());
+    }
+
+    private boolean reuseSuccessfulBuild(Job<?, ?> job, CauseData causeData, int maxAgeMinutes) {
+        String buildName = resolvePendingBuildName(job);
+        GitLabConnectionProperty connectionProperty = job.getProperty(GitLabConnectionProperty.class);
+        if (maxAgeMinutes <= 0 || StringUtils.isBlank(buildName) || connectionProperty == null || connectionProperty.getClient() == null) {
+            return false;
+        }
+        Run<?, ?> run = CompletedBuildsIndex.get().getSuccessfulBuild(job, causeData, TimeUnit.MINUTES.toMillis(maxAgeMinutes));
+        if (run == null) {
+            return false;
+        }
+        try {
+            connectionProperty.getClient().changeBuildStatus(causeData.getSourceProjectId(), causeData.getLastCommit(), BuildState.success,
+                causeData.getSourceBranch(), buildName, DisplayURLProvider.get().getRunURL(run), "Result of " + run.getFullDisplayName());
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to report the result of " + run.getFullDisplayName() + ", building again", e);
+            return false;
+        }
+        CompletedBuildsIndex completedBuilds = CompletedBuildsIndex.get();
+        completedBuilds.recordReuse(run);
+        LOGGER.log(Level.INFO, "Reused result of {0} for revision {1}, saved {2} ms of executor time ({3} ms in total)",
+            LoggerUtil.toArray(run.getFullDisplayName(), causeData.getLastCommit(), run.getDuration(), completedBuilds.getSavedExecutorMillis()));
+        return true;
+    }
+
+    private boolean skipInFlightBuild(Job<?, ?> job, GitLabWebHookCause cause, DuplicateBuildPolicy policy) {
+        if (policy == DuplicateBuildPolicy.build) {
+            return false;
+        }
+
         Queue queue = Jenkins.getInstance().getQueue();
-        for (Queue.Item item : queue.getItems()) {
-            if (!job.getName().equals(item.task.getName())) {
-                continue;
+        Queue.Item item = QueuedBuildsIndex.get().getItem(queue, job, cause.getData());
+        if (item != null) {
+            LOGGER.log(Level.INFO, "Revision {0} of {1} is already queued", LoggerUtil.toArray(cause.getData().getLastCommit(), job.getFullName()));
+            if (policy == DuplicateBuildPolicy.attach) {
+                new CauseAction(cause).foldIntoExisting(item, item.task, Collections.<Action>emptyList());
             }
-            GitLabWebHookCause queueItemGitLabWebHookCause = getGitLabWebHookCauseData(item);
-            if (queueItemGitLabWebHookCause == null) {
-                continue;
+            return true;
+        }
+
+        Run<?, ?> run = RunningBuildsIndex.get().getBuild(job, cause.getData());
+        if (run != null) {
+            LOGGER.log(Level.INFO, "Revision {0} is already built by {1}", LoggerUtil.toArray(cause.getData().getLastCommit(), run.getFullDisplayName()));
+            if (policy == DuplicateBuildPolicy.attach) {
+                attach(run, cause);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adds the cause to a running build. The build is locked like {@link Run#save()} does, so causes that are attached
+     * by concurrent hooks are not lost and the build is not saved while its actions are replaced.
+     */
+    private void attach(Run<?, ?> run, GitLabWebHookCause cause) {
+        synchronized (run) {
+            CauseAction existing = run.getAction(CauseAction.class);
+            List<Cause> causes = new ArrayList<>();
+            if (existing != null) {
+                causes.addAll(existing.getCauses());
+            }
+            causes.add(cause);
+            run.replaceAction(new CauseAction(causes));
+            try {
+                run.save();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to save " + run.getFullDisplayName(), e);
             }
-            CauseData queueItemCauseData = queueItemGitLabWebHookCause.getData();
-            if (!projectId.equals(queueItemCauseData.getSourceProjectId())) {
-                continue;
+        }
+    }
+
+    private void cancelBuilds(Job<?, ?> job, Integer projectId, String branch, Predicate<CauseData> predicate, String reason) {
+        List<CauseData> cancelled = cancelQueuedBuilds(job, projectId, branch, predicate);
+        cancelled.addAll(abortRunningBuilds(job, projectId, branch, predicate, reason));
+        setCommitStatusCancelledIfNecessary(cancelled, job);
+    }
+
+    private List<CauseData> cancelQueuedBuilds(Job<?, ?> job, Integer projectId, String branch, Predicate<CauseData> predicate) {
+        Queue queue = Jenkins.getInstance().getQueue();
+        List<CauseData> cancelled = new ArrayList<>();
+        for (Queue.Item item : QueuedBuildsIndex.get().getItems(queue, job, projectId, branch)) {
+            GitLabWebHookCause queueItemGitLabWebHookCause = getGitLabWebHookCauseData(item);
+            if (queueItemGitLabWebHookCause != null && predicate.apply(queueItemGitLabWebHookCause.getData())
+                && cancel(item, queue, branch)) {
+                cancelled.add(queueItemGitLabWebHookCause.getData());
             }
-            if (branch.equals(queueItemCauseData.getBranch())) {
-                cancel(item, queue, branch);
-                setCommitStatusCancelledIfNecessary(queueItemCauseData, job);
+        }
+        return cancelled;
+    }
+
+    private List<CauseData> abortRunningBuilds(Job<?, ?> job, Integer projectId, String branch, Predicate<CauseData> predicate, String reason) {
+        List<CauseData> aborted = new ArrayList<>();
+        for (Run<?, ?> run : RunningBuildsIndex.get().getBuilds(job, projectId, branch)) {
+            GitLabWebHookCause cause = run.getCause(GitLabWebHookCause.class);
+            if (cause != null && predicate.apply(cause.getData()) && abort(run, branch, reason)) {
+                aborted.add(cause.getData());
             }
         }
+        return aborted;
     }
 
     private GitLabWebHookCause getGitLabWebHookCauseData(Queue.Item item) {
@@ -54,27 +210,40 @@ public class PendingBuildsHandler {
         return null;
     }
 
-    private void cancel(Queue.Item item, Queue queue, String branch) {
+    private boolean cancel(Queue.Item item, Queue queue, String branch) {
         try {
             LOGGER.log(Level.INFO, "Cancelling job {0} for branch {1}", LoggerUtil.toArray(item.task.getName(), branch));
-            queue.cancel(item);
+            return queue.cancel(item);
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Error cancelling queued build", e);
+            return false;
         }
     }
 
-    private void setCommitStatusCancelledIfNecessary(CauseData causeData, Job<?, ?> job) {
+    private boolean abort(Run<?, ?> run, String branch, String reason) {
+        Executor executor = run.getExecutor();
+        if (executor == null) {
+            return false;
+        }
+        LOGGER.log(Level.INFO, "Aborting build {0} for branch {1}", LoggerUtil.toArray(run.getFullDisplayName(), branch));
+        executor.interrupt(Result.ABORTED, new GitLabInterruption(reason));
+        return true;
+    }
+
+    private void setCommitStatusCancelledIfNecessary(List<CauseData> cancelled, Job<?, ?> job) {
+        if (cancelled.isEmpty()) {
+            return;
+        }
         String buildName = resolvePendingBuildName(job);
         if (StringUtils.isBlank(buildName)) {
             return;
         }
         String targetUrl = DisplayURLProvider.get().getJobURL(job);
-        GitLabClient client = job.getProperty(GitLabConnectionProperty.class).getClient();
-        try {
-            client.changeBuildStatus(causeData.getSourceProjectId(), causeData.getLastCommit(), BuildState.canceled,
-                causeData.getSourceBranch(), buildName, targetUrl, BuildState.canceled.name());
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "Failed to set build state to pending", e);
+        AsyncGitLabClient client = job.getProperty(GitLabConnectionProperty.class).getAsyncClient();
+        for (CauseData causeData : cancelled) {
+            Futures.addCallback(client.changeBuildStatus(causeData.getSourceProjectId(), causeData.getLastCommit(), BuildState.canceled,
+                causeData.getSourceBranch(), buildName, targetUrl, BuildState.canceled.name()),
+                new LoggingFutureCallback(LOGGER, "Failed to set build state to canceled"));
         }
     }
 
@@ -93,4 +262,17 @@ public class PendingBuildsHandler {
         }
         return null;
     }
+
+    private static class GitLabInterruption extends CauseOfInterruption {
+        private final String reason;
+
+        private GitLabInterruption(String reason) {
+            this.reason = reason;
+        }
+
+        @Override
+        public String getShortDescription() {
+            return reason;
+        }
+    }
 }
@@ -0,0 +1,158 @@
+package com.dabsquared.gitlabjenkins.trigger.handler;
+
+import com.dabsquared.gitlabjenkins.cause.CauseData;
+import com.dabsquared.gitlabjenkins.cause.GitLabWebHookCause;
+import hudson.Extension;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.Cause;
+import hudson.model.Job;
+import hudson.model.Queue;
+import hudson.model.queue.QueueListener;
+import jenkins.model.Jenkins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps track of the queue items that were triggered by GitLab, keyed by job, source project and branch as well as
+ * by the revision they build, so that pending builds can be looked up without scanning the whole build queue.
+ */
+@Extension
+public class QueuedBuildsIndex extends QueueListener {
+
+    private final ConcurrentMap<BuildKey, Set<Long>> itemIds = new ConcurrentHashMap<>();
+    private final ConcurrentMap<RevisionKey, Set<Long>> itemIdsByRevision = new ConcurrentHashMap<>();
+
+    public static QueuedBuildsIndex get() {
+        return QueueListener.all().get(QueuedBuildsIndex.class);
+    }
+
+    /**
+     * @return the queue items of the job that were triggered for the given source project and branch
+     */
+    public List<Queue.Item> getItems(Queue queue, Job<?, ?> job, Integer sourceProjectId, String branch) {
+        return getItems(queue, itemIds.get(new BuildKey(job, sourceProjectId, branch)));
+    }
+
+    /**
+     * @return a queue item of the job that builds the same revision as the given cause or {@code null} if there is none
+     */
+    public Queue.Item getItem(Queue queue, Job<?, ?> job, CauseData causeData) {
+        RevisionKey key = RevisionKey.of(job, causeData);
+        List<Queue.Item> items = key == null ? Collections.<Queue.Item>emptyList() : getItems(queue, itemIdsByRevision.get(key));
+        for (Queue.Item item : items) {
+            CauseData queued = causeDataOf(item);
+            if (queued != null && RevisionKey.isSameRevision(queued, causeData)) {
+                return item;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The items that were restored from the queue of the previous run of Jenkins are indexed when it has started.
+     */
+    @Initializer(after = InitMilestone.COMPLETED)
+    public static void indexRestoredItems() {
+        get().indexItems(Jenkins.getActiveInstance().getQueue());
+    }
+
+    void indexItems(Queue queue) {
+        for (Queue.Item item : queue.getItems()) {
+            add(item);
+        }
+    }
+
+    @Override
+    public void onEnterWaiting(Queue.WaitingItem item) {
+        add(item);
+    }
+
+    @Override
+    public void onEnterBlocked(Queue.BlockedItem item) {
+        add(item);
+    }
+
+    @Override
+    public void onEnterBuildable(Queue.BuildableItem item) {
+        add(item);
+    }
+
+    @Override
+    public void onLeft(Queue.LeftItem item) {
+        CauseData causeData = causeDataOf(item);
+        if (causeData != null) {
+            Job<?, ?> job = (Job<?, ?>) item.task;
+            remove(itemIds, new BuildKey(job, causeData), item.getId());
+            remove(itemIdsByRevision, RevisionKey.of(job, causeData), item.getId());
+        }
+    }
+
+    private void add(Queue.Item item) {
+        CauseData causeData = causeDataOf(item);
+        if (causeData != null) {
+            Job<?, ?> job = (Job<?, ?>) item.task;
+            add(itemIds, new BuildKey(job, causeData), item.getId());
+            add(itemIdsByRevision, RevisionKey.of(job, causeData), item.getId());
+        }
+    }
+
+    private List<Queue.Item> getItems(Queue queue, Set<Long> ids) {
+        if (ids == null) {
+            return Collections.emptyList();
+        }
+        List<Queue.Item> result = new ArrayList<>();
+        for (Long id : ids) {
+            Queue.Item item = queue.getItem(id);
+            if (item != null) {
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    private CauseData causeDataOf(Queue.Item item) {
+        if (!(item.task instanceof Job)) {
+            return null;
+        }
+        for (Cause cause : item.getCauses()) {
+            if (cause instanceof GitLabWebHookCause) {
+                return ((GitLabWebHookCause) cause).getData();
+            }
+        }
+        return null;
+    }
+
+    private static <K> void add(ConcurrentMap<K, Set<Long>> index, K key, Long id) {
+        if (key == null) {
+            return;
+        }
+        Set<Long> ids = index.get(key);
+        if (ids == null) {
+            Set<Long> created = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+            ids = index.putIfAbsent(key, created);
+            if (ids == null) {
+                ids = created;
+            }
+        }
+        ids.add(id);
+    }
+
+    private static <K> void remove(ConcurrentMap<K, Set<Long>> index, K key, Long id) {
+        if (key == null) {
+            return;
+        }
+        Set<Long> ids = index.get(key);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                index.remove(key, ids);
+            }
+        }
+    }
+}
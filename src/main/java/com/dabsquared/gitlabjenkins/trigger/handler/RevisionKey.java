@@ -0,0 +1,67 @@
+package com.dabsquared.gitlabjenkins.trigger.handler;
+
+import com.dabsquared.gitlabjenkins.cause.CauseData;
+import com.google.common.base.Objects;
+import hudson.model.Job;
+
+/**
+ * Identifies the builds of a job for the same commit, no matter whether they were triggered by a push or for a merge
+ * request, so that the indexes find all candidates with one lookup. Whether one of these builds can stand in for another
+ * trigger is decided by {@link #isSameRevision}.
+ */
+final class RevisionKey {
+    private final String jobFullName;
+    private final String sha;
+
+    private RevisionKey(String jobFullName, String sha) {
+        this.jobFullName = jobFullName;
+        this.sha = sha;
+    }
+
+    /**
+     * @return the key or {@code null} if the cause does not name the commit to build
+     */
+    static RevisionKey of(Job<?, ?> job, CauseData causeData) {
+        if (causeData.getLastCommit() == null) {
+            return null;
+        }
+        return new RevisionKey(job.getFullName(), causeData.getLastCommit());
+    }
+
+    /**
+     * Decides whether a build of a commit also builds the revision of another trigger of the same commit. The builds must
+     * be of the same kind: a job may merge the target branch before it builds a merge request, so a push build of the
+     * commit does not stand in for a merge request build and vice versa. Merge request builds must also have the same
+     * target branch.
+     */
+    static boolean isSameRevision(CauseData built, CauseData triggered) {
+        if (!Objects.equal(built.getLastCommit(), triggered.getLastCommit())) {
+            return false;
+        }
+        if (isMergeRequestBuild(built) != isMergeRequestBuild(triggered)) {
+            return false;
+        }
+        return !isMergeRequestBuild(built) || Objects.equal(built.getTargetBranch(), triggered.getTargetBranch());
+    }
+
+    private static boolean isMergeRequestBuild(CauseData causeData) {
+        return causeData.getMergeRequestIid() != null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        RevisionKey that = (RevisionKey) o;
+        return jobFullName.equals(that.jobFullName) && sha.equals(that.sha);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(jobFullName, sha);
+    }
+}
@@ -0,0 +1,132 @@
+package com.dabsquared.gitlabjenkins.trigger.handler;
+
+import com.dabsquared.gitlabjenkins.cause.CauseData;
+import com.dabsquared.gitlabjenkins.cause.GitLabWebHookCause;
+import hudson.Extension;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import jenkins.model.Jenkins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps track of the running builds that were triggered by GitLab, keyed by job, source project and branch as well as
+ * by the revision they build, so that superseded or duplicate builds can be found without walking the build history.
+ */
+@Extension
+public class RunningBuildsIndex extends RunListener<Run<?, ?>> {
+
+    private final ConcurrentMap<BuildKey, Set<Run<?, ?>>> runs = new ConcurrentHashMap<>();
+    private final ConcurrentMap<RevisionKey, Set<Run<?, ?>>> runsByRevision = new ConcurrentHashMap<>();
+
+    public static RunningBuildsIndex get() {
+        return RunListener.all().get(RunningBuildsIndex.class);
+    }
+
+    /**
+     * @return the running builds of the job that were triggered for the given source project and branch
+     */
+    public List<Run<?, ?>> getBuilds(Job<?, ?> job, Integer sourceProjectId, String branch) {
+        Set<Run<?, ?>> result = runs.get(new BuildKey(job, sourceProjectId, branch));
+        return result == null ? Collections.<Run<?, ?>>emptyList() : new ArrayList<>(result);
+    }
+
+    /**
+     * @return a running build of the job that builds the same revision as the given cause or {@code null} if there is none
+     */
+    public Run<?, ?> getBuild(Job<?, ?> job, CauseData causeData) {
+        RevisionKey key = RevisionKey.of(job, causeData);
+        Set<Run<?, ?>> result = key == null ? null : runsByRevision.get(key);
+        if (result != null) {
+            for (Run<?, ?> run : result) {
+                CauseData running = causeDataOf(run);
+                if (running != null && RevisionKey.isSameRevision(running, causeData)) {
+                    return run;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Builds that were running when Jenkins was stopped are resumed without being started again, so they are indexed
+     * once the jobs were loaded.
+     */
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void indexResumedBuilds() {
+        get().indexRunningBuilds(Jenkins.getActiveInstance().getAllItems(Job.class));
+    }
+
+    void indexRunningBuilds(Iterable<? extends Job> jobs) {
+        for (Job<?, ?> job : jobs) {
+            for (Run<?, ?> run : job.getBuilds()) {
+                if (!run.isBuilding()) {
+                    break;
+                }
+                onStarted(run, TaskListener.NULL);
+            }
+        }
+    }
+
+    @Override
+    public void onStarted(Run<?, ?> run, TaskListener listener) {
+        CauseData causeData = causeDataOf(run);
+        if (causeData != null) {
+            synchronized (this) {
+                add(runs, new BuildKey(run.getParent(), causeData), run);
+                add(runsByRevision, RevisionKey.of(run.getParent(), causeData), run);
+            }
+        }
+    }
+
+    @Override
+    public void onCompleted(Run<?, ?> run, TaskListener listener) {
+        CauseData causeData = causeDataOf(run);
+        if (causeData != null) {
+            synchronized (this) {
+                remove(runs, new BuildKey(run.getParent(), causeData), run);
+                remove(runsByRevision, RevisionKey.of(run.getParent(), causeData), run);
+            }
+        }
+    }
+
+    private CauseData causeDataOf(Run<?, ?> run) {
+        GitLabWebHookCause cause = run.getCause(GitLabWebHookCause.class);
+        return cause == null ? null : cause.getData();
+    }
+
+    private static <K> void add(Map<K, Set<Run<?, ?>>> index, K key, Run<?, ?> run) {
+        if (key == null) {
+            return;
+        }
+        Set<Run<?, ?>> builds = index.get(key);
+        if (builds == null) {
+            builds = Collections.newSetFromMap(new ConcurrentHashMap<Run<?, ?>, Boolean>());
+            index.put(key, builds);
+        }
+        builds.add(run);
+    }
+
+    private static <K> void remove(Map<K, Set<Run<?, ?>>> index, K key, Run<?, ?> run) {
+        if (key == null) {
+            return;
+        }
+        Set<Run<?, ?>> builds = index.get(key);
+        if (builds != null) {
+            builds.remove(run);
+            if (builds.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+}
@@ -22,11 +22,12 @@ public final class MergeRequestHookTriggerHandlerFactory {
                                                                                    TriggerOpenMergeRequest triggerOpenMergeRequest,
                                                                                    boolean skipWorkInProgressMergeRequest,
                                                                                    boolean triggerOnApprovedMergeRequest,
-                                                                                   boolean cancelPendingBuildsOnUpdate) {
+                                                                                   boolean cancelPendingBuildsOnUpdate,
+                                                                                   boolean abortSupersededBuilds) {
         if (triggerOnMergeRequest || triggerOnAcceptedMergeRequest || triggerOnClosedMergeRequest || triggerOpenMergeRequest != TriggerOpenMergeRequest.never || triggerOnApprovedMergeRequest) {
         	return new MergeRequestHookTriggerHandlerImpl(retrieveAllowedStates(triggerOnMergeRequest, triggerOnAcceptedMergeRequest, triggerOnClosedMergeRequest, triggerOpenMergeRequest), 
             											  retrieveAllowedActions(triggerOnApprovedMergeRequest),
-                                                          skipWorkInProgressMergeRequest, cancelPendingBuildsOnUpdate);
+                                                          skipWorkInProgressMergeRequest, cancelPendingBuildsOnUpdate, abortSupersededBuilds);
         } else {
             return new NopMergeRequestHookTriggerHandler();
         }
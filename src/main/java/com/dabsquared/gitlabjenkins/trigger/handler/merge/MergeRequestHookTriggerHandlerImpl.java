@@ -44,16 +44,23 @@ class MergeRequestHookTriggerHandlerImpl extends AbstractWebHookTriggerHandler<M
     private final EnumSet<Action> skipBuiltYetCheckActions = EnumSet.of(Action.open, Action.approved);
     private final EnumSet<Action> skipAllowedStateForActions = EnumSet.of(Action.approved);
     private final boolean cancelPendingBuildsOnUpdate;
+    private final boolean abortSupersededBuilds;
 
     MergeRequestHookTriggerHandlerImpl(Collection<State> allowedStates, boolean skipWorkInProgressMergeRequest, boolean cancelPendingBuildsOnUpdate) {
         this(allowedStates, EnumSet.noneOf(Action.class), skipWorkInProgressMergeRequest, cancelPendingBuildsOnUpdate);
     }
 
     MergeRequestHookTriggerHandlerImpl(Collection<State> allowedStates, Collection<Action> allowedActions, boolean skipWorkInProgressMergeRequest, boolean cancelPendingBuildsOnUpdate) {
+        this(allowedStates, allowedActions, skipWorkInProgressMergeRequest, cancelPendingBuildsOnUpdate, false);
+    }
+
+    MergeRequestHookTriggerHandlerImpl(Collection<State> allowedStates, Collection<Action> allowedActions, boolean skipWorkInProgressMergeRequest,
+                                       boolean cancelPendingBuildsOnUpdate, boolean abortSupersededBuilds) {
         this.allowedStates = allowedStates;
         this.allowedActions = allowedActions;
         this.skipWorkInProgressMergeRequest = skipWorkInProgressMergeRequest;
         this.cancelPendingBuildsOnUpdate = cancelPendingBuildsOnUpdate;
+        this.abortSupersededBuilds = abortSupersededBuilds;
     }
 
     @Override
@@ -102,6 +109,15 @@ class MergeRequestHookTriggerHandlerImpl extends AbstractWebHookTriggerHandler<M
         this.pendingBuildsHandler.cancelPendingBuilds(job, hook.getObjectAttributes().getSourceProjectId(), hook.getObjectAttributes().getSourceBranch());
     }
 
+    @Override
+    protected void abortSupersededBuildsIfNecessary(Job<?, ?> job, MergeRequestHook hook) {
+        if (!this.abortSupersededBuilds || hook.getObjectAttributes().getLastCommit() == null) {
+            return;
+        }
+        this.pendingBuildsHandler.abortSupersededBuilds(job, hook.getObjectAttributes().getSourceProjectId(),
+            hook.getObjectAttributes().getSourceBranch(), hook.getObjectAttributes().getLastCommit().getId());
+    }
+
     @Override
     protected String getSourceBranch(MergeRequestHook hook) {
         return hook.getObjectAttributes() == null ? null : hook.getObjectAttributes().getSourceBranch();
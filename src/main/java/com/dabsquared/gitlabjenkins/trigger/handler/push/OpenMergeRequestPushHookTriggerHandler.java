@@ -5,17 +5,20 @@ import com.dabsquared.gitlabjenkins.GitLabPushTrigger;
 import com.dabsquared.gitlabjenkins.cause.CauseData;
 import com.dabsquared.gitlabjenkins.cause.GitLabWebHookCause;
 import com.dabsquared.gitlabjenkins.connection.GitLabConnectionProperty;
+import com.dabsquared.gitlabjenkins.gitlab.api.AsyncGitLabClient;
 import com.dabsquared.gitlabjenkins.gitlab.api.GitLabClient;
+import com.dabsquared.gitlabjenkins.gitlab.api.MergeRequestWithSource;
 import com.dabsquared.gitlabjenkins.gitlab.api.model.Branch;
 import com.dabsquared.gitlabjenkins.gitlab.api.model.BuildState;
 import com.dabsquared.gitlabjenkins.gitlab.api.model.MergeRequest;
 import com.dabsquared.gitlabjenkins.gitlab.api.model.Project;
 import com.dabsquared.gitlabjenkins.gitlab.hook.model.PushHook;
-import com.dabsquared.gitlabjenkins.gitlab.hook.model.State;
 import com.dabsquared.gitlabjenkins.trigger.filter.BranchFilter;
 import com.dabsquared.gitlabjenkins.trigger.filter.MergeRequestLabelFilter;
 import com.dabsquared.gitlabjenkins.util.LoggerUtil;
+import com.dabsquared.gitlabjenkins.util.LoggingFutureCallback;
 import com.dabsquared.gitlabjenkins.trigger.handler.PendingBuildsHandler;
+import com.google.common.util.concurrent.Futures;
 import hudson.model.Action;
 import hudson.model.CauseAction;
 import hudson.model.Job;
@@ -30,7 +33,6 @@ import org.jenkinsci.plugins.displayurlapi.DisplayURLProvider;
 import javax.ws.rs.ProcessingException;
 import javax.ws.rs.WebApplicationException;
 import java.net.URISyntaxException;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Level;
@@ -64,8 +66,8 @@ class OpenMergeRequestPushHookTriggerHandler implements PushHookTriggerHandler {
                         Integer projectId = hook.getProjectId();
                         if (property != null && property.getClient() != null && projectId != null && trigger != null) {
                             GitLabClient client = property.getClient();
-                            for (MergeRequest mergeRequest : getOpenMergeRequests(client, projectId.toString())) {
-                                if (mergeRequestLabelFilter.isMergeRequestAllowed(mergeRequest.getLabels())) {
+                            for (MergeRequestWithSource mergeRequest : client.getOpenMergeRequestsWithSource(projectId.toString())) {
+                                if (mergeRequestLabelFilter.isMergeRequestAllowed(mergeRequest.getMergeRequest().getLabels())) {
                                 	handleMergeRequest(job, hook, ciSkip, branchFilter, client, mergeRequest);
                                 }
                             }
@@ -81,18 +83,9 @@ class OpenMergeRequestPushHookTriggerHandler implements PushHookTriggerHandler {
         }
     }
 
-    private List<MergeRequest> getOpenMergeRequests(GitLabClient client, String projectId) {
-        List<MergeRequest> result = new ArrayList<>();
-        Integer page = 1;
-        do {
-            List<MergeRequest> mergeRequests = client.getMergeRequests(projectId, State.opened, page, 100);
-            result.addAll(mergeRequests);
-            page = mergeRequests.isEmpty() ? null : page + 1;
-        } while (page != null);
-        return result;
-    }
-
-    private void handleMergeRequest(Job<?, ?> job, PushHook hook, boolean ciSkip, BranchFilter branchFilter, GitLabClient client, MergeRequest mergeRequest) {
+    private void handleMergeRequest(Job<?, ?> job, PushHook hook, boolean ciSkip, BranchFilter branchFilter, GitLabClient client,
+                                    MergeRequestWithSource mergeRequestWithSource) {
+        MergeRequest mergeRequest = mergeRequestWithSource.getMergeRequest();
         if (ciSkip && mergeRequest.getDescription() != null && mergeRequest.getDescription().contains("[ci-skip]")) {
             LOGGER.log(Level.INFO, "Skipping MR " + mergeRequest.getTitle() + " due to ci-skip.");
             return;
@@ -110,12 +103,19 @@ class OpenMergeRequestPushHookTriggerHandler implements PushHookTriggerHandler {
             LOGGER.log(Level.INFO, "{0} triggered for push to target branch of open merge request #{1}.",
                     LoggerUtil.toArray(job.getFullName(), mergeRequest.getId()));
 
-            Branch branch = client.getBranch(mergeRequest.getSourceProjectId().toString(), sourceBranch);
-            Project project = client.getProject(mergeRequest.getSourceProjectId().toString());
+            Branch branch = mergeRequestWithSource.getSourceBranch();
+            if (branch == null) {
+                branch = client.getBranch(mergeRequest.getSourceProjectId().toString(), sourceBranch);
+            }
+            Project project = mergeRequestWithSource.getSourceProject();
+            if (project == null) {
+                project = client.getProject(mergeRequest.getSourceProjectId().toString());
+            }
             String commit = branch.getCommit().getId();
+            // no duplicate check: the source commit is unchanged, the build is needed because the target branch moved
+            GitLabWebHookCause cause = new GitLabWebHookCause(retrieveCauseData(hook, project, mergeRequest, branch));
             setCommitStatusPendingIfNecessary(job, mergeRequest.getSourceProjectId(), commit, branch.getName());
-            List<Action> actions = Arrays.<Action>asList(new CauseAction(new GitLabWebHookCause(retrieveCauseData(hook, project, mergeRequest, branch))),
-                                                         new RevisionParameterAction(commit, retrieveUrIish(hook)));
+            List<Action> actions = Arrays.<Action>asList(new CauseAction(cause), new RevisionParameterAction(commit, retrieveUrIish(hook)));
             scheduleBuild(job, actions.toArray(new Action[actions.size()]));
         }
     }
@@ -154,13 +154,10 @@ class OpenMergeRequestPushHookTriggerHandler implements PushHookTriggerHandler {
     private void setCommitStatusPendingIfNecessary(Job<?, ?> job, Integer projectId, String commit, String ref) {
         String buildName = PendingBuildsHandler.resolvePendingBuildName(job);
         if (StringUtils.isNotBlank(buildName)) {
-            GitLabClient client = job.getProperty(GitLabConnectionProperty.class).getClient();
-            try {
-                String targetUrl = DisplayURLProvider.get().getJobURL(job);
-                client.changeBuildStatus(projectId, commit, BuildState.pending, ref, buildName, targetUrl, BuildState.pending.name());
-            } catch (WebApplicationException | ProcessingException e) {
-                LOGGER.log(Level.SEVERE, "Failed to set build state to pending", e);
-            }
+            AsyncGitLabClient client = job.getProperty(GitLabConnectionProperty.class).getAsyncClient();
+            String targetUrl = DisplayURLProvider.get().getJobURL(job);
+            Futures.addCallback(client.changeBuildStatus(projectId, commit, BuildState.pending, ref, buildName, targetUrl, BuildState.pending.name()),
+                new LoggingFutureCallback(LOGGER, "Failed to set build state to pending"));
         }
     }
 
@@ -14,9 +14,10 @@ public final class PushHookTriggerHandlerFactory {
 
     public static PushHookTriggerHandler newPushHookTriggerHandler(boolean triggerOnPush,
                                                                    TriggerOpenMergeRequest triggerOpenMergeRequestOnPush,
-                                                                   boolean skipWorkInProgressMergeRequest) {
+                                                                   boolean skipWorkInProgressMergeRequest,
+                                                                   boolean abortSupersededBuilds) {
         if (triggerOnPush || triggerOpenMergeRequestOnPush == TriggerOpenMergeRequest.both) {
-            return new PushHookTriggerHandlerList(retrieveHandlers(triggerOnPush, triggerOpenMergeRequestOnPush, skipWorkInProgressMergeRequest));
+            return new PushHookTriggerHandlerList(retrieveHandlers(triggerOnPush, triggerOpenMergeRequestOnPush, skipWorkInProgressMergeRequest, abortSupersededBuilds));
         } else {
             return new NopPushHookTriggerHandler();
         }
@@ -24,10 +25,11 @@ public final class PushHookTriggerHandlerFactory {
 
     private static List<PushHookTriggerHandler> retrieveHandlers(boolean triggerOnPush,
                                                                  TriggerOpenMergeRequest triggerOpenMergeRequestOnPush,
-                                                                 boolean skipWorkInProgressMergeRequest) {
+                                                                 boolean skipWorkInProgressMergeRequest,
+                                                                 boolean abortSupersededBuilds) {
         List<PushHookTriggerHandler> result = new ArrayList<>();
         if (triggerOnPush) {
-            result.add(new PushHookTriggerHandlerImpl());
+            result.add(new PushHookTriggerHandlerImpl(abortSupersededBuilds));
         }
         if (triggerOpenMergeRequestOnPush == TriggerOpenMergeRequest.both) {
             result.add(new OpenMergeRequestPushHookTriggerHandler(skipWorkInProgressMergeRequest));
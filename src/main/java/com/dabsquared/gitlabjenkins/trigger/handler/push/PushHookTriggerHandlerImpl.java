@@ -24,6 +24,16 @@ class PushHookTriggerHandlerImpl extends AbstractWebHookTriggerHandler<PushHook>
 
     private static final String NO_COMMIT = "0000000000000000000000000000000000000000";
 
+    private final boolean abortSupersededBuilds;
+
+    PushHookTriggerHandlerImpl() {
+        this(false);
+    }
+
+    PushHookTriggerHandlerImpl(boolean abortSupersededBuilds) {
+        this.abortSupersededBuilds = abortSupersededBuilds;
+    }
+
     @Override
     public void handle(Job<?, ?> job, PushHook hook, boolean ciSkip, BranchFilter branchFilter, MergeRequestLabelFilter mergeRequestLabelFilter) {
         if (isNoRemoveBranchPush(hook)) {
@@ -40,6 +50,13 @@ class PushHookTriggerHandlerImpl extends AbstractWebHookTriggerHandler<PushHook>
                commits.get(commits.size() - 1).getMessage().contains("[ci-skip]");
     }
 
+    @Override
+    protected void abortSupersededBuildsIfNecessary(Job<?, ?> job, PushHook hook) {
+        if (this.abortSupersededBuilds && hook.getProjectId() != null && hook.getRef() != null) {
+            this.pendingBuildsHandler.abortSupersededBuilds(job, hook.getProjectId(), getTargetBranch(hook), hook.getAfter());
+        }
+    }
+
     @Override
     protected CauseData retrieveCauseData(PushHook hook) {
         CauseData.ActionType actionType = hook.getObjectKind().equals("tag_push") ? CauseData.ActionType.TAG_PUSH : CauseData.ActionType.PUSH;
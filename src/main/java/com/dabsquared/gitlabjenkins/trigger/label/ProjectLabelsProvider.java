@@ -2,7 +2,6 @@ package com.dabsquared.gitlabjenkins.trigger.label;
 
 import com.dabsquared.gitlabjenkins.Messages;
 import com.dabsquared.gitlabjenkins.connection.GitLabConnectionProperty;
-import com.dabsquared.gitlabjenkins.service.GitLabProjectBranchesService;
 import com.dabsquared.gitlabjenkins.service.GitLabProjectLabelsService;
 import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
@@ -75,7 +74,7 @@ public final class ProjectLabelsProvider {
 
         try {
             return checkMatchingLabels(value, getProjectLabels(project));
-        } catch (GitLabProjectBranchesService.BranchLoadingException e) {
+        } catch (GitLabProjectLabelsService.LabelLoadingException e) {
             return FormValidation.warning(project.hasPermission(Jenkins.ADMINISTER) ? e : null, Messages.GitLabPushTrigger_CannotCheckBranches());
         }
     }
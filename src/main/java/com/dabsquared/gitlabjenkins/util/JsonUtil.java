@@ -44,6 +44,15 @@ public final class JsonUtil {
         }
     }
 
+    /**
+     * Creates the deserializers of the given types ahead of time, so that the first web hooks do not have to.
+     */
+    public static void prepareDeserializers(Class<?>... types) {
+        for (Class<?> type : types) {
+            OBJECT_MAPPER.readerFor(type);
+        }
+    }
+
     private static class DateModule extends SimpleModule {
         private static final String[] DATE_FORMATS = new String[] {
                 "yyyy-MM-dd HH:mm:ss Z", "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", "yyyy-MM-dd'T'HH:mm:ssX", "yyyy-MM-dd'T'HH:mm:ss.SSSX", "yyyy-MM-dd'T'HH:mm:ss.SSSZ"
@@ -0,0 +1,29 @@
+package com.dabsquared.gitlabjenkins.util;
+
+import com.google.common.util.concurrent.FutureCallback;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Logs the failure of an asynchronous call that nobody waits for.
+ */
+public final class LoggingFutureCallback implements FutureCallback<Object> {
+
+    private final Logger logger;
+    private final String failureMessage;
+
+    public LoggingFutureCallback(Logger logger, String failureMessage) {
+        this.logger = logger;
+        this.failureMessage = failureMessage;
+    }
+
+    @Override
+    public void onSuccess(Object result) {
+    }
+
+    @Override
+    public void onFailure(Throwable t) {
+        logger.log(Level.SEVERE, failureMessage, t);
+    }
+}
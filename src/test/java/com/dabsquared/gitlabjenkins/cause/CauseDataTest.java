@@ -0,0 +1,117 @@
+package com.dabsquared.gitlabjenkins.cause;
+
+import hudson.util.XStream2;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static com.dabsquared.gitlabjenkins.cause.CauseDataBuilder.causeData;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class CauseDataTest {
+
+    private final XStream2 xStream = new XStream2();
+
+    @Test
+    public void buildVariablesAreComputedOnce() {
+        CauseData data = mergeRequestCauseData("description");
+
+        Map<String, String> variables = data.getBuildVariables();
+
+        assertThat(data.getBuildVariables(), sameInstance(variables));
+        assertThat(variables.get("gitlabSourceRepoSshUrl"), is("git@gitlab.org:test.git"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void buildVariablesAreImmutable() {
+        mergeRequestCauseData("description").getBuildVariables().put("gitlabBranch", "other");
+    }
+
+    @Test
+    public void largeDescriptionsAreKeptByDefault() {
+        String description = largeDescription();
+
+        CauseData data = mergeRequestCauseData(description);
+
+        assertThat(data.getMergeRequestDescription(), is(description));
+        assertThat(data.getBuildVariables().get("gitlabMergeRequestDescription"), is(description));
+    }
+
+    @Test
+    public void largeDescriptionsAreTruncatedToMaxLength() {
+        String truncated = CauseData.truncate(largeDescription(), 4096);
+
+        assertThat(truncated.length() < 10000, is(true));
+        assertThat(truncated.startsWith("xxxx"), is(true));
+        assertThat(truncated.endsWith("..."), is(true));
+    }
+
+    private String largeDescription() {
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            description.append('x');
+        }
+        return description.toString();
+    }
+
+    @Test
+    public void repositoryMetadataIsSharedAfterDeserialization() {
+        CauseData first = (CauseData) xStream.fromXML(xStream.toXML(mergeRequestCauseData("description")));
+        CauseData second = (CauseData) xStream.fromXML(xStream.toXML(mergeRequestCauseData("description")));
+
+        assertThat(first, is(mergeRequestCauseData("description")));
+        assertThat(first.getSourceRepoSshUrl(), sameInstance(second.getSourceRepoSshUrl()));
+        assertThat(first.getTargetProjectUrl(), sameInstance(second.getTargetProjectUrl()));
+    }
+
+    @Test
+    public void readsDataOfOldBuilds() {
+        CauseData data = (CauseData) xStream.fromXML("<com.dabsquared.gitlabjenkins.cause.CauseData>"
+            + "<actionType>PUSH</actionType>"
+            + "<sourceProjectId>1</sourceProjectId>"
+            + "<targetProjectId>1</targetProjectId>"
+            + "<branch>master</branch>"
+            + "<sourceBranch>master</sourceBranch>"
+            + "<userName>test</userName>"
+            + "<sourceRepoSshUrl>git@gitlab.org:test.git</sourceRepoSshUrl>"
+            + "<lastCommit>123</lastCommit>"
+            + "</com.dabsquared.gitlabjenkins.cause.CauseData>");
+
+        assertThat(data.getBranch(), is("master"));
+        assertThat(data.getSourceRepoSshUrl(), is("git@gitlab.org:test.git"));
+        assertThat(data.getMergeRequestState(), nullValue());
+        assertThat(data.getBuildVariables().get("gitlabMergeRequestLastCommit"), is("123"));
+    }
+
+    private CauseData mergeRequestCauseData(String description) {
+        return causeData()
+            .withActionType(CauseData.ActionType.MERGE)
+            .withSourceProjectId(1)
+            .withTargetProjectId(1)
+            .withBranch("feature")
+            .withSourceBranch("feature")
+            .withUserName("")
+            .withSourceRepoHomepage("https://gitlab.org/test")
+            .withSourceRepoName("test")
+            .withSourceNamespace("test-namespace")
+            .withSourceRepoUrl("git@gitlab.org:test.git")
+            .withSourceRepoSshUrl("git@gitlab.org:test.git")
+            .withSourceRepoHttpUrl("https://gitlab.org/test.git")
+            .withMergeRequestTitle("Test")
+            .withMergeRequestDescription(description)
+            .withMergeRequestId(1)
+            .withMergeRequestIid(1)
+            .withTargetBranch("master")
+            .withTargetRepoName("test")
+            .withTargetNamespace("test-namespace")
+            .withTargetRepoSshUrl("git@gitlab.org:test.git")
+            .withTargetRepoHttpUrl("https://gitlab.org/test.git")
+            .withTriggeredByUser("test")
+            .withLastCommit("123")
+            .withTargetProjectUrl("https://gitlab.org/test")
+            .build();
+    }
+}
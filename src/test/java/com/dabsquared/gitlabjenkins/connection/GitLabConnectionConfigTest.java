@@ -1,21 +1,30 @@
 package com.dabsquared.gitlabjenkins.connection;
 
 
+import com.cloudbees.plugins.credentials.Credentials;
 import com.cloudbees.plugins.credentials.CredentialsProvider;
 import com.cloudbees.plugins.credentials.CredentialsScope;
 import com.cloudbees.plugins.credentials.CredentialsStore;
 import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
 import com.cloudbees.plugins.credentials.domains.Domain;
 import com.dabsquared.gitlabjenkins.GitLabPushTrigger;
+import com.dabsquared.gitlabjenkins.gitlab.api.CircuitBreaker;
 import com.dabsquared.gitlabjenkins.gitlab.api.GitLabClient;
+import com.dabsquared.gitlabjenkins.gitlab.api.GitLabClientBuilder;
 import com.dabsquared.gitlabjenkins.gitlab.api.impl.V3GitLabClientBuilder;
+import com.gargoylesoftware.htmlunit.Page;
+import com.google.common.util.concurrent.ListenableFuture;
 import hudson.ProxyConfiguration;
 import hudson.model.FreeStyleProject;
 import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.ModelObject;
 import hudson.security.GlobalMatrixAuthorizationStrategy;
 import hudson.util.FormValidation;
 import hudson.util.Secret;
 import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
+import org.acegisecurity.Authentication;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.http.HttpHeaders;
 import org.apache.http.client.methods.CloseableHttpResponse;
@@ -28,26 +37,47 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.MockFolder;
+import org.jvnet.hudson.test.TestExtension;
 import org.mockserver.client.server.MockServerClient;
 import org.mockserver.junit.MockServerRule;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.mockserver.matchers.Times;
 import org.mockserver.model.HttpRequest;
+import org.mockserver.verify.VerificationTimes;
 
+import javax.ws.rs.NotAuthorizedException;
 import javax.ws.rs.core.Response;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
 
 import static com.dabsquared.gitlabjenkins.connection.Messages.connection_error;
 import static com.dabsquared.gitlabjenkins.connection.Messages.connection_success;
 import static junit.framework.TestCase.assertNotNull;
+import static junit.framework.TestCase.assertNotSame;
 import static junit.framework.TestCase.assertSame;
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockserver.model.HttpRequest.request;
 import static org.mockserver.model.HttpResponse.response;
@@ -212,4 +242,284 @@ public class GitLabConnectionConfigTest {
         assertNotNull(client);
         assertSame(client, config.getClient(connection.getName()));
     }
+
+    @Test
+    public void setConnections_replaces_clients() {
+        mockServerClient.when(request().withPath("/gitlab/api/v3/.*")).respond(response().withStatusCode(200));
+        GitLabConnection oldConnection = new GitLabConnection("test", gitLabUrl, API_TOKEN_ID, new V3GitLabClientBuilder(), false, 10, 10);
+        GitLabConnection newConnection = new GitLabConnection("test", gitLabUrl, API_TOKEN_ID, new V3GitLabClientBuilder(), false, 10, 10);
+        GitLabConnectionConfig config = jenkins.get(GitLabConnectionConfig.class);
+        config.setConnections(Collections.singletonList(oldConnection));
+        GitLabClient oldClient = config.getClient("test");
+
+        config.setConnections(Collections.singletonList(newConnection));
+
+        assertSame(newConnection.getClient(), config.getClient("test"));
+        assertNotSame(oldClient, config.getClient("test"));
+        // the replaced client still completes the calls of those who hold it
+        oldClient.getCurrentUser();
+    }
+
+    @Test
+    public void configure_keeps_unchanged_connections() {
+        GitLabConnection unchanged = new GitLabConnection("unchanged", gitLabUrl, API_TOKEN_ID, new V3GitLabClientBuilder(), false, 10, 10);
+        GitLabConnection changed = new GitLabConnection("changed", gitLabUrl, API_TOKEN_ID, new V3GitLabClientBuilder(), false, 10, 10);
+        GitLabConnectionConfig config = jenkins.get(GitLabConnectionConfig.class);
+        config.setConnections(Arrays.asList(unchanged, changed));
+        GitLabConnection boundUnchanged = new GitLabConnection("unchanged", gitLabUrl, API_TOKEN_ID, new V3GitLabClientBuilder(), false, 10, 10);
+        GitLabConnection boundChanged = new GitLabConnection("changed", gitLabUrl, API_TOKEN_ID, new V3GitLabClientBuilder(), false, 10, 20);
+        GitLabConnection boundUncompressed = new GitLabConnection("unchanged", gitLabUrl, API_TOKEN_ID, new V3GitLabClientBuilder(), false, 10, 10);
+        boundUncompressed.setDisableCompression(true);
+
+        List<GitLabConnection> kept = config.keepUnchanged(Arrays.asList(boundUnchanged, boundChanged));
+
+        assertSame(unchanged, kept.get(0));
+        assertSame(boundChanged, kept.get(1));
+        assertSame(boundUncompressed, config.keepUnchanged(Arrays.asList(boundUncompressed)).get(0));
+    }
+
+    @Test
+    public void close_closes_client_when_calls_have_completed() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch closed = new CountDownLatch(1);
+        final AtomicBoolean callCompleted = new AtomicBoolean();
+        final AtomicBoolean closedWhileInFlight = new AtomicBoolean();
+        GitLabClient client = mock(GitLabClient.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                release.await();
+                callCompleted.set(true);
+                return null;
+            }
+        }).when(client).getCommit("1", "abc");
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                closedWhileInFlight.set(!callCompleted.get());
+                closed.countDown();
+                return null;
+            }
+        }).when(client).close();
+        GitLabConnection connection = new GitLabConnection("test", gitLabUrl, API_TOKEN_ID, new StubClientBuilder(client), false, 10, 10);
+        ListenableFuture<Void> call = connection.getAsyncClient().getCommit("1", "abc");
+
+        connection.close(0);
+        assertThat(closed.getCount(), is(1L));
+
+        release.countDown();
+        call.get(5, TimeUnit.SECONDS);
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+        assertThat(closedWhileInFlight.get(), is(false));
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void getAsyncClient_rejects_calls_after_close() {
+        GitLabClient client = mock(GitLabClient.class);
+        GitLabConnection connection = new GitLabConnection("test", gitLabUrl, API_TOKEN_ID, new StubClientBuilder(client), false, 10, 10);
+
+        connection.close(0);
+
+        connection.getAsyncClient().getCommit("1", "abc");
+    }
+
+    @Test
+    public void getClient_is_replaced_when_api_token_changes() throws IOException {
+        GitLabConnection connection = new GitLabConnection("test", "http://localhost", API_TOKEN_ID, new V3GitLabClientBuilder(), false, 10, 10);
+        GitLabConnectionConfig config = jenkins.get(GitLabConnectionConfig.class);
+        config.addConnection(connection);
+        GitLabClient client = config.getClient("test");
+
+        SystemCredentialsProvider.getInstance().save();
+        assertSame(client, config.getClient("test"));
+
+        SystemCredentialsProvider.getInstance().getCredentials().clear();
+        SystemCredentialsProvider.getInstance().getCredentials()
+            .add(new StringCredentialsImpl(CredentialsScope.SYSTEM, API_TOKEN_ID, "GitLab API Token", Secret.fromString("changed")));
+        SystemCredentialsProvider.getInstance().save();
+        assertNotSame(client, config.getClient("test"));
+    }
+
+    @Test
+    public void getClient_is_replaced_when_folder_api_token_changes() throws IOException {
+        FolderCredentialsProvider.CREDENTIALS.add(
+            new StringCredentialsImpl(CredentialsScope.GLOBAL, "folderApiTokenId", "GitLab API Token", Secret.fromString(API_TOKEN)));
+        MockFolder folder = jenkins.createFolder("team");
+        GitLabConnection connection = new GitLabConnection("test", "http://localhost", "folderApiTokenId", new V3GitLabClientBuilder(), false, 10, 10);
+        GitLabConnectionConfig config = jenkins.get(GitLabConnectionConfig.class);
+        config.addConnection(connection);
+        GitLabClient client = config.getClient("test");
+
+        folder.save();
+        assertSame(client, config.getClient("test"));
+
+        FolderCredentialsProvider.CREDENTIALS.clear();
+        FolderCredentialsProvider.CREDENTIALS.add(
+            new StringCredentialsImpl(CredentialsScope.GLOBAL, "folderApiTokenId", "GitLab API Token", Secret.fromString("changed")));
+        folder.save();
+        assertNotSame(client, config.getClient("test"));
+    }
+
+    @Test
+    public void doTestConnection_reuses_configured_client() {
+        mockServerClient.when(request().withPath("/gitlab/api/v3/.*")).respond(response().withStatusCode(200));
+        GitLabConnection connection = new GitLabConnection("test", gitLabUrl, API_TOKEN_ID, new V3GitLabClientBuilder(), false, 10, 10);
+        GitLabConnectionConfig config = jenkins.get(GitLabConnectionConfig.class);
+        config.addConnection(connection);
+
+        assertThat(config.doTestConnection(gitLabUrl, API_TOKEN_ID, "v3", false, 10, 10).getMessage(), is(connection_success()));
+        assertThat(connection.getMonitor().getApiMetrics().getEndpoints().get("GET /api/v3/user").getCallCount(), is(1L));
+    }
+
+    @Test
+    public void getClient_is_replaced_when_api_token_is_rejected() {
+        mockServerClient.when(request().withPath("/gitlab/api/v3/.*")).respond(response().withStatusCode(401));
+        GitLabConnection connection = new GitLabConnection("test", gitLabUrl, API_TOKEN_ID, new V3GitLabClientBuilder(), false, 10, 10);
+        GitLabConnectionConfig config = jenkins.get(GitLabConnectionConfig.class);
+        config.addConnection(connection);
+        GitLabClient client = config.getClient("test");
+        SystemCredentialsProvider.getInstance().getCredentials().clear();
+        SystemCredentialsProvider.getInstance().getCredentials()
+            .add(new StringCredentialsImpl(CredentialsScope.SYSTEM, API_TOKEN_ID, "GitLab API Token", Secret.fromString("changed")));
+
+        try {
+            client.getCurrentUser();
+            fail("Expected the call to be rejected");
+        } catch (NotAuthorizedException expected) {
+            // expected
+        }
+
+        assertNotSame(client, config.getClient("test"));
+    }
+
+    @Test
+    public void doTestConnection_contacts_gitlab_while_circuit_breaker_is_open() {
+        mockServerClient.when(request().withPath("/gitlab/api/v3/.*")).respond(response().withStatusCode(200));
+        GitLabConnection connection = new GitLabConnection("test", gitLabUrl, API_TOKEN_ID, new V3GitLabClientBuilder(), false, 10, 10);
+        GitLabConnectionConfig config = jenkins.get(GitLabConnectionConfig.class);
+        config.addConnection(connection);
+        CircuitBreaker circuitBreaker = connection.getMonitor().getCircuitBreaker();
+        while (circuitBreaker.getState() == CircuitBreaker.State.CLOSED) {
+            circuitBreaker.permit();
+            circuitBreaker.record(true, 0);
+        }
+
+        assertThat(config.doTestConnection(gitLabUrl, API_TOKEN_ID, "v3", false, 10, 10).getMessage(), is(connection_success()));
+        mockServerClient.verify(request().withPath("/gitlab/api/v3/user"));
+    }
+
+    @Test
+    public void warmUp_opens_connection() {
+        mockServerClient.when(request().withPath("/gitlab/api/v3/.*")).respond(response().withStatusCode(200));
+        GitLabConnection connection = new GitLabConnection("test", gitLabUrl, API_TOKEN_ID, new V3GitLabClientBuilder(), false, 10, 10);
+
+        assertThat(ConnectionWarmUp.warmUp(connection), is(true));
+
+        mockServerClient.verify(request().withPath("/gitlab/api/v3/user"));
+        assertThat(connection.getMonitor().getPoolStatistics().getLeaseCount(), is(1L));
+    }
+
+    @Test
+    public void warmUp_ignores_unreachable_connection() {
+        mockServerClient.when(request().withPath("/gitlab/api/v3/user"), Times.once()).respond(response().withStatusCode(500));
+        mockServerClient.when(request().withPath("/gitlab/api/v3/.*")).respond(response().withStatusCode(200));
+        GitLabConnection connection = new GitLabConnection("unreachable", gitLabUrl, API_TOKEN_ID, new V3GitLabClientBuilder(), false, 10, 10);
+        final List<LogRecord> records = new CopyOnWriteArrayList<>();
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                records.add(record);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Logger logger = Logger.getLogger(ConnectionWarmUp.class.getName());
+        logger.addHandler(handler);
+        try {
+            assertThat(ConnectionWarmUp.warmUp(connection), is(false));
+        } finally {
+            logger.removeHandler(handler);
+        }
+
+        assertThat(records.size(), is(1));
+        assertThat(records.get(0).getLevel(), is(Level.WARNING));
+        assertThat(records.get(0).getMessage(), containsString("unreachable"));
+        connection.getClient().getCurrentUser();
+        mockServerClient.verify(request().withPath("/gitlab/api/v3/user"), VerificationTimes.exactly(2));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void getConnections_is_a_snapshot() {
+        jenkins.get(GitLabConnectionConfig.class)
+            .getConnections().add(new GitLabConnection("test", "http://localhost", null, new V3GitLabClientBuilder(), false, 10, 10));
+    }
+
+    @Test
+    public void connectionPoolStatistics() throws Exception {
+        mockServerClient.when(request().withPath("/gitlab/api/v3/.*")).respond(response().withStatusCode(200));
+        GitLabConnection connection = new GitLabConnection("test", gitLabUrl, API_TOKEN_ID, new V3GitLabClientBuilder(), false, 10, 10);
+        connection.setConnectionPoolSize(5);
+        connection.setMaxConnectionsPerRoute(2);
+        GitLabConnectionConfig config = jenkins.get(GitLabConnectionConfig.class);
+        config.addConnection(connection);
+        config.getClient(connection.getName()).getCurrentUser();
+
+        Page page = jenkins.createWebClient().goTo(GitLabConnectionStatisticsAction.URL_NAME + "/", "application/json");
+
+        JSONObject root = JSONObject.fromObject(page.getWebResponse().getContentAsString());
+        JSONObject statistics = root.getJSONArray("connections").getJSONObject(0);
+        JSONObject pool = statistics.getJSONObject("pool");
+        assertThat(pool.getInt("max"), is(5));
+        assertThat(pool.getInt("leased"), is(0));
+        assertThat(pool.getLong("leases"), is(1L));
+        JSONObject currentUser = statistics.getJSONObject("endpoints").getJSONObject("GET /api/v3/user");
+        assertThat(currentUser.getLong("calls"), is(1L));
+        assertThat(currentUser.getJSONObject("status").getLong("200"), is(1L));
+        assertThat(root.getJSONObject("buildResultReuse").getLong("savedExecutorMillis"), is(0L));
+    }
+
+    /**
+     * Keeps its credentials in the configuration of folders, like the credentials stores of folders do.
+     */
+    @TestExtension("getClient_is_replaced_when_folder_api_token_changes")
+    public static class FolderCredentialsProvider extends CredentialsProvider {
+        private static final List<Credentials> CREDENTIALS = new CopyOnWriteArrayList<>();
+        private static final CredentialsStore STORE = mock(CredentialsStore.class);
+
+        @Override
+        public <C extends Credentials> List<C> getCredentials(Class<C> type, ItemGroup itemGroup, Authentication authentication) {
+            List<C> result = new ArrayList<>();
+            for (Credentials credentials : CREDENTIALS) {
+                if (type.isInstance(credentials)) {
+                    result.add(type.cast(credentials));
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public CredentialsStore getStore(ModelObject object) {
+            return object instanceof MockFolder ? STORE : null;
+        }
+    }
+
+    private static class StubClientBuilder extends GitLabClientBuilder {
+        private final transient GitLabClient client;
+
+        StubClientBuilder(GitLabClient client) {
+            super("stub", 0);
+            this.client = client;
+        }
+
+        @Override
+        public GitLabClient buildClient(String url, String token, boolean ignoreCertificateErrors, int connectionTimeout, int readTimeout) {
+            return client;
+        }
+    }
 }
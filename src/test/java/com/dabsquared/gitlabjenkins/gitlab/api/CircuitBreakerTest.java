@@ -0,0 +1,89 @@
+package com.dabsquared.gitlabjenkins.gitlab.api;
+
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void opensWhenFailureRateIsReached() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(10, 4, 50, 100, 1000, 60000, 1);
+        call(circuitBreaker, false, 0);
+        call(circuitBreaker, true, 0);
+        call(circuitBreaker, false, 0);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+
+        call(circuitBreaker, true, 0);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+        assertRejected(circuitBreaker);
+        assertThat(circuitBreaker.getRejectedCallCount(), is(1L));
+    }
+
+    @Test
+    public void opensWhenSlowCallRateIsReached() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(10, 2, 100, 100, 1000, 60000, 1);
+        call(circuitBreaker, false, 1000);
+        call(circuitBreaker, false, 5000);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+    }
+
+    @Test
+    public void closesWhenProbeCallsSucceed() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(10, 1, 50, 100, 1000, 0, 2);
+        call(circuitBreaker, true, 0);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+
+        circuitBreaker.permit();
+        circuitBreaker.permit();
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.HALF_OPEN));
+        assertRejected(circuitBreaker);
+        circuitBreaker.record(false, 0);
+        circuitBreaker.record(false, 0);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+        assertThat(circuitBreaker.getFailureRate(), is(0));
+    }
+
+    @Test
+    public void releasedProbePermitIsNotCounted() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(10, 1, 50, 100, 1000, 0, 1);
+        call(circuitBreaker, true, 0);
+
+        circuitBreaker.permit();
+        assertRejected(circuitBreaker);
+        circuitBreaker.release();
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.HALF_OPEN));
+
+        circuitBreaker.permit();
+        assertRejected(circuitBreaker);
+        circuitBreaker.record(false, 0);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void reopensWhenProbeCallFails() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(10, 1, 50, 100, 1000, 0, 2);
+        call(circuitBreaker, true, 0);
+        call(circuitBreaker, true, 0);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+        assertThat(circuitBreaker.getOpenedCount(), is(2L));
+    }
+
+    private void call(CircuitBreaker circuitBreaker, boolean failed, long durationMillis) {
+        circuitBreaker.permit();
+        circuitBreaker.record(failed, durationMillis);
+    }
+
+    private void assertRejected(CircuitBreaker circuitBreaker) {
+        try {
+            circuitBreaker.permit();
+            fail("call was permitted");
+        } catch (CallNotPermittedException expected) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.dabsquared.gitlabjenkins.gitlab.api;
+
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+
+public class CommitStatusOrderTest {
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void slowUpdateDoesNotHoldUpOtherStatuses() throws Exception {
+        final CommitStatusOrder order = new CommitStatusOrder();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Future<?> slow = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                order.send("slow", "Jenkins", new Runnable() {
+                    @Override
+                    public void run() {
+                        started.countDown();
+                        try {
+                            release.await(30, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+            }
+        });
+        assertThat(started.await(10, TimeUnit.SECONDS), is(true));
+
+        final AtomicInteger sent = new AtomicInteger();
+        for (int i = 0; i < 500; i++) {
+            order.send("sha" + i, "Jenkins", new Runnable() {
+                @Override
+                public void run() {
+                    sent.incrementAndGet();
+                }
+            });
+        }
+        release.countDown();
+        slow.get(10, TimeUnit.SECONDS);
+
+        assertThat(sent.get(), is(500));
+    }
+
+    @Test
+    public void dropsUpdateIssuedBeforeLaterSentUpdate() {
+        CommitStatusOrder order = new CommitStatusOrder();
+        long pending = order.issue();
+        final AtomicInteger sent = new AtomicInteger();
+        Runnable update = new Runnable() {
+            @Override
+            public void run() {
+                sent.incrementAndGet();
+            }
+        };
+
+        order.send("abc", "Jenkins", update);
+
+        assertThat(order.send(pending, "abc", "Jenkins", update), is(false));
+        assertThat(sent.get(), is(1));
+        assertThat(order.getDroppedUpdateCount(), is(1L));
+    }
+}
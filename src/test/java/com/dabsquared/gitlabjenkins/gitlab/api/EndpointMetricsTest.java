@@ -0,0 +1,46 @@
+package com.dabsquared.gitlabjenkins.gitlab.api;
+
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+
+public class EndpointMetricsTest {
+
+    @Test
+    public void recordsLatencyHistogram() {
+        EndpointMetrics metrics = new EndpointMetrics();
+        for (int i = 0; i < 98; i++) {
+            metrics.recordLatency(20);
+        }
+        metrics.recordLatency(400);
+        metrics.recordLatency(40000);
+
+        assertThat(metrics.getCallCount(), is(100L));
+        assertThat(metrics.getMaxMillis(), is(40000L));
+        assertThat(metrics.getPercentileMillis(50), is(25L));
+        assertThat(metrics.getPercentileMillis(99), is(500L));
+        assertThat(metrics.getPercentileMillis(100), is(40000L));
+        assertThat(metrics.getHistogram(), hasEntry("25", 98L));
+        assertThat(metrics.getHistogram(), hasEntry("+Inf", 1L));
+    }
+
+    @Test
+    public void countsStatusCodes() {
+        EndpointMetrics metrics = new EndpointMetrics();
+        metrics.recordStatus(200);
+        metrics.recordStatus(200);
+        metrics.recordStatus(404);
+
+        assertThat(metrics.getStatusCounts(), hasEntry(200, 2L));
+        assertThat(metrics.getStatusCounts(), hasEntry(404, 1L));
+    }
+
+    @Test
+    public void percentileOfNoCallsIsZero() {
+        assertThat(new EndpointMetrics().getPercentileMillis(95), is(0L));
+    }
+}
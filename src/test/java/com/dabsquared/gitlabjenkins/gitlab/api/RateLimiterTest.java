@@ -0,0 +1,70 @@
+package com.dabsquared.gitlabjenkins.gitlab.api;
+
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+
+public class RateLimiterTest {
+
+    @Test
+    public void halvesLimitWhenThrottled() {
+        RateLimiter rateLimiter = new RateLimiter(8);
+
+        rateLimiter.onResponse(RateLimiter.TOO_MANY_REQUESTS, null, null, null, 0L);
+        assertThat(rateLimiter.getLimit(), is(4));
+
+        rateLimiter.onResponse(200, 0, 600, null, 0L);
+        assertThat(rateLimiter.getLimit(), is(2));
+    }
+
+    @Test
+    public void growsLimitByOnePerRoundOfSuccessfulCalls() {
+        RateLimiter rateLimiter = new RateLimiter(8);
+        rateLimiter.onResponse(RateLimiter.TOO_MANY_REQUESTS, null, null, null, 0L);
+
+        for (int i = 0; i < 5; i++) {
+            rateLimiter.onResponse(200, 500, 600, null, null);
+        }
+        assertThat(rateLimiter.getLimit(), is(5));
+
+        for (int i = 0; i < 100; i++) {
+            rateLimiter.onResponse(200, 500, 600, null, null);
+        }
+        assertThat(rateLimiter.getLimit(), is(8));
+    }
+
+    @Test
+    public void callsBeyondLimitWait() throws Exception {
+        final RateLimiter rateLimiter = new RateLimiter(1);
+        rateLimiter.acquire();
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiting = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    rateLimiter.acquire();
+                    acquired.countDown();
+                    rateLimiter.release();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        waiting.start();
+
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+        rateLimiter.release();
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        waiting.join();
+        assertThat(rateLimiter.getThrottledCallCount(), is(1L));
+        assertThat(rateLimiter.getInFlight(), is(0));
+    }
+}
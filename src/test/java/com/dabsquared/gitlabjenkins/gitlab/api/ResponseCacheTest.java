@@ -0,0 +1,38 @@
+package com.dabsquared.gitlabjenkins.gitlab.api;
+
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+
+public class ResponseCacheTest {
+
+    @Test
+    public void evictsResponsesBeyondMaxBytes() {
+        ResponseCache cache = new ResponseCache(10000);
+
+        for (int i = 0; i < 100; i++) {
+            cache.store("http://gitlab/api/v4/projects/" + i, "\"v1\"", null, new Object(), 1000);
+            assertThat(cache.getSize(), lessThanOrEqualTo(10000L));
+        }
+
+        assertThat(cache.getEntryCount(), greaterThan(0L));
+        assertThat(cache.getEntryCount(), lessThan(100L));
+    }
+
+    @Test
+    public void doesNotStoreResponsesWithoutValidators() {
+        ResponseCache cache = new ResponseCache(10000);
+
+        cache.store("http://gitlab/api/v4/projects/1", null, null, new Object(), 1000);
+
+        assertThat(cache.lookup("http://gitlab/api/v4/projects/1"), nullValue());
+        assertThat(cache.getSize(), is(0L));
+    }
+}
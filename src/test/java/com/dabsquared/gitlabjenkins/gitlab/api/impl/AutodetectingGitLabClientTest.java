@@ -1,6 +1,9 @@
 package com.dabsquared.gitlabjenkins.gitlab.api.impl;
 
+import com.dabsquared.gitlabjenkins.gitlab.api.ConnectionPoolSettings;
+import com.dabsquared.gitlabjenkins.gitlab.api.ConnectionMonitor;
 import com.dabsquared.gitlabjenkins.gitlab.api.GitLabClientBuilder;
+import com.dabsquared.gitlabjenkins.gitlab.api.model.Branch;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -8,16 +11,26 @@ import org.jvnet.hudson.test.JenkinsRule;
 import org.mockserver.client.server.MockServerClient;
 import org.mockserver.junit.MockServerRule;
 import org.mockserver.model.HttpRequest;
+import org.mockserver.verify.VerificationTimes;
+
+import javax.ws.rs.NotFoundException;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.NoSuchElementException;
 
 import static com.dabsquared.gitlabjenkins.gitlab.api.impl.TestUtility.*;
+import static javax.ws.rs.HttpMethod.GET;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 import static org.mockserver.matchers.Times.exactly;
 import static org.mockserver.matchers.Times.once;
+import static org.mockserver.model.HttpRequest.request;
 
 public class AutodetectingGitLabClientTest {
     @Rule
@@ -26,7 +39,7 @@ public class AutodetectingGitLabClientTest {
     public JenkinsRule jenkins = new JenkinsRule();
     private MockServerClient mockServerClient;
     private String gitLabUrl;
-    private GitLabClientBuilder clientBuilder;
+    private List<GitLabClientBuilder> builders;
     private AutodetectingGitLabClient api;
     private HttpRequest v3Request;
     private HttpRequest v4Request;
@@ -36,7 +49,7 @@ public class AutodetectingGitLabClientTest {
         gitLabUrl = "http://localhost:" + mockServer.getPort() + "/gitlab";
         addGitLabApiToken();
 
-        List<GitLabClientBuilder> builders = Arrays.<GitLabClientBuilder>asList(new V3GitLabClientBuilder(), new V4GitLabClientBuilder());
+        builders = Arrays.<GitLabClientBuilder>asList(new V3GitLabClientBuilder(), new V4GitLabClientBuilder());
         api = new AutodetectingGitLabClient(builders, gitLabUrl, API_TOKEN, true, 10, 10);
 
         v3Request = versionRequest(V3GitLabApiProxy.ID);
@@ -72,7 +85,7 @@ public class AutodetectingGitLabClientTest {
         api.getCurrentUser();
         assertApiImpl(api, V3GitLabApiProxy.class);
 
-        mockServerClient.verify(v3Request, v4Request, v4Request, v3Request, v3Request);
+        mockServerClient.verify(v3Request, v4Request, v4Request, v4Request, v4Request, v3Request, v3Request);
     }
 
     @Test
@@ -86,4 +99,85 @@ public class AutodetectingGitLabClientTest {
             mockServerClient.verify(v3Request, v4Request);
         }
     }
+
+    @Test
+    public void ordinary_not_found_does_not_redetect() throws Exception {
+        HttpRequest v4UserRequest = request().withMethod(GET).withPath("/gitlab/api/v4/user").withHeader("PRIVATE-TOKEN", API_TOKEN);
+        mockServerClient.when(v3Request).respond(responseNotFound());
+        mockServerClient.when(v4UserRequest).respond(responseOk());
+        api.getCurrentUser();
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                api.getBranch("1", "deleted");
+                fail("missing branch should not be found");
+            } catch (NotFoundException expected) {
+                // ordinary 404
+            }
+        }
+
+        assertApiImpl(api, V4GitLabApiProxy.class);
+        mockServerClient.verify(v3Request, VerificationTimes.exactly(1));
+        mockServerClient.verify(v4UserRequest, VerificationTimes.exactly(3));
+    }
+
+    @Test
+    public void listing_redetects_when_first_page_is_not_found() throws Exception {
+        mockServerClient.when(v3Request, once()).respond(responseNotFound());
+        mockServerClient.when(v4Request, exactly(2)).respond(responseOk());
+        api.getCurrentUser();
+        assertApiImpl(api, V4GitLabApiProxy.class);
+
+        mockServerClient.when(v4Request).respond(responseNotFound());
+        mockServerClient.when(request().withMethod(GET).withPath("/gitlab/api/v3/projects/1/repository/branches"))
+            .respond(responseOk().withHeader("Content-Type", "application/json").withBody("[{\"name\": \"master\"}]"));
+        mockServerClient.when(v3Request).respond(responseOk());
+        List<String> branches = new ArrayList<>();
+        for (Branch branch : api.getAllBranches("1")) {
+            branches.add(branch.getName());
+        }
+
+        assertThat(branches, contains("master"));
+        assertApiImpl(api, V3GitLabApiProxy.class);
+    }
+
+    @Test
+    public void uses_detected_api_level_without_probing() throws Exception {
+        final List<String> detected = new ArrayList<>();
+        AutodetectingGitLabClient client = new AutodetectingGitLabClient(builders, gitLabUrl, API_TOKEN, true, 10, 10,
+            ConnectionPoolSettings.DEFAULT, new ConnectionMonitor(), V4GitLabApiProxy.ID, new AutodetectGitLabClientBuilder.DetectionListener() {
+                @Override
+                public void detected(String clientBuilderId) {
+                    detected.add(clientBuilderId);
+                }
+            });
+        mockServerClient.when(v4Request).respond(responseOk());
+
+        client.getCurrentUser();
+
+        assertApiImpl(client, V4GitLabApiProxy.class);
+        assertThat(detected, is(empty()));
+        mockServerClient.verify(v3Request, VerificationTimes.exactly(0));
+        mockServerClient.verify(v4Request, VerificationTimes.exactly(1));
+    }
+
+    @Test
+    public void reports_detected_api_level() throws Exception {
+        final List<String> detected = new ArrayList<>();
+        AutodetectingGitLabClient client = new AutodetectingGitLabClient(builders, gitLabUrl, API_TOKEN, true, 10, 10,
+            ConnectionPoolSettings.DEFAULT, new ConnectionMonitor(), null, new AutodetectGitLabClientBuilder.DetectionListener() {
+                @Override
+                public void detected(String clientBuilderId) {
+                    detected.add(clientBuilderId);
+                }
+            });
+        mockServerClient.when(v3Request).respond(responseNotFound());
+        mockServerClient.when(v4Request).respond(responseOk());
+
+        client.getCurrentUser();
+        client.getCurrentUser();
+
+        assertThat(detected, contains(V4GitLabApiProxy.ID));
+        assertThat(client.getDetectedClientBuilderId(), is(V4GitLabApiProxy.ID));
+    }
 }
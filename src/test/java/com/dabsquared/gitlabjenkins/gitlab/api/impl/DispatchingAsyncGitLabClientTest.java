@@ -0,0 +1,159 @@
+package com.dabsquared.gitlabjenkins.gitlab.api.impl;
+
+
+import com.dabsquared.gitlabjenkins.gitlab.api.CommitStatusOrder;
+import com.dabsquared.gitlabjenkins.gitlab.api.GitLabClient;
+import com.dabsquared.gitlabjenkins.gitlab.api.model.BuildState;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import javax.ws.rs.NotFoundException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+
+public class DispatchingAsyncGitLabClientTest {
+    private final ListeningExecutorService executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(2));
+    private final GitLabClient client = mock(GitLabClient.class);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void executesCallsOnPoolThreads() throws Exception {
+        final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                threads.add(Thread.currentThread().getName());
+                return null;
+            }
+        }).when(client).changeBuildStatus(anyInt(), anyString(), any(BuildState.class), anyString(), anyString(), anyString(), anyString());
+        DispatchingAsyncGitLabClient asyncClient = new DispatchingAsyncGitLabClient(client, executor, new CommitStatusOrder());
+
+        List<ListenableFuture<Void>> calls = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            calls.add(asyncClient.changeBuildStatus(1, "commit" + i, BuildState.pending, "master", "Jenkins", "url", "pending"));
+        }
+        Futures.allAsList(calls).get();
+
+        verify(client, times(200)).changeBuildStatus(eq(1), anyString(), eq(BuildState.pending), eq("master"), eq("Jenkins"), eq("url"), eq("pending"));
+        assertThat(threads.size(), lessThanOrEqualTo(2));
+        assertThat(threads.contains(Thread.currentThread().getName()), is(false));
+    }
+
+    @Test
+    public void reportsFailuresThroughTheFuture() throws Exception {
+        doThrow(new NotFoundException()).when(client).getCommit("1", "commit");
+        DispatchingAsyncGitLabClient asyncClient = new DispatchingAsyncGitLabClient(client, executor, new CommitStatusOrder());
+
+        try {
+            asyncClient.getCommit("1", "commit").get();
+            fail("Expected the call to fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(NotFoundException.class));
+        }
+    }
+
+    @Test
+    public void dropsQueuedStatusUpdateWhenLaterOneWasSent() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws InterruptedException {
+                release.await(10, TimeUnit.SECONDS);
+                return null;
+            }
+        }).when(client).getCommit("1", "busy");
+        ListeningExecutorService singleThread = MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor());
+        CommitStatusOrder statusOrder = new CommitStatusOrder();
+        DispatchingAsyncGitLabClient asyncClient = new DispatchingAsyncGitLabClient(client, singleThread, statusOrder);
+        try {
+            asyncClient.getCommit("1", "busy");
+            ListenableFuture<Void> pending = asyncClient.changeBuildStatus(1, "commit", BuildState.pending, "master", "Jenkins", "url", "pending");
+            statusOrder.send("commit", "Jenkins", new Runnable() {
+                @Override
+                public void run() {
+                    client.changeBuildStatus(1, "commit", BuildState.success, "master", "Jenkins", "url", "success");
+                }
+            });
+            release.countDown();
+
+            pending.get(10, TimeUnit.SECONDS);
+        } finally {
+            singleThread.shutdownNow();
+        }
+
+        verify(client).changeBuildStatus(1, "commit", BuildState.success, "master", "Jenkins", "url", "success");
+        verify(client, never()).changeBuildStatus(eq(1), eq("commit"), eq(BuildState.pending), anyString(), anyString(), anyString(), anyString());
+        assertThat(statusOrder.getDroppedUpdateCount(), is(1L));
+    }
+
+    @Test
+    public void dropsOldestStatusUpdateWhenQueueIsFull() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws InterruptedException {
+                release.await(10, TimeUnit.SECONDS);
+                return null;
+            }
+        }).when(client).getCommit(anyString(), anyString());
+        ThreadPoolExecutor pool = DispatchingAsyncGitLabClient.createExecutor("test", 1);
+        try {
+            DispatchingAsyncGitLabClient asyncClient =
+                new DispatchingAsyncGitLabClient(client, MoreExecutors.listeningDecorator(pool), new CommitStatusOrder());
+            for (int i = 0; i < pool.getMaximumPoolSize(); i++) {
+                asyncClient.getCommit("1", "busy" + i);
+            }
+
+            ListenableFuture<Void> oldest = asyncClient.changeBuildStatus(1, "commit1", BuildState.pending, "master", "Jenkins", "url", "pending");
+            ListenableFuture<Void> newest = asyncClient.changeBuildStatus(1, "commit2", BuildState.pending, "master", "Jenkins", "url", "pending");
+            assertThat(oldest.isCancelled(), is(true));
+            asyncClient.getCommit("1", "commit3");
+            assertThat(newest.isCancelled(), is(true));
+            try {
+                asyncClient.getCommit("1", "commit4");
+                fail("Expected the call to be rejected");
+            } catch (RejectedExecutionException expected) {
+                // expected
+            }
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+}
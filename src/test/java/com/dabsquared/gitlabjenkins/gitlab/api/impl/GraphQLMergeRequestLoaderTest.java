@@ -0,0 +1,98 @@
+package com.dabsquared.gitlabjenkins.gitlab.api.impl;
+
+
+import com.dabsquared.gitlabjenkins.gitlab.api.MergeRequestWithSource;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import javax.ws.rs.NotFoundException;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+
+public class GraphQLMergeRequestLoaderTest {
+    private static final String NO_MERGE_REQUESTS = "{\"data\": {\"projects\": {\"nodes\": []}}}";
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final String ONE_MERGE_REQUEST = "{\"data\": {\"projects\": {\"nodes\": [{\"mergeRequests\": {\"nodes\": [{"
+        + "\"iid\": \"2\", \"sourceBranch\": \"feature\", \"diffHeadSha\": \"0000000000000000000000000000000000000001\","
+        + " \"sourceProject\": {\"id\": \"gid://gitlab/Project/3\", \"fullPath\": \"jane/fork\"}}]}}]}}}";
+
+    private final GitLabGraphQLProxy api = mock(GitLabGraphQLProxy.class);
+
+    @Test
+    public void otherErrorsOnlyFallBackForCurrentCall() throws Exception {
+        when(api.query(anyMap()))
+            .thenReturn(json("{\"errors\": [{\"message\": \"Internal server error\"}]}"))
+            .thenReturn(json(NO_MERGE_REQUESTS));
+        GraphQLMergeRequestLoader loader = new GraphQLMergeRequestLoader(api, HOUR);
+
+        assertThat(loader.getOpenMergeRequests("1"), nullValue());
+        assertThat(loader.getOpenMergeRequests("1"), notNullValue());
+    }
+
+    @Test
+    public void schemaErrorsDisableGraphQLUntilReprobe() throws Exception {
+        when(api.query(anyMap()))
+            .thenReturn(json("{\"errors\": [{\"message\": \"Field 'draft' doesn't exist on type 'MergeRequest'\"}]}"));
+        GraphQLMergeRequestLoader loader = new GraphQLMergeRequestLoader(api, HOUR);
+
+        assertThat(loader.getOpenMergeRequests("1"), nullValue());
+        assertThat(loader.getOpenMergeRequests("1"), nullValue());
+
+        verify(api, times(1)).query(anyMap());
+    }
+
+    @Test
+    public void missingEndpointIsProbedAgainAfterInterval() throws Exception {
+        when(api.query(anyMap()))
+            .thenThrow(new NotFoundException())
+            .thenReturn(json(NO_MERGE_REQUESTS));
+        GraphQLMergeRequestLoader loader = new GraphQLMergeRequestLoader(api, 0);
+
+        assertThat(loader.getOpenMergeRequests("1"), nullValue());
+        assertThat(loader.getOpenMergeRequests("1"), notNullValue());
+    }
+
+    @Test
+    public void sourceBranchHeadIsQueriedFromBranch() throws Exception {
+        when(api.query(anyMap()))
+            .thenReturn(json(ONE_MERGE_REQUEST))
+            .thenReturn(json("{\"data\": {\"head0\": {\"repository\": {\"tree\": {\"lastCommit\": "
+                + "{\"sha\": \"0000000000000000000000000000000000000002\", \"authorName\": \"Jane Doe\"}}}}}}"));
+        GraphQLMergeRequestLoader loader = new GraphQLMergeRequestLoader(api, HOUR);
+
+        MergeRequestWithSource mergeRequest = loader.getOpenMergeRequests("1").iterator().next();
+
+        assertThat(mergeRequest.getSourceBranch().getName(), is("feature"));
+        assertThat(mergeRequest.getSourceBranch().getCommit().getId(), is("0000000000000000000000000000000000000002"));
+        assertThat(mergeRequest.getSourceBranch().getCommit().getAuthorName(), is("Jane Doe"));
+    }
+
+    @Test
+    public void sourceBranchIsLeftToRestIfHeadCannotBeQueried() throws Exception {
+        when(api.query(anyMap()))
+            .thenReturn(json(ONE_MERGE_REQUEST))
+            .thenReturn(json("{\"errors\": [{\"message\": \"Query has complexity of 300, which exceeds max complexity of 250\"}]}"));
+        GraphQLMergeRequestLoader loader = new GraphQLMergeRequestLoader(api, HOUR);
+
+        MergeRequestWithSource mergeRequest = loader.getOpenMergeRequests("1").iterator().next();
+
+        assertThat(mergeRequest.getSourceBranch(), nullValue());
+        assertThat(mergeRequest.getSourceProject(), notNullValue());
+    }
+
+    private static JsonNode json(String content) throws IOException {
+        return new ObjectMapper().readTree(content);
+    }
+}
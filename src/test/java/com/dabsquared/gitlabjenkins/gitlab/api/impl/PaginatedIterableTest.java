@@ -0,0 +1,154 @@
+package com.dabsquared.gitlabjenkins.gitlab.api.impl;
+
+
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+
+public class PaginatedIterableTest {
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void followsNextPage() {
+        PageLoaderStub loader = new PageLoaderStub(false, asList("a", "b"), asList("c"), asList("d", "e"));
+
+        List<String> items = Lists.newArrayList(new PaginatedIterable<>(loader, executor, 1));
+
+        assertThat(items, contains("a", "b", "c", "d", "e"));
+        assertThat(loader.requestedPages, contains(1, 2, 3));
+    }
+
+    @Test
+    public void loadsPagesInParallelWithTotalPages() {
+        PageLoaderStub loader = new PageLoaderStub(true, asList("a"), asList("b"), asList("c"), asList("d"));
+
+        List<String> items = Lists.newArrayList(new PaginatedIterable<>(loader, executor, 3));
+
+        assertThat(items, contains("a", "b", "c", "d"));
+        assertThat(loader.requestedPages.size(), is(4));
+    }
+
+    @Test
+    public void loadsNothingUntilIterated() {
+        PageLoaderStub loader = new PageLoaderStub(false, asList("a"));
+
+        Iterator<String> iterator = new PaginatedIterable<>(loader, executor, 1).iterator();
+
+        assertThat(loader.requestedPages, is(empty()));
+        assertThat(iterator.next(), is("a"));
+        assertThat(iterator.hasNext(), is(false));
+    }
+
+    @Test
+    public void emptyListing() {
+        PageLoaderStub loader = new PageLoaderStub(true, Collections.<String>emptyList());
+
+        assertThat(Lists.newArrayList(new PaginatedIterable<>(loader, executor, 2)), is(empty()));
+    }
+
+    @Test
+    public void cancelsPrefetchedPagesWhenPageFails() throws Exception {
+        BlockingPageLoader loader = new BlockingPageLoader(2);
+        Iterator<String> iterator = new PaginatedIterable<>(loader, executor, 3).iterator();
+
+        assertThat(iterator.next(), is("page 1"));
+        try {
+            iterator.next();
+            fail("failing page should be reported");
+        } catch (IllegalStateException expected) {
+            // page 2 failed
+        }
+
+        assertThat(loader.interrupted.await(10, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    public void cancelsPrefetchedPagesWhenClosed() throws Exception {
+        BlockingPageLoader loader = new BlockingPageLoader(3);
+        Iterator<String> iterator = new PaginatedIterable<>(loader, executor, 3).iterator();
+
+        assertThat(iterator.next(), is("page 1"));
+        assertThat(loader.started.await(10, TimeUnit.SECONDS), is(true));
+        ((Closeable) iterator).close();
+
+        assertThat(loader.interrupted.await(10, TimeUnit.SECONDS), is(true));
+        assertThat(iterator.hasNext(), is(false));
+    }
+
+    /**
+     * Serves the first of four pages, the others block until they are cancelled. If {@code blockingPages} is 2, page 2
+     * fails as soon as pages 3 and 4 are loaded.
+     */
+    private static class BlockingPageLoader implements PaginatedIterable.PageLoader<String> {
+        private final int blockingPages;
+        private final CountDownLatch started;
+        private final CountDownLatch interrupted;
+
+        private BlockingPageLoader(int blockingPages) {
+            this.blockingPages = blockingPages;
+            this.started = new CountDownLatch(blockingPages);
+            this.interrupted = new CountDownLatch(blockingPages);
+        }
+
+        @Override
+        public Page<String> load(int page) {
+            if (page == 1) {
+                return new Page<>(asList("page 1"), 2, 4);
+            }
+            try {
+                if (page == 2 && blockingPages == 2) {
+                    started.await(10, TimeUnit.SECONDS);
+                    throw new IllegalStateException("page 2 failed");
+                }
+                started.countDown();
+                new CountDownLatch(1).await(10, TimeUnit.SECONDS);
+                return new Page<>(asList("page " + page), page < 4 ? page + 1 : null, 4);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static class PageLoaderStub implements PaginatedIterable.PageLoader<String> {
+        private final List<List<String>> pages;
+        private final boolean sendTotalPages;
+        private final List<Integer> requestedPages = Collections.synchronizedList(new ArrayList<Integer>());
+
+        @SafeVarargs
+        private PageLoaderStub(boolean sendTotalPages, List<String>... pages) {
+            this.sendTotalPages = sendTotalPages;
+            this.pages = asList(pages);
+        }
+
+        @Override
+        public Page<String> load(int page) {
+            requestedPages.add(page);
+            Integer nextPage = page < pages.size() ? page + 1 : null;
+            return new Page<>(pages.get(page - 1), nextPage, sendTotalPages ? pages.size() : null);
+        }
+    }
+}
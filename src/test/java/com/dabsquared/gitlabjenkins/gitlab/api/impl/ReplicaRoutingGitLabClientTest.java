@@ -0,0 +1,122 @@
+package com.dabsquared.gitlabjenkins.gitlab.api.impl;
+
+
+import com.dabsquared.gitlabjenkins.gitlab.api.GitLabClient;
+import com.dabsquared.gitlabjenkins.gitlab.api.MergeRequestWithSource;
+import com.dabsquared.gitlabjenkins.gitlab.api.model.Branch;
+import com.dabsquared.gitlabjenkins.gitlab.api.model.BuildState;
+import com.dabsquared.gitlabjenkins.gitlab.api.model.Label;
+import com.dabsquared.gitlabjenkins.gitlab.api.model.MergeRequest;
+import com.dabsquared.gitlabjenkins.gitlab.api.model.Project;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.ServiceUnavailableException;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+
+public class ReplicaRoutingGitLabClientTest {
+    private GitLabClient primary;
+    private GitLabClient replica;
+    private GitLabClient client;
+
+    @Before
+    public void setup() {
+        primary = mock(GitLabClient.class);
+        replica = mock(GitLabClient.class);
+        client = new ReplicaRoutingGitLabClient(primary, replica);
+    }
+
+    @Test
+    public void readsFromReplica() {
+        Project project = new Project();
+        when(replica.getProject("1")).thenReturn(project);
+
+        assertThat(client.getProject("1"), sameInstance(project));
+        verifyZeroInteractions(primary);
+    }
+
+    @Test
+    public void readsBranchHeadFromPrimary() {
+        Branch branch = new Branch();
+        when(primary.getBranch("1", "master")).thenReturn(branch);
+
+        assertThat(client.getBranch("1", "master"), sameInstance(branch));
+        verifyZeroInteractions(replica);
+    }
+
+    @Test
+    public void dropsSourceBranchOfMergeRequestsReadFromReplica() {
+        MergeRequest mergeRequest = new MergeRequest();
+        Project sourceProject = new Project();
+        when(replica.getOpenMergeRequestsWithSource("1"))
+            .thenReturn(Collections.singletonList(new MergeRequestWithSource(mergeRequest, new Branch(), sourceProject)));
+
+        MergeRequestWithSource result = Iterables.getOnlyElement(client.getOpenMergeRequestsWithSource("1"));
+
+        assertThat(result.getMergeRequest(), sameInstance(mergeRequest));
+        assertThat(result.getSourceProject(), sameInstance(sourceProject));
+        assertThat(result.getSourceBranch(), nullValue());
+    }
+
+    @Test
+    public void writesToPrimary() {
+        client.changeBuildStatus(1, "sha", BuildState.pending, "master", "jenkins", null, null);
+
+        verify(primary).changeBuildStatus(1, "sha", BuildState.pending, "master", "jenkins", null, null);
+        verifyZeroInteractions(replica);
+    }
+
+    @Test
+    public void readsFromPrimaryIfReplicaDoesNotKnowCommitYet() {
+        doThrow(new NotFoundException()).when(replica).getCommit("1", "sha");
+
+        client.getCommit("1", "sha");
+
+        verify(primary).getCommit("1", "sha");
+    }
+
+    @Test
+    public void readsFromPrimaryIfReplicaFails() {
+        Project project = new Project();
+        when(replica.getProject("1")).thenThrow(new ProcessingException("connection refused"));
+        when(primary.getProject("1")).thenReturn(project);
+
+        assertThat(client.getProject("1"), sameInstance(project));
+    }
+
+    @Test
+    public void readsListingFromPrimaryIfReplicaFails() {
+        Label label = new Label();
+        when(replica.getAllLabels("1")).thenThrow(new ServiceUnavailableException());
+        when(primary.getAllLabels("1")).thenReturn(Collections.singletonList(label));
+
+        assertThat(Lists.newArrayList(client.getAllLabels("1")), contains(label));
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void doesNotRepeatRejectedCalls() {
+        when(replica.getProject("1")).thenThrow(new BadRequestException());
+
+        try {
+            client.getProject("1");
+        } finally {
+            verifyZeroInteractions(primary);
+        }
+    }
+}
@@ -1,16 +1,62 @@
 package com.dabsquared.gitlabjenkins.gitlab.api.impl;
 
 
+import com.dabsquared.gitlabjenkins.gitlab.api.Bulkhead;
+import com.dabsquared.gitlabjenkins.gitlab.api.ConnectionMonitor;
+import com.dabsquared.gitlabjenkins.gitlab.api.ConnectionPoolSettings;
+import com.dabsquared.gitlabjenkins.gitlab.api.GitLabClient;
 import com.dabsquared.gitlabjenkins.gitlab.api.GitLabClientBuilder;
+import com.dabsquared.gitlabjenkins.gitlab.api.ListingSnapshot;
+import com.dabsquared.gitlabjenkins.gitlab.api.MergeRequestWithSource;
+import com.dabsquared.gitlabjenkins.gitlab.api.model.Label;
+import com.dabsquared.gitlabjenkins.gitlab.api.model.MergeRequest;
+import com.dabsquared.gitlabjenkins.gitlab.api.model.Project;
+import com.dabsquared.gitlabjenkins.gitlab.api.model.User;
+import com.dabsquared.gitlabjenkins.gitlab.hook.model.State;
+import com.google.common.collect.Lists;
 import hudson.ProxyConfiguration;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
 import org.junit.Rule;
 import org.junit.Test;
 import org.jvnet.hudson.test.JenkinsRule;
+import org.mockserver.client.server.MockServerClient;
 import org.mockserver.junit.MockServerRule;
+import org.mockserver.model.Delay;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+import org.mockserver.verify.VerificationTimes;
 
+import javax.ws.rs.NotFoundException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static com.dabsquared.gitlabjenkins.gitlab.api.impl.TestUtility.API_TOKEN;
 import static com.dabsquared.gitlabjenkins.gitlab.api.impl.TestUtility.assertApiImpl;
 import static com.dabsquared.gitlabjenkins.gitlab.api.impl.TestUtility.buildClientWithDefaults;
+import static com.dabsquared.gitlabjenkins.gitlab.api.impl.TestUtility.responseOk;
+import static com.dabsquared.gitlabjenkins.gitlab.api.impl.TestUtility.versionRequest;
+import static com.dabsquared.gitlabjenkins.gitlab.api.model.builder.generated.LabelBuilder.label;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
 import static junit.framework.TestCase.assertNotNull;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockserver.matchers.Times.once;
+import static org.mockserver.model.HttpRequest.request;
+import static org.mockserver.model.HttpResponse.response;
 
 
 public class ResteasyGitLabClientBuilderTest {
@@ -18,6 +64,7 @@ public class ResteasyGitLabClientBuilderTest {
     public MockServerRule mockServer = new MockServerRule(this);
     @Rule
     public JenkinsRule jenkins = new JenkinsRule();
+    private MockServerClient mockServerClient;
 
     @Test
     public void buildClient() throws Exception {
@@ -32,4 +79,318 @@ public class ResteasyGitLabClientBuilderTest {
         assertNotNull(buildClientWithDefaults(clientBuilder, "http://localhost"));
     }
 
+    @Test
+    public void retriesThrottledCalls() throws Exception {
+        HttpRequest request = versionRequest(V3GitLabApiProxy.ID);
+        mockServerClient.when(request, once()).respond(response().withStatusCode(429).withHeader("Retry-After", "0"));
+        mockServerClient.when(request).respond(responseOk());
+        ConnectionMonitor monitor = new ConnectionMonitor();
+
+        new V3GitLabClientBuilder().buildClient(gitLabUrl(), API_TOKEN, true, 10, 10,
+            ConnectionPoolSettings.DEFAULT, monitor).getCurrentUser();
+
+        mockServerClient.verify(request, request);
+        assertThat(monitor.getRateLimiter().getRetriedCallCount(), is(1L));
+        assertThat(monitor.getRateLimiter().getLimit(), is(ConnectionPoolSettings.DEFAULT_MAX_PER_ROUTE / 2));
+    }
+
+    @Test
+    public void waitsForRateLimitWithoutTakingBulkheadPermits() throws Exception {
+        HttpRequest request = versionRequest(V3GitLabApiProxy.ID);
+        mockServerClient.when(request, once()).respond(response().withStatusCode(429).withHeader("Retry-After", "1"));
+        mockServerClient.when(request).respond(responseOk());
+        System.setProperty(Bulkhead.class.getName() + ".maxConcurrentCalls", "2");
+        ConnectionMonitor monitor;
+        try {
+            monitor = new ConnectionMonitor(2, 0);
+        } finally {
+            System.clearProperty(Bulkhead.class.getName() + ".maxConcurrentCalls");
+        }
+        final GitLabClient client = new V3GitLabClientBuilder().buildClient(gitLabUrl(), API_TOKEN, true, 10, 10,
+            ConnectionPoolSettings.DEFAULT, monitor);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Project>> calls = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                final String projectName = "project" + i;
+                calls.add(executor.submit(new Callable<Project>() {
+                    @Override
+                    public Project call() {
+                        return client.getProject(projectName);
+                    }
+                }));
+            }
+            for (Future<Project> call : calls) {
+                call.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(monitor.getRateLimiter().getRetriedCallCount(), is(1L));
+        assertThat(monitor.getBulkhead().getRejectedCallCount(), is(0L));
+    }
+
+    @Test
+    public void requestsCompressedResponses() throws Exception {
+        HttpRequest request = versionRequest(V3GitLabApiProxy.ID).withHeader("Accept-Encoding", "gzip");
+        mockServerClient.when(request).respond(responseOk());
+
+        new V3GitLabClientBuilder().buildClient(gitLabUrl(), API_TOKEN, true, 10, 10, ConnectionPoolSettings.DEFAULT, new ConnectionMonitor())
+            .getCurrentUser();
+
+        mockServerClient.verify(request);
+    }
+
+    @Test(expected = NotFoundException.class)
+    public void compressionCanBeDisabled() throws Exception {
+        mockServerClient.when(versionRequest(V3GitLabApiProxy.ID).withHeader("Accept-Encoding", "gzip")).respond(responseOk());
+        ConnectionMonitor uncompressed = new ConnectionMonitor(ConnectionPoolSettings.DEFAULT_MAX_PER_ROUTE, 0, false);
+
+        new V3GitLabClientBuilder().buildClient(gitLabUrl(), API_TOKEN, true, 10, 10, ConnectionPoolSettings.DEFAULT, uncompressed).getCurrentUser();
+    }
+
+    @Test
+    public void decodesCompressedResponses() throws Exception {
+        mockServerClient.when(versionRequest(V3GitLabApiProxy.ID).withHeader("Accept-Encoding", "gzip")).respond(response()
+            .withStatusCode(200)
+            .withHeader("Content-Type", "application/json")
+            .withHeader("Content-Encoding", "gzip")
+            .withBody(gzip("{\"id\": 1, \"username\": \"root\"}")));
+
+        User user = new V3GitLabClientBuilder().buildClient(gitLabUrl(), API_TOKEN, true, 10, 10, ConnectionPoolSettings.DEFAULT, new ConnectionMonitor())
+            .getCurrentUser();
+
+        assertThat(user.getId(), is(1));
+        assertThat(user.getUsername(), is("root"));
+    }
+
+    @Test
+    public void servesNotModifiedResponsesFromCache() throws Exception {
+        HttpRequest request = versionRequest(V3GitLabApiProxy.ID);
+        mockServerClient.when(versionRequest(V3GitLabApiProxy.ID).withHeader("If-None-Match", "\"v1\"")).respond(response().withStatusCode(304));
+        mockServerClient.when(request).respond(response()
+            .withStatusCode(200)
+            .withHeader("Content-Type", "application/json")
+            .withHeader("ETag", "\"v1\"")
+            .withBody("{\"id\": 1, \"username\": \"root\"}"));
+        ConnectionMonitor monitor = new ConnectionMonitor(ConnectionPoolSettings.DEFAULT_MAX_PER_ROUTE, 1024 * 1024);
+        GitLabClient client = new V3GitLabClientBuilder().buildClient(gitLabUrl(), API_TOKEN, true, 10, 10, ConnectionPoolSettings.DEFAULT, monitor);
+
+        User user = client.getCurrentUser();
+
+        assertThat(client.getCurrentUser(), sameInstance(user));
+        assertThat(user.getUsername(), is("root"));
+        assertThat(monitor.getResponseCache().getHitCount(), is(1L));
+        assertThat(monitor.getResponseCache().getMissCount(), is(1L));
+    }
+
+    @Test
+    public void weighsCachedResponsesByDecompressedSize() throws Exception {
+        String body = "{\"id\": 1, \"username\": \"root\", \"name\": \"" + StringUtils.repeat("Administrator ", 100) + "\"}";
+        mockServerClient.when(versionRequest(V3GitLabApiProxy.ID)).respond(response()
+            .withStatusCode(200)
+            .withHeader("Content-Type", "application/json")
+            .withHeader("Content-Encoding", "gzip")
+            .withHeader("ETag", "\"v1\"")
+            .withBody(gzip(body)));
+        ConnectionMonitor monitor = new ConnectionMonitor(ConnectionPoolSettings.DEFAULT_MAX_PER_ROUTE, 1024 * 1024);
+
+        new V3GitLabClientBuilder().buildClient(gitLabUrl(), API_TOKEN, true, 10, 10, ConnectionPoolSettings.DEFAULT, monitor)
+            .getCurrentUser();
+
+        assertThat(monitor.getResponseCache().getSize(), is((long) body.getBytes(StandardCharsets.UTF_8).length));
+    }
+
+    @Test
+    public void loadsOpenMergeRequestsWithSourceThroughGraphQL() throws Exception {
+        HttpRequest graphQLRequest = request().withMethod("POST").withPath("/gitlab/api/graphql");
+        mockServerClient.when(graphQLRequest, once()).respond(responseJson("OpenMergeRequests_page1.json"));
+        mockServerClient.when(graphQLRequest, once()).respond(responseJson("OpenMergeRequests_heads1.json"));
+        mockServerClient.when(graphQLRequest, once()).respond(responseJson("OpenMergeRequests_page2.json"));
+        GitLabClient client = new V4GitLabClientBuilder().buildClient(gitLabUrl(), API_TOKEN, true, 10, 10, ConnectionPoolSettings.DEFAULT,
+            new ConnectionMonitor());
+
+        List<MergeRequestWithSource> mergeRequests = Lists.newArrayList(client.getOpenMergeRequestsWithSource("1"));
+
+        assertThat(mergeRequests.size(), is(2));
+        MergeRequestWithSource first = mergeRequests.get(0);
+        assertThat(first.getMergeRequest().getId(), is(5));
+        assertThat(first.getMergeRequest().getIid(), is(2));
+        assertThat(first.getMergeRequest().getSourceProjectId(), is(3));
+        assertThat(first.getMergeRequest().getLabels(), contains("enhancement"));
+        assertThat(first.getSourceBranch().getName(), is("feature"));
+        assertThat(first.getSourceBranch().getCommit().getId(), is("2bfa9a2b9e7b6e3dbd4fc10dd8d1fdc2c4d7b7a9"));
+        assertThat(first.getSourceBranch().getCommit().getAuthorEmail(), is("jane@example.com"));
+        assertThat(first.getSourceProject().getNamespace().getPath(), is("jane"));
+        assertThat(first.getSourceProject().getHttpUrlToRepo(), is("http://gitlab.example.com/jane/fork.git"));
+        MergeRequestWithSource second = mergeRequests.get(1);
+        assertThat(second.getMergeRequest().getWorkInProgress(), is(true));
+        assertThat(second.getSourceBranch(), nullValue());
+        assertThat(second.getSourceProject(), nullValue());
+        mockServerClient.verify(graphQLRequest, VerificationTimes.exactly(3));
+    }
+
+    @Test
+    public void loadsOpenMergeRequestsThroughRestWithoutGraphQL() throws Exception {
+        HttpRequest graphQLRequest = request().withMethod("POST").withPath("/gitlab/api/graphql");
+        mockServerClient.when(graphQLRequest).respond(response().withStatusCode(404));
+        mockServerClient.when(request().withMethod("GET").withPath("/gitlab/api/v4/projects/1/merge_requests")).respond(response()
+            .withStatusCode(200)
+            .withHeader("Content-Type", "application/json")
+            .withBody("[{\"id\": 5, \"iid\": 2, \"source_branch\": \"feature\", \"target_branch\": \"master\", \"source_project_id\": 3}]"));
+        GitLabClient client = new V4GitLabClientBuilder().buildClient(gitLabUrl(), API_TOKEN, true, 10, 10, ConnectionPoolSettings.DEFAULT,
+            new ConnectionMonitor());
+
+        List<MergeRequestWithSource> mergeRequests = Lists.newArrayList(client.getOpenMergeRequestsWithSource("1"));
+        Lists.newArrayList(client.getOpenMergeRequestsWithSource("1"));
+
+        assertThat(mergeRequests.size(), is(1));
+        assertThat(mergeRequests.get(0).getMergeRequest().getSourceBranch(), is("feature"));
+        assertThat(mergeRequests.get(0).getSourceBranch(), nullValue());
+        assertThat(mergeRequests.get(0).getSourceProject(), nullValue());
+        mockServerClient.verify(graphQLRequest, VerificationTimes.once());
+    }
+
+    @Test
+    public void concurrentMergeRequestListingsShareRequest() throws Exception {
+        HttpRequest mergeRequestsRequest = request().withMethod("GET").withPath("/gitlab/api/v4/projects/1/merge_requests");
+        mockServerClient.when(mergeRequestsRequest).respond(response()
+            .withStatusCode(200)
+            .withHeader("Content-Type", "application/json")
+            .withBody("[{\"id\": 5, \"iid\": 2, \"source_branch\": \"feature\", \"target_branch\": \"master\"}]")
+            .withDelay(new Delay(TimeUnit.MILLISECONDS, 1000)));
+        final GitLabClient client = new V4GitLabClientBuilder().buildClient(gitLabUrl(), API_TOKEN, true, 10, 10,
+            ConnectionPoolSettings.DEFAULT, new ConnectionMonitor());
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<List<MergeRequest>>> listings = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                listings.add(executor.submit(new Callable<List<MergeRequest>>() {
+                    @Override
+                    public List<MergeRequest> call() {
+                        return Lists.newArrayList(client.getAllMergeRequests("1", State.opened));
+                    }
+                }));
+            }
+            for (Future<List<MergeRequest>> listing : listings) {
+                List<MergeRequest> mergeRequests = listing.get(10, TimeUnit.SECONDS);
+                assertThat(mergeRequests.size(), is(1));
+                assertThat(mergeRequests.get(0).getSourceBranch(), is("feature"));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        mockServerClient.verify(mergeRequestsRequest, VerificationTimes.once());
+    }
+
+    @Test
+    public void revalidatesLabelsWithConditionalRequests() throws Exception {
+        HttpRequest labelsRequest = request().withMethod("GET").withPath("/gitlab/api/v4/projects/1/labels")
+            .withHeader("If-None-Match", "\"v1\"");
+        mockServerClient.when(labelsRequest).respond(response().withStatusCode(304));
+        ListingSnapshot<Label> previous = new ListingSnapshot<>(singletonList(labels(1)), singletonList("\"v1\""));
+
+        ListingSnapshot<Label> labels = buildV4Client().getLabels("1", previous);
+
+        assertThat(labels.getItems(), is(previous.getItems()));
+        assertThat(labels.getEntityTag(1), is("\"v1\""));
+        mockServerClient.verify(request().withPath("/gitlab/api/v4/projects/1/labels"), VerificationTimes.once());
+    }
+
+    @Test
+    public void revalidationLoadsPageAddedAfterUnchangedFullPage() throws Exception {
+        mockServerClient.when(request().withMethod("GET").withPath("/gitlab/api/v4/projects/1/labels")
+            .withQueryStringParameter("page", "1")).respond(response().withStatusCode(304));
+        mockServerClient.when(request().withMethod("GET").withPath("/gitlab/api/v4/projects/1/labels")
+            .withQueryStringParameter("page", "2")).respond(response()
+            .withStatusCode(200)
+            .withHeader("Content-Type", "application/json")
+            .withHeader("ETag", "\"v2\"")
+            .withBody("[{\"name\": \"new\"}]"));
+        ListingSnapshot<Label> previous = new ListingSnapshot<>(singletonList(labels(100)), singletonList("\"v1\""));
+
+        ListingSnapshot<Label> labels = buildV4Client().getLabels("1", previous);
+
+        assertThat(labels.getPageCount(), is(2));
+        assertThat(labels.getItems().size(), is(101));
+        assertThat(labels.getPage(2).get(0).getName(), is("new"));
+        assertThat(labels.getEntityTag(2), is("\"v2\""));
+    }
+
+    @Test
+    public void revalidationDropsPagesThatNoLongerExist() throws Exception {
+        mockServerClient.when(request().withMethod("GET").withPath("/gitlab/api/v4/projects/1/labels")
+            .withQueryStringParameter("page", "1")).respond(response().withStatusCode(304));
+        mockServerClient.when(request().withMethod("GET").withPath("/gitlab/api/v4/projects/1/labels")
+            .withQueryStringParameter("page", "2")).respond(response()
+            .withStatusCode(200)
+            .withHeader("Content-Type", "application/json")
+            .withBody("[]"));
+        ListingSnapshot<Label> previous = new ListingSnapshot<>(asList(labels(100), labels(1)), asList("\"v1\"", "\"v2\""));
+
+        ListingSnapshot<Label> labels = buildV4Client().getLabels("1", previous);
+
+        assertThat(labels.getPageCount(), is(1));
+        assertThat(labels.getItems().size(), is(100));
+    }
+
+    @Test
+    public void listsMergeRequestSummariesWithSummaryView() throws Exception {
+        mockServerClient.when(request().withPath("/gitlab/api/v4/projects/1/merge_requests")).respond(response()
+            .withStatusCode(200)
+            .withHeader("Content-Type", "application/json")
+            .withBody("[{\"id\": 11, \"iid\": 1, \"source_branch\": \"feature\", \"target_branch\": \"master\", \"source_project_id\": 7, "
+                + "\"labels\": [\"bug\"], \"work_in_progress\": false, \"merge_status\": \"can_be_merged\", "
+                + "\"author\": {\"id\": 2, \"username\": \"author\"}}]"));
+        GitLabClient client = buildV4Client();
+
+        List<MergeRequest> summaries = Lists.newArrayList(client.getAllMergeRequestSummaries("1", State.opened));
+        List<MergeRequest> mergeRequests = Lists.newArrayList(client.getAllMergeRequests("1", State.opened));
+
+        assertThat(summaries.size(), is(1));
+        assertThat(summaries.get(0).getIid(), is(1));
+        assertThat(summaries.get(0).getSourceBranch(), is("feature"));
+        assertThat(summaries.get(0).getSourceProjectId(), is(7));
+        assertThat(summaries.get(0).getLabels(), contains("bug"));
+        assertThat(summaries.get(0).getAuthor(), nullValue());
+        assertThat(summaries.get(0).getMergeStatus(), nullValue());
+        assertThat(mergeRequests.get(0).getAuthor().getUsername(), is("author"));
+        assertThat(mergeRequests.get(0).getMergeStatus(), is("can_be_merged"));
+    }
+
+    private GitLabClient buildV4Client() {
+        return new V4GitLabClientBuilder().buildClient(gitLabUrl(), API_TOKEN, true, 10, 10, ConnectionPoolSettings.DEFAULT,
+            new ConnectionMonitor());
+    }
+
+    private List<Label> labels(int count) {
+        List<Label> labels = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            labels.add(label().withName("label" + i).build());
+        }
+        return labels;
+    }
+
+    private HttpResponse responseJson(String name) throws IOException {
+        return response()
+            .withStatusCode(200)
+            .withHeader("Content-Type", "application/json")
+            .withBody(IOUtils.toString(getClass().getResourceAsStream(name)));
+    }
+
+    private byte[] gzip(String body) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return compressed.toByteArray();
+    }
+
+    private String gitLabUrl() {
+        return "http://localhost:" + mockServer.getPort() + "/gitlab";
+    }
 }
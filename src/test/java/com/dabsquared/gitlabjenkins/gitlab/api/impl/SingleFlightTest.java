@@ -0,0 +1,169 @@
+package com.dabsquared.gitlabjenkins.gitlab.api.impl;
+
+
+import com.dabsquared.gitlabjenkins.gitlab.api.EndpointMetrics;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.ws.rs.NotFoundException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+
+public class SingleFlightTest {
+    private final SingleFlight singleFlight = new SingleFlight();
+    private final EndpointMetrics endpoint = new EndpointMetrics();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void concurrentCallsShareResult() throws Exception {
+        final Object result = new Object();
+        final AtomicInteger executions = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        SingleFlight.Call call = new SingleFlight.Call() {
+            @Override
+            public Object call() throws Throwable {
+                executions.incrementAndGet();
+                release.await();
+                return result;
+            }
+        };
+
+        Future<Object> first = submit("key", call);
+        awaitExecutions(executions, 1);
+        Future<Object> second = submit("key", call);
+        awaitCoalesced(1);
+        release.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS), sameInstance(result));
+        assertThat(second.get(5, TimeUnit.SECONDS), sameInstance(result));
+        assertThat(executions.get(), is(1));
+    }
+
+    @Test
+    public void concurrentCallsShareException() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger executions = new AtomicInteger();
+        SingleFlight.Call call = new SingleFlight.Call() {
+            @Override
+            public Object call() throws Throwable {
+                executions.incrementAndGet();
+                release.await();
+                throw new NotFoundException();
+            }
+        };
+
+        Future<Object> first = submit("key", call);
+        awaitExecutions(executions, 1);
+        Future<Object> second = submit("key", call);
+        awaitCoalesced(1);
+        release.countDown();
+
+        assertFailedWithNotFound(first);
+        assertFailedWithNotFound(second);
+    }
+
+    @Test
+    public void waitingCallExecutesAgainWhenFirstCallIsInterrupted() throws Exception {
+        final Object result = new Object();
+        final AtomicInteger executions = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        SingleFlight.Call call = new SingleFlight.Call() {
+            @Override
+            public Object call() throws Throwable {
+                if (executions.incrementAndGet() == 1) {
+                    release.await();
+                }
+                return result;
+            }
+        };
+
+        Future<Object> first = submit("key", call);
+        awaitExecutions(executions, 1);
+        Future<Object> second = submit("key", call);
+        awaitCoalesced(1);
+        first.cancel(true);
+
+        assertThat(second.get(5, TimeUnit.SECONDS), sameInstance(result));
+        assertThat(executions.get(), is(2));
+        assertThat(endpoint.getCoalescedCount(), is(1L));
+    }
+
+    @Test
+    public void sequentialCallsExecuteAgain() throws Throwable {
+        final AtomicInteger executions = new AtomicInteger();
+        SingleFlight.Call call = new SingleFlight.Call() {
+            @Override
+            public Object call() {
+                return executions.incrementAndGet();
+            }
+        };
+
+        singleFlight.execute("key", call, endpoint);
+        singleFlight.execute("key", call, endpoint);
+
+        assertThat(executions.get(), is(2));
+        assertThat(endpoint.getCoalescedCount(), is(0L));
+    }
+
+    private Future<Object> submit(final String key, final SingleFlight.Call call) {
+        return executor.submit(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                try {
+                    return singleFlight.execute(key, call, endpoint);
+                } catch (Exception | Error e) {
+                    throw e;
+                } catch (Throwable e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+    }
+
+    private void awaitExecutions(AtomicInteger executions, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (executions.get() < expected) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("call was not executed " + expected + " times");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private void awaitCoalesced(long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (endpoint.getCoalescedCount() < expected) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("calls were not coalesced");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private void assertFailedWithNotFound(Future<Object> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("call did not fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(NotFoundException.class));
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.dabsquared.gitlabjenkins.gitlab.api.model;
+
+
+import com.dabsquared.gitlabjenkins.gitlab.JacksonConfig;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+
+public class MergeRequestSummaryTest {
+    private static final TypeReference<List<MergeRequest>> MERGE_REQUESTS = new TypeReference<List<MergeRequest>>() {};
+    private static final String PAGE = mergeRequestsPage(100);
+
+    private final ObjectReader reader = new JacksonConfig().getContext(MergeRequest.class).readerFor(MERGE_REQUESTS);
+
+    @Test
+    public void bindsOnlySummaryFields() throws Exception {
+        List<MergeRequest> mergeRequests = reader.withView(MergeRequest.Summary.class).readValue(PAGE);
+
+        MergeRequest mergeRequest = mergeRequests.get(0);
+        assertThat(mergeRequest.getIid(), is(1));
+        assertThat(mergeRequest.getSourceBranch(), is("feature-0"));
+        assertThat(mergeRequest.getSourceProjectId(), is(7));
+        assertThat(mergeRequest.getLabels(), contains("bug"));
+        assertThat(mergeRequest.getWorkInProgress(), is(false));
+        assertThat(mergeRequest.getDescription(), notNullValue());
+        assertThat(mergeRequest.getAuthor(), nullValue());
+        assertThat(mergeRequest.getMergeStatus(), nullValue());
+    }
+
+    @Test
+    public void bindsAllFieldsWithoutView() throws Exception {
+        List<MergeRequest> mergeRequests = reader.readValue(PAGE);
+
+        assertThat(mergeRequests.get(0).getAuthor().getUsername(), is("author0"));
+        assertThat(mergeRequests.get(0).getMergeStatus(), is("can_be_merged"));
+    }
+
+    /**
+     * Compares the bytes allocated while parsing a page of 100 merge requests with and without the summary view.
+     */
+    @Test
+    public void summaryAllocatesLess() throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(allocation.isThreadAllocatedMemorySupported() && allocation.isThreadAllocatedMemoryEnabled());
+
+        ObjectReader summaryReader = reader.withView(MergeRequest.Summary.class);
+        long full = allocatedBytes(allocation, reader);
+        long summary = allocatedBytes(allocation, summaryReader);
+
+        assertThat(summary, lessThan(full));
+    }
+
+    private long allocatedBytes(com.sun.management.ThreadMXBean allocation, ObjectReader reader) throws Exception {
+        for (int i = 0; i < 200; i++) {
+            reader.readValue(PAGE);
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = allocation.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100; i++) {
+            reader.readValue(PAGE);
+        }
+        return allocation.getThreadAllocatedBytes(threadId) - before;
+    }
+
+    private static String mergeRequestsPage(int size) {
+        StringBuilder page = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                page.append(',');
+            }
+            page.append("{\"id\":").append(1000 + i)
+                .append(",\"iid\":").append(i + 1)
+                .append(",\"project_id\":7,\"title\":\"Merge request ").append(i)
+                .append("\",\"description\":\"").append(StringUtils.repeat("Lorem ipsum dolor sit amet. ", 20))
+                .append("\",\"state\":\"opened\",\"created_at\":\"2017-01-01T00:00:00.000Z\",\"updated_at\":\"2017-01-02T00:00:00.000Z\"")
+                .append(",\"target_branch\":\"master\",\"source_branch\":\"feature-").append(i)
+                .append("\",\"upvotes\":3,\"downvotes\":0")
+                .append(",\"author\":").append(user("author" + i))
+                .append(",\"assignee\":").append(user("assignee" + i))
+                .append(",\"source_project_id\":7,\"target_project_id\":7,\"labels\":[\"bug\"],\"work_in_progress\":false")
+                .append(",\"milestone\":{\"id\":1,\"iid\":1,\"title\":\"1.0\",\"description\":\"First release\",\"state\":\"active\"}")
+                .append(",\"merge_when_build_succeeds\":false,\"merge_status\":\"can_be_merged\",\"sha\":\"")
+                .append(StringUtils.repeat("a", 40)).append("\",\"user_notes_count\":2,\"should_remove_source_branch\":true")
+                .append(",\"web_url\":\"https://gitlab.example.com/group/project/merge_requests/").append(i + 1).append("\"}");
+        }
+        return page.append(']').toString();
+    }
+
+    private static String user(String username) {
+        return "{\"id\":1,\"name\":\"" + username + "\",\"username\":\"" + username + "\",\"email\":\"" + username + "@example.com\""
+            + ",\"state\":\"active\",\"avatar_url\":\"https://gitlab.example.com/uploads/" + username + ".png\""
+            + ",\"web_url\":\"https://gitlab.example.com/" + username + "\"}";
+    }
+}
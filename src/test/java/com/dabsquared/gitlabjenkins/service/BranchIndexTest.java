@@ -0,0 +1,78 @@
+package com.dabsquared.gitlabjenkins.service;
+
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertThat;
+
+
+public class BranchIndexTest {
+
+    private BranchIndex index;
+
+    @Before
+    public void setUp() {
+        index = new BranchIndex(asList("master", "develop", "feature/Login", "feature/logout", "bugfix/login-redirect", "release/1.0"), 0);
+    }
+
+    @Test
+    public void findsSubstringsOfProjectsWithoutSubstringIndex() {
+        BranchIndex unindexed = new BranchIndex(index.getBranches(), Integer.MAX_VALUE);
+        unindexed.add("logging");
+
+        assertThat(unindexed.find("LOG", 10), contains("logging", "bugfix/login-redirect", "feature/Login", "feature/logout"));
+        assertThat(unindexed.find("in-re", 10), contains("bugfix/login-redirect"));
+        assertThat(unindexed.contains("feature/Login"), is(true));
+        assertThat(unindexed.contains("feature/login"), is(false));
+    }
+
+    @Test
+    public void findsPrefixMatchesBeforeSubstringMatches() {
+        index.add("logging");
+
+        assertThat(index.find("LOG", 10), contains("logging", "bugfix/login-redirect", "feature/Login", "feature/logout"));
+        assertThat(index.find("in-re", 10), contains("bugfix/login-redirect"));
+        assertThat(index.find("bugfix/log", 10), contains("bugfix/login-redirect"));
+        assertThat(index.find("feat", 10), contains("feature/Login", "feature/logout"));
+    }
+
+    @Test
+    public void findsShortQueries() {
+        assertThat(index.find("ea", 10), contains("feature/Login", "feature/logout", "release/1.0"));
+    }
+
+    @Test
+    public void limitsResults() {
+        assertThat(index.find("e", 2), hasSize(2));
+        assertThat(index.find("unknown", 10), is(empty()));
+    }
+
+    @Test
+    public void matchesBranchSpecs() {
+        assertThat(index.matchesAny("master"), is(true));
+        assertThat(index.matchesAny("feature/*"), is(true));
+        assertThat(index.matchesAny("**/login*"), is(true));
+        assertThat(index.matchesAny("release/?.?"), is(true));
+        assertThat(index.matchesAny("hotfix/*"), is(false));
+        assertThat(index.matchesAny("Master"), is(false));
+        assertThat(index.matchesAny("Feature/*"), is(false));
+    }
+
+    @Test
+    public void appliesAddedAndRemovedBranches() {
+        index.add("hotfix/crash");
+        index.remove("develop");
+
+        assertThat(index.getBranches(), contains("master", "feature/Login", "feature/logout", "bugfix/login-redirect", "release/1.0", "hotfix/crash"));
+        assertThat(index.matchesAny("hotfix/*"), is(true));
+        assertThat(index.find("crash", 10), contains("hotfix/crash"));
+        assertThat(index.contains("develop"), is(false));
+        assertThat(index.find("devel", 10), is(empty()));
+    }
+}
@@ -2,6 +2,8 @@ package com.dabsquared.gitlabjenkins.service;
 
 
 import com.dabsquared.gitlabjenkins.gitlab.api.GitLabClient;
+import com.dabsquared.gitlabjenkins.gitlab.api.ListingSnapshot;
+import com.dabsquared.gitlabjenkins.gitlab.api.MergeRequestWithSource;
 import com.dabsquared.gitlabjenkins.gitlab.api.model.*;
 import com.dabsquared.gitlabjenkins.gitlab.hook.model.State;
 import org.apache.commons.lang3.tuple.ImmutablePair;
@@ -12,11 +14,13 @@ import java.util.List;
 import java.util.Map;
 
 import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
 
 
 class GitLabClientStub implements GitLabClient {
     private final Map<Pair<String, Class>, List<?>> data;
     private final Map<Pair<String, Class>, Integer> calls;
+    private ListingSnapshot<Label> previousLabels;
 
     GitLabClientStub() {
         data = new HashMap<>();
@@ -36,6 +40,13 @@ class GitLabClientStub implements GitLabClient {
         addData(project, Label.class, labels);
     }
 
+    /**
+     * @return the listing that was passed to the last revalidation of labels
+     */
+    ListingSnapshot<Label> getPreviousLabels() {
+        return previousLabels;
+    }
+
     int calls(String projectId, Class dataClass) {
         Pair<String, Class> key = createKey(projectId, dataClass);
         return calls.containsKey(key) ? calls.get(key) : 0;
@@ -46,11 +57,27 @@ class GitLabClientStub implements GitLabClient {
         return getData(projectId, Branch.class);
     }
 
+    @Override
+    public Iterable<Branch> getAllBranches(String projectId) {
+        return getBranches(projectId);
+    }
+
     @Override
     public List<Label> getLabels(String projectId) {
         return getData(projectId, Label.class);
     }
 
+    @Override
+    public Iterable<Label> getAllLabels(String projectId) {
+        return getLabels(projectId);
+    }
+
+    @Override
+    public ListingSnapshot<Label> getLabels(String projectId, ListingSnapshot<Label> previous) {
+        previousLabels = previous;
+        return new ListingSnapshot<>(singletonList(this.<Label>getData(projectId, Label.class)), singletonList((String) null));
+    }
+
     private void addData(String projectId, Class dataClass, List<?> datas) {
         data.put(createKey(projectId, dataClass), datas);
     }
@@ -149,6 +176,21 @@ class GitLabClientStub implements GitLabClient {
         return null;
     }
 
+    @Override
+    public Iterable<MergeRequest> getAllMergeRequests(String projectId, State state) {
+        return null;
+    }
+
+    @Override
+    public Iterable<MergeRequest> getAllMergeRequestSummaries(String projectId, State state) {
+        return null;
+    }
+
+    @Override
+    public Iterable<MergeRequestWithSource> getOpenMergeRequestsWithSource(String projectId) {
+        return null;
+    }
+
     @Override
     public Branch getBranch(String projectId, String branch) {
         return null;
@@ -173,4 +215,13 @@ class GitLabClientStub implements GitLabClient {
     public List<Pipeline> getPipelines(String projectName) {
         return emptyList();
     }
+
+    @Override
+    public Iterable<Pipeline> getAllPipelines(String projectName) {
+        return emptyList();
+    }
+
+    @Override
+    public void close() {
+    }
 }
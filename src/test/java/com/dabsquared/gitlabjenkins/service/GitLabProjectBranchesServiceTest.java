@@ -2,6 +2,7 @@ package com.dabsquared.gitlabjenkins.service;
 
 
 import com.dabsquared.gitlabjenkins.gitlab.api.model.Branch;
+import com.dabsquared.gitlabjenkins.gitlab.hook.model.PushHook;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -10,14 +11,18 @@ import java.util.ArrayList;
 import java.util.List;
 
 import static com.dabsquared.gitlabjenkins.gitlab.api.model.builder.generated.BranchBuilder.branch;
+import static com.dabsquared.gitlabjenkins.gitlab.hook.model.builder.generated.ProjectBuilder.project;
+import static com.dabsquared.gitlabjenkins.gitlab.hook.model.builder.generated.PushHookBuilder.pushHook;
 import static java.util.Arrays.asList;
 import static junit.framework.TestCase.assertEquals;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.contains;
 import static org.junit.Assert.assertThat;
 
 
 public class GitLabProjectBranchesServiceTest {
     private final static List<String> BRANCH_NAMES_PROJECT_B = asList("master", "B-branch-1", "B-branch-2");
+    private final static String NO_COMMIT = "0000000000000000000000000000000000000000";
 
     private GitLabProjectBranchesService branchesService;
 
@@ -53,6 +58,50 @@ public class GitLabProjectBranchesServiceTest {
         assertEquals(0, clientStub.calls("groupOne/B", Branch.class));
     }
 
+    @Test
+    public void shouldAddCreatedBranchFromPushHook() {
+        // given
+        branchesService.getBranches(clientStub, "git@git.example.com:groupOne/A.git");
+
+        // when
+        branchesService.updateBranches(clientStub, pushHookFor("groupOne/A", "refs/heads/A-branch-2", NO_COMMIT, "abc"));
+
+        // then
+        assertThat(branchesService.getBranches(clientStub, "git@git.example.com:groupOne/A.git"), contains("master", "A-branch-1", "A-branch-2"));
+        assertEquals(1, clientStub.calls("groupOne/A", Branch.class));
+    }
+
+    @Test
+    public void shouldRemoveDeletedBranchFromPushHook() {
+        // given
+        branchesService.getBranches(clientStub, "git@git.example.com:groupOne/A.git");
+
+        // when
+        branchesService.updateBranches(clientStub, pushHookFor("groupOne/A", "refs/heads/A-branch-1", "abc", NO_COMMIT));
+
+        // then
+        assertThat(branchesService.getBranches(clientStub, "git@git.example.com:groupOne/A.git"), contains("master"));
+        assertEquals(1, clientStub.calls("groupOne/A", Branch.class));
+    }
+
+    @Test
+    public void shouldIgnorePushHookForUncachedProject() {
+        // when
+        branchesService.updateBranches(clientStub, pushHookFor("groupOne/B", "refs/heads/B-branch-3", NO_COMMIT, "abc"));
+
+        // then
+        assertThat(branchesService.getBranches(clientStub, "git@git.example.com:groupOne/B.git"), is(BRANCH_NAMES_PROJECT_B));
+    }
+
+    private PushHook pushHookFor(String projectPath, String ref, String before, String after) {
+        return pushHook()
+            .withRef(ref)
+            .withBefore(before)
+            .withAfter(after)
+            .withProject(project().withPathWithNamespace(projectPath).build())
+            .build();
+    }
+
     private List<Branch> convert(List<String> branchNames) {
         ArrayList<Branch> result = new ArrayList<>();
         for (String branchName : branchNames) {
@@ -2,12 +2,19 @@ package com.dabsquared.gitlabjenkins.service;
 
 
 import com.dabsquared.gitlabjenkins.gitlab.api.model.Label;
+import com.google.common.util.concurrent.MoreExecutors;
+import hudson.XmlFile;
+import jenkins.model.Jenkins;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static com.dabsquared.gitlabjenkins.gitlab.api.model.builder.generated.LabelBuilder.label;
 import static java.util.Arrays.asList;
@@ -20,6 +27,9 @@ public class GitLabProjectLabelsServiceTest {
 
     private final static List<String> LABELS_PROJECT_B = asList("label1", "label2", "label3");
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private GitLabProjectLabelsService labelsService;
 
     private GitLabClientStub clientStub;
@@ -53,6 +63,27 @@ public class GitLabProjectLabelsServiceTest {
         assertEquals(0, clientStub.calls("groupOne/B", Label.class));
     }
 
+    @Test
+    public void shouldRevalidateLabelsRestoredFromSnapshot() throws IOException {
+        XmlFile snapshotFile = new XmlFile(Jenkins.XSTREAM2, new File(temporaryFolder.getRoot(), "labels.xml"));
+        GitLabProjectLabelsService persisting = new GitLabProjectLabelsService(300, 86400, TimeUnit.SECONDS,
+            MoreExecutors.sameThreadExecutor(), snapshotFile);
+        persisting.getLabels(clientStub, "git@git.example.com:groupOne/B.git");
+        persisting.writeSnapshot();
+
+        GitLabProjectLabelsService restored = new GitLabProjectLabelsService(300, 86400, TimeUnit.SECONDS,
+            MoreExecutors.sameThreadExecutor(), snapshotFile);
+        clientStub.addLabels("groupOne/B", convert(asList("label4")));
+        List<String> actualLabels = restored.getLabels(clientStub, "git@git.example.com:groupOne/B.git");
+
+        List<String> previousLabels = new ArrayList<>();
+        for (Label label : clientStub.getPreviousLabels().getItems()) {
+            previousLabels.add(label.getName());
+        }
+        assertThat(previousLabels, is(LABELS_PROJECT_B));
+        assertThat(actualLabels, is(asList("label4")));
+    }
+
     private List<Label> convert(List<String> labels) {
         ArrayList<Label> result = new ArrayList<>();
         for (String label : labels) {
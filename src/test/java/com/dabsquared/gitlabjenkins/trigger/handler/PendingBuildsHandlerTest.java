@@ -1,17 +1,29 @@
 package com.dabsquared.gitlabjenkins.trigger.handler;
 
 import com.dabsquared.gitlabjenkins.GitLabPushTrigger;
+import com.dabsquared.gitlabjenkins.cause.GitLabWebHookCause;
 import com.dabsquared.gitlabjenkins.connection.GitLabConnectionProperty;
+import com.dabsquared.gitlabjenkins.gitlab.api.CommitStatusOrder;
 import com.dabsquared.gitlabjenkins.gitlab.api.GitLabClient;
+import com.dabsquared.gitlabjenkins.gitlab.api.MergeRequestWithSource;
+import com.dabsquared.gitlabjenkins.gitlab.api.impl.DispatchingAsyncGitLabClient;
 import com.dabsquared.gitlabjenkins.gitlab.api.model.BuildState;
 import com.dabsquared.gitlabjenkins.gitlab.hook.model.*;
 import com.dabsquared.gitlabjenkins.gitlab.hook.model.builder.generated.*;
 import com.dabsquared.gitlabjenkins.publisher.GitLabCommitStatusPublisher;
+import com.dabsquared.gitlabjenkins.trigger.DuplicateBuildPolicy;
+import com.dabsquared.gitlabjenkins.trigger.TriggerOpenMergeRequest;
 import com.dabsquared.gitlabjenkins.trigger.filter.BranchFilterType;
+import com.google.common.util.concurrent.MoreExecutors;
+import hudson.model.CauseAction;
+import hudson.model.FreeStyleBuild;
 import hudson.model.FreeStyleProject;
 import hudson.model.ItemGroup;
+import hudson.model.Job;
 import hudson.model.Project;
 import hudson.model.Queue;
+import hudson.model.Result;
+import hudson.model.Run;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.junit.After;
 import org.junit.Before;
@@ -19,17 +31,25 @@ import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.SleepBuilder;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static com.dabsquared.gitlabjenkins.gitlab.hook.model.builder.generated.CommitBuilder.commit;
 import static com.dabsquared.gitlabjenkins.gitlab.hook.model.builder.generated.MergeRequestObjectAttributesBuilder.mergeRequestObjectAttributes;
 import static com.dabsquared.gitlabjenkins.gitlab.hook.model.builder.generated.UserBuilder.user;
 import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.fail;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
@@ -51,6 +71,8 @@ public class PendingBuildsHandlerTest {
     @Before
     public void init() {
         when(gitLabConnectionProperty.getClient()).thenReturn(gitLabClient);
+        when(gitLabConnectionProperty.getAsyncClient())
+            .thenReturn(new DispatchingAsyncGitLabClient(gitLabClient, MoreExecutors.sameThreadExecutor(), new CommitStatusOrder()));
     }
 
     @After
@@ -111,6 +133,255 @@ public class PendingBuildsHandlerTest {
         assertThat(jenkins.getInstance().getQueue().getItems().length, is(3));
     }
 
+    @Test
+    public void queuedBuildsOfSameNamedJobInOtherFolderAreNotCancelled() throws IOException {
+        Project project = freestyleProject("project2", new GitLabCommitStatusPublisher(GITLAB_BUILD_NAME, false));
+        FreeStyleProject projectInFolder = jenkins.createFolder("folder").createProject(FreeStyleProject.class, "project2");
+        projectInFolder.setQuietPeriod(5000);
+        projectInFolder.getPublishersList().add(new GitLabCommitStatusPublisher(GITLAB_BUILD_NAME, false));
+        projectInFolder.addProperty(gitLabConnectionProperty);
+
+        GitLabPushTrigger gitLabPushTrigger = gitLabPushTrigger(project);
+        gitLabPushTrigger.setCancelPendingBuildsOnUpdate(true);
+        GitLabPushTrigger folderGitLabPushTrigger = gitLabPushTrigger(projectInFolder);
+
+        folderGitLabPushTrigger.onPost(mergeRequestHook(1, "sourceBranch", "commit1"));
+        gitLabPushTrigger.onPost(mergeRequestHook(1, "sourceBranch", "commit2")); // Will be cancelled
+        gitLabPushTrigger.onPost(mergeRequestHook(1, "sourceBranch", "commit3"));
+
+        verify(gitLabClient).changeBuildStatus(eq(1), eq("commit2"), eq(BuildState.canceled), eq("sourceBranch"),
+            eq("Jenkins"), contains("project2"), eq(BuildState.canceled.name()));
+        verify(gitLabClient, never()).changeBuildStatus(eq(1), eq("commit1"), eq(BuildState.canceled), eq("sourceBranch"),
+            eq("Jenkins"), anyString(), eq(BuildState.canceled.name()));
+
+        assertThat(jenkins.getInstance().getQueue().getItems().length, is(2));
+    }
+
+    @Test
+    public void runningBuildsCanBeAbortedWhenSupersededByNewerCommit() throws Exception {
+        FreeStyleProject project = jenkins.createFreeStyleProject("project3");
+        project.setQuietPeriod(0);
+        project.getBuildersList().add(new SleepBuilder(60000));
+        project.getPublishersList().add(new GitLabCommitStatusPublisher(GITLAB_BUILD_NAME, false));
+        project.addProperty(gitLabConnectionProperty);
+
+        GitLabPushTrigger gitLabPushTrigger = gitLabPushTrigger(project);
+        gitLabPushTrigger.setAbortSupersededBuilds(true);
+
+        gitLabPushTrigger.onPost(pushHook(1, "branch1", "commit1"));
+        awaitRunningBuild(RunningBuildsIndex.get(), project, "branch1");
+        FreeStyleBuild supersededBuild = project.getLastBuild();
+
+        gitLabPushTrigger.onPost(pushHook(1, "branch1", "commit2"));
+
+        jenkins.assertBuildStatus(Result.ABORTED, jenkins.waitForCompletion(supersededBuild));
+        verify(gitLabClient, atLeastOnce()).changeBuildStatus(eq(1), eq("commit1"), eq(BuildState.canceled), eq("branch1"),
+            eq("Jenkins"), anyString(), eq(BuildState.canceled.name()));
+
+        for (Run<?, ?> run : RunningBuildsIndex.get().getBuilds(project, 1, "branch1")) {
+            run.getExecutor().interrupt();
+        }
+    }
+
+    @Test
+    public void queuedBuildsAreCancelledWhenMergeRequestIsClosed() throws IOException {
+        Project project = freestyleProject("project4", new GitLabCommitStatusPublisher(GITLAB_BUILD_NAME, false));
+
+        GitLabPushTrigger gitLabPushTrigger = gitLabPushTrigger(project);
+        gitLabPushTrigger.setCancelObsoleteBuilds(true);
+
+        gitLabPushTrigger.onPost(mergeRequestHook(1, "sourceBranch", "commit1")); // Will be cancelled
+        gitLabPushTrigger.onPost(mergeRequestHook(1, "anotherBranch", "commit2"));
+        MergeRequestHook closedMergeRequestHook = mergeRequestHook(1, "sourceBranch", "commit1");
+        closedMergeRequestHook.getObjectAttributes().setState(State.closed);
+        gitLabPushTrigger.onPost(closedMergeRequestHook);
+
+        verify(gitLabClient).changeBuildStatus(eq(1), eq("commit1"), eq(BuildState.canceled), eq("sourceBranch"),
+            eq("Jenkins"), contains("project4"), eq(BuildState.canceled.name()));
+
+        assertThat(jenkins.getInstance().getQueue().getItems().length, is(1));
+    }
+
+    @Test
+    public void queuedBuildsAreCancelledWhenBranchIsDeleted() throws IOException {
+        Project project = freestyleProject("project5", new GitLabCommitStatusPublisher(GITLAB_BUILD_NAME, false));
+
+        GitLabPushTrigger gitLabPushTrigger = gitLabPushTrigger(project);
+        gitLabPushTrigger.setCancelObsoleteBuilds(true);
+
+        gitLabPushTrigger.onPost(pushHook(1, "refs/heads/branch1", "commit1")); // Will be cancelled
+        gitLabPushTrigger.onPost(pushHook(1, "refs/heads/branch2", "commit2"));
+        gitLabPushTrigger.onPost(pushHook(1, "refs/heads/branch1", "0000000000000000000000000000000000000000"));
+
+        verify(gitLabClient).changeBuildStatus(eq(1), eq("commit1"), eq(BuildState.canceled), eq("branch1"),
+            eq("Jenkins"), contains("project5"), eq(BuildState.canceled.name()));
+
+        assertThat(jenkins.getInstance().getQueue().getItems().length, is(1));
+    }
+
+    @Test
+    public void duplicateTriggersForQueuedRevisionCanBeAttachedToQueuedBuild() throws IOException {
+        Project project = freestyleProject("project6", new GitLabCommitStatusPublisher(GITLAB_BUILD_NAME, false));
+
+        GitLabPushTrigger gitLabPushTrigger = gitLabPushTrigger(project);
+        gitLabPushTrigger.setDuplicateBuildPolicy(DuplicateBuildPolicy.attach);
+
+        gitLabPushTrigger.onPost(mergeRequestHook(1, "sourceBranch", "commit1"));
+        gitLabPushTrigger.onPost(mergeRequestHook(1, "sourceBranch", "commit1"));
+        gitLabPushTrigger.onPost(mergeRequestHook(1, "sourceBranch", "commit2"));
+
+        Queue.Item[] items = jenkins.getInstance().getQueue().getItems();
+        assertThat(items.length, is(2));
+        verify(gitLabClient, times(1)).changeBuildStatus(eq(1), eq("commit1"), eq(BuildState.pending), eq("sourceBranch"),
+            eq("Jenkins"), contains("project6"), eq(BuildState.pending.name()));
+        for (Queue.Item item : items) {
+            GitLabWebHookCause cause = (GitLabWebHookCause) item.getCauses().get(0);
+            assertThat(item.getCauses().size(), is(cause.getData().getLastCommit().equals("commit1") ? 2 : 1));
+        }
+    }
+
+    @Test
+    public void duplicateTriggersForQueuedRevisionCanBeDropped() throws IOException {
+        Project project = freestyleProject("project7", new GitLabCommitStatusPublisher(GITLAB_BUILD_NAME, false));
+
+        GitLabPushTrigger gitLabPushTrigger = gitLabPushTrigger(project);
+        gitLabPushTrigger.setDuplicateBuildPolicy(DuplicateBuildPolicy.drop);
+
+        gitLabPushTrigger.onPost(pushHook(1, "refs/heads/branch1", "commit1"));
+        gitLabPushTrigger.onPost(pushHook(1, "refs/heads/branch1", "commit1"));
+
+        Queue.Item[] items = jenkins.getInstance().getQueue().getItems();
+        assertThat(items.length, is(1));
+        assertThat(items[0].getCauses().size(), is(1));
+    }
+
+    @Test
+    public void successfulBuildOfSameRevisionCanBeReused() throws Exception {
+        FreeStyleProject project = jenkins.createFreeStyleProject("project8");
+        project.setQuietPeriod(0);
+        project.getPublishersList().add(new GitLabCommitStatusPublisher(GITLAB_BUILD_NAME, false));
+        project.addProperty(gitLabConnectionProperty);
+
+        GitLabPushTrigger gitLabPushTrigger = gitLabPushTrigger(project);
+        gitLabPushTrigger.setBuildResultReuseMinutes(60);
+
+        gitLabPushTrigger.onPost(pushHook(1, "refs/heads/branch1", "commit1"));
+        jenkins.waitUntilNoActivity();
+        jenkins.assertBuildStatusSuccess(project.getLastBuild());
+
+        gitLabPushTrigger.onPost(pushHook(1, "refs/heads/branch1", "commit1"));
+
+        verify(gitLabClient).changeBuildStatus(eq(1), eq("commit1"), eq(BuildState.success), eq("branch1"),
+            eq("Jenkins"), contains("project8/1/"), startsWith("Result of"));
+        assertThat(jenkins.getInstance().getQueue().getItems().length, is(0));
+        assertThat(project.getLastBuild().getNumber(), is(1));
+        assertThat(CompletedBuildsIndex.get().getReusedBuildCount() > 0, is(true));
+    }
+
+    @Test
+    public void openMergeRequestIsRebuiltWhenTargetBranchMoves() throws Exception {
+        FreeStyleProject project = jenkins.createFreeStyleProject("targetMovedProject1");
+        project.setQuietPeriod(0);
+        project.getPublishersList().add(new GitLabCommitStatusPublisher(GITLAB_BUILD_NAME, false));
+        project.addProperty(gitLabConnectionProperty);
+        GitLabPushTrigger gitLabPushTrigger = gitLabPushTrigger();
+        gitLabPushTrigger.setTriggerOpenMergeRequestOnPush(TriggerOpenMergeRequest.both);
+        gitLabPushTrigger.setDuplicateBuildPolicy(DuplicateBuildPolicy.drop);
+        gitLabPushTrigger.setBuildResultReuseMinutes(60);
+        project.addTrigger(gitLabPushTrigger);
+        gitLabPushTrigger.start(project, true);
+        when(gitLabClient.getOpenMergeRequestsWithSource("1")).thenReturn(Arrays.asList(openMergeRequest("sourceBranch", "commit1")));
+
+        gitLabPushTrigger.onPost(mergeRequestHook(1, "sourceBranch", "commit1"));
+        jenkins.waitUntilNoActivity();
+        gitLabPushTrigger.onPost(pushHook(1, "refs/heads/targetBranch", "target2"));
+        jenkins.waitUntilNoActivity();
+
+        verify(gitLabClient, never()).changeBuildStatus(anyInt(), anyString(), any(BuildState.class), anyString(), anyString(), anyString(),
+            startsWith("Result of"));
+        int mergeRequestBuilds = 0;
+        for (FreeStyleBuild build : project.getBuilds()) {
+            GitLabWebHookCause cause = build.getCause(GitLabWebHookCause.class);
+            if (cause != null && "commit1".equals(cause.getData().getLastCommit())) {
+                mergeRequestBuilds++;
+            }
+        }
+        assertThat(mergeRequestBuilds, is(2));
+    }
+
+    @Test
+    public void runningBuildsAreIndexedAfterRestart() throws Exception {
+        FreeStyleProject project = jenkins.createFreeStyleProject("restartedProject1");
+        project.setQuietPeriod(0);
+        project.getBuildersList().add(new SleepBuilder(60000));
+        project.addProperty(gitLabConnectionProperty);
+        GitLabPushTrigger gitLabPushTrigger = gitLabPushTrigger(project);
+        gitLabPushTrigger.onPost(pushHook(1, "branch2", "commit1"));
+        awaitRunningBuild(RunningBuildsIndex.get(), project, "branch2");
+
+        RunningBuildsIndex restarted = new RunningBuildsIndex();
+        restarted.indexRunningBuilds(jenkins.getInstance().getAllItems(Job.class));
+
+        List<Run<?, ?>> builds = restarted.getBuilds(project, 1, "branch2");
+        assertThat(builds.size(), is(1));
+        assertThat(builds.get(0), is((Run<?, ?>) project.getLastBuild()));
+        project.getLastBuild().getExecutor().interrupt();
+    }
+
+    @Test
+    public void concurrentDuplicateTriggersAreAllAttachedToRunningBuild() throws Exception {
+        FreeStyleProject project = jenkins.createFreeStyleProject("attachedProject1");
+        project.setQuietPeriod(0);
+        project.getBuildersList().add(new SleepBuilder(60000));
+        project.addProperty(gitLabConnectionProperty);
+        final GitLabPushTrigger gitLabPushTrigger = gitLabPushTrigger(project);
+        gitLabPushTrigger.setDuplicateBuildPolicy(DuplicateBuildPolicy.attach);
+        gitLabPushTrigger.onPost(pushHook(1, "branch3", "commit1"));
+        awaitRunningBuild(RunningBuildsIndex.get(), project, "branch3");
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> hooks = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            hooks.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    gitLabPushTrigger.onPost(pushHook(1, "branch3", "commit1"));
+                }
+            }));
+        }
+        for (Future<?> hook : hooks) {
+            hook.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        FreeStyleBuild build = project.getLastBuild();
+        assertThat(build.getNumber(), is(1));
+        assertThat(build.getAction(CauseAction.class).getCauses().size(), is(9));
+        build.getExecutor().interrupt();
+    }
+
+    @Test
+    public void queuedBuildsAreIndexedAfterRestart() throws IOException {
+        Project project = freestyleProject("restartedProject2", new GitLabCommitStatusPublisher(GITLAB_BUILD_NAME, false));
+        GitLabPushTrigger gitLabPushTrigger = gitLabPushTrigger(project);
+        gitLabPushTrigger.onPost(mergeRequestHook(1, "sourceBranch", "commit1"));
+
+        QueuedBuildsIndex restarted = new QueuedBuildsIndex();
+        restarted.indexItems(jenkins.getInstance().getQueue());
+
+        assertThat(restarted.getItems(jenkins.getInstance().getQueue(), project, 1, "sourceBranch").size(), is(1));
+    }
+
+    private void awaitRunningBuild(RunningBuildsIndex index, Job<?, ?> job, String branch) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30000;
+        while (index.getBuilds(job, 1, branch).isEmpty()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("build of " + branch + " did not start");
+            }
+            Thread.sleep(100);
+        }
+    }
+
     private GitLabPushTrigger gitLabPushTrigger(Project project) throws IOException {
         GitLabPushTrigger gitLabPushTrigger = gitLabPushTrigger();
         project.addTrigger(gitLabPushTrigger);
@@ -171,6 +442,30 @@ public class PendingBuildsHandlerTest {
             .build();
     }
 
+    private MergeRequestWithSource openMergeRequest(String sourceBranch, String commitId) {
+        com.dabsquared.gitlabjenkins.gitlab.api.model.MergeRequest mergeRequest = new com.dabsquared.gitlabjenkins.gitlab.api.model.MergeRequest();
+        mergeRequest.setId(1);
+        mergeRequest.setIid(1);
+        mergeRequest.setTitle("test");
+        mergeRequest.setSourceBranch(sourceBranch);
+        mergeRequest.setTargetBranch("targetBranch");
+        mergeRequest.setSourceProjectId(1);
+        mergeRequest.setTargetProjectId(1);
+        com.dabsquared.gitlabjenkins.gitlab.api.model.Commit commit = new com.dabsquared.gitlabjenkins.gitlab.api.model.Commit();
+        commit.setId(commitId);
+        commit.setAuthorName("author");
+        com.dabsquared.gitlabjenkins.gitlab.api.model.Branch branch = new com.dabsquared.gitlabjenkins.gitlab.api.model.Branch();
+        branch.setName(sourceBranch);
+        branch.setCommit(commit);
+        com.dabsquared.gitlabjenkins.gitlab.api.model.Namespace namespace = new com.dabsquared.gitlabjenkins.gitlab.api.model.Namespace();
+        namespace.setPath("test-namespace");
+        com.dabsquared.gitlabjenkins.gitlab.api.model.Project sourceProject = new com.dabsquared.gitlabjenkins.gitlab.api.model.Project();
+        sourceProject.setName("test");
+        sourceProject.setNamespace(namespace);
+        sourceProject.setWebUrl("https://gitlab.org/test");
+        return new MergeRequestWithSource(mergeRequest, branch, sourceProject);
+    }
+
     private PushHook pushHook(int projectId, String branch, String commitId) {
         User user = new UserBuilder()
             .withName("username")
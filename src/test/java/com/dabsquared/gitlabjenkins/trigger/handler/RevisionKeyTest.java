@@ -0,0 +1,71 @@
+package com.dabsquared.gitlabjenkins.trigger.handler;
+
+import com.dabsquared.gitlabjenkins.cause.CauseData;
+import com.dabsquared.gitlabjenkins.cause.CauseDataBuilder;
+import org.junit.Test;
+
+import static com.dabsquared.gitlabjenkins.cause.CauseDataBuilder.causeData;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RevisionKeyTest {
+
+    @Test
+    public void pushBuildDoesNotMatchMergeRequestOfSameCommit() {
+        CauseData push = pushCause("abc").build();
+        CauseData mergeRequest = mergeRequestCause("abc", "master").build();
+
+        assertFalse(RevisionKey.isSameRevision(push, mergeRequest));
+        assertFalse(RevisionKey.isSameRevision(mergeRequest, push));
+    }
+
+    @Test
+    public void pushBuildsOfSameCommitMatch() {
+        assertTrue(RevisionKey.isSameRevision(pushCause("abc").build(), pushCause("abc").build()));
+    }
+
+    @Test
+    public void mergeRequestBuildsMatchForSameTargetBranch() {
+        assertTrue(RevisionKey.isSameRevision(mergeRequestCause("abc", "master").build(), mergeRequestCause("abc", "master").build()));
+    }
+
+    @Test
+    public void mergeRequestBuildsDoNotMatchForOtherTargetBranch() {
+        assertFalse(RevisionKey.isSameRevision(mergeRequestCause("abc", "master").build(), mergeRequestCause("abc", "develop").build()));
+    }
+
+    @Test
+    public void buildsOfOtherCommitsDoNotMatch() {
+        assertFalse(RevisionKey.isSameRevision(pushCause("abc").build(), pushCause("def").build()));
+    }
+
+    private CauseDataBuilder pushCause(String sha) {
+        return causeData()
+            .withActionType(CauseData.ActionType.PUSH)
+            .withSourceProjectId(1)
+            .withTargetProjectId(1)
+            .withBranch("feature")
+            .withSourceBranch("feature")
+            .withUserName("")
+            .withSourceRepoName("test")
+            .withSourceNamespace("test-namespace")
+            .withSourceRepoSshUrl("git@gitlab.org:test.git")
+            .withSourceRepoHttpUrl("https://gitlab.org/test.git")
+            .withMergeRequestTitle("")
+            .withTargetBranch("feature")
+            .withTargetRepoName("")
+            .withTargetNamespace("")
+            .withTargetRepoSshUrl("")
+            .withTargetRepoHttpUrl("")
+            .withTriggeredByUser("test")
+            .withLastCommit(sha);
+    }
+
+    private CauseDataBuilder mergeRequestCause(String sha, String targetBranch) {
+        return pushCause(sha)
+            .withActionType(CauseData.ActionType.MERGE)
+            .withMergeRequestId(1)
+            .withMergeRequestIid(1)
+            .withTargetBranch(targetBranch);
+    }
+}
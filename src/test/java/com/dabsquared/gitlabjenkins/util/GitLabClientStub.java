@@ -1,6 +1,8 @@
 package com.dabsquared.gitlabjenkins.util;
 
 import com.dabsquared.gitlabjenkins.gitlab.api.GitLabClient;
+import com.dabsquared.gitlabjenkins.gitlab.api.ListingSnapshot;
+import com.dabsquared.gitlabjenkins.gitlab.api.MergeRequestWithSource;
 import com.dabsquared.gitlabjenkins.gitlab.api.model.*;
 import com.dabsquared.gitlabjenkins.gitlab.hook.model.State;
 
@@ -93,11 +95,31 @@ class GitLabClientStub implements GitLabClient {
         return null;
     }
 
+    @Override
+    public Iterable<MergeRequest> getAllMergeRequests(String projectId, State state) {
+        return null;
+    }
+
+    @Override
+    public Iterable<MergeRequest> getAllMergeRequestSummaries(String projectId, State state) {
+        return null;
+    }
+
+    @Override
+    public Iterable<MergeRequestWithSource> getOpenMergeRequestsWithSource(String projectId) {
+        return null;
+    }
+
     @Override
     public List<Branch> getBranches(String projectId) {
         return null;
     }
 
+    @Override
+    public Iterable<Branch> getAllBranches(String projectId) {
+        return null;
+    }
+
     @Override
     public Branch getBranch(String projectId, String branch) {
         return null;
@@ -123,8 +145,27 @@ class GitLabClientStub implements GitLabClient {
         return null;
     }
 
+    @Override
+    public Iterable<Label> getAllLabels(String projectId) {
+        return null;
+    }
+
+    @Override
+    public ListingSnapshot<Label> getLabels(String projectId, ListingSnapshot<Label> previous) {
+        return null;
+    }
+
     @Override
     public List<Pipeline> getPipelines(String projectName) {
         return null;
     }
+
+    @Override
+    public Iterable<Pipeline> getAllPipelines(String projectName) {
+        return null;
+    }
+
+    @Override
+    public void close() {
+    }
 }